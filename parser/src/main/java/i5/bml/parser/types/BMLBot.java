@@ -11,4 +11,10 @@ public class BMLBot extends AbstractBMLType implements CanPopulateParameters {
 
     @BMLComponentParameter(name = "name", expectedBMLType = BuiltinType.STRING, isRequired = false)
     private String name;
+
+    /**
+     * Threads that event handlers run on, either "platform" (default) or "virtual"
+     */
+    @BMLComponentParameter(name = "threads", expectedBMLType = BuiltinType.STRING, isRequired = false)
+    private String threads;
 }
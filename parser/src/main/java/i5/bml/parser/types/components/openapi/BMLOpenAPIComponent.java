@@ -12,6 +12,7 @@ import io.swagger.v3.oas.models.OpenAPI;
 import io.swagger.v3.oas.models.Operation;
 import io.swagger.v3.oas.models.media.Schema;
 import io.swagger.v3.oas.models.parameters.Parameter;
+import io.swagger.v3.parser.core.models.SwaggerParseResult;
 import org.antlr.symtab.Type;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.ParseTree;
@@ -28,6 +29,21 @@ import static i5.bml.parser.errors.ParserError.*;
 @BMLType(name = BuiltinType.OPENAPI, isComplex = true)
 public class BMLOpenAPIComponent extends AbstractBMLType implements CanPopulateParameters {
 
+    private static final int MAX_CACHED_SPECS = 32;
+
+    /**
+     * Parse results by specification text. Parsing large specifications is expensive, and long-running processes
+     * (e.g., the language server or the compiler in daemon mode) see the same specifications over and over again.
+     * We still fetch the specification every time, so changes are picked up. The parsed models are shared, hence, they
+     * must not be modified (e.g., client code generation works on a copy).
+     */
+    private static final Map<String, SwaggerParseResult> PARSE_RESULTS = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SwaggerParseResult> eldest) {
+            return size() > MAX_CACHED_SPECS;
+        }
+    });
+
     @BMLComponentParameter(name = "url", expectedBMLType = BuiltinType.STRING, isRequired = true)
     private String url;
 
@@ -89,7 +105,11 @@ public class BMLOpenAPIComponent extends AbstractBMLType implements CanPopulateP
             return;
         }
 
-        var result = Measurements.measure("OpenAPI spec parser", () -> new OpenAPIParser().readContents(openAPISpec, null, null));
+        var result = PARSE_RESULTS.get(openAPISpec);
+        if (result == null) {
+            result = Measurements.measure("OpenAPI spec parser", () -> new OpenAPIParser().readContents(openAPISpec, null, null));
+            PARSE_RESULTS.put(openAPISpec, result);
+        }
 
         openAPI = result.getOpenAPI();
 
@@ -9,20 +9,23 @@ public class Measurements {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Measurements.class);
 
-    private static long nestedMeasurement = 0;
+    /**
+     * Time spent in nested measurements, tracked per thread since measurements might run in the background
+     */
+    private static final ThreadLocal<Long> nestedMeasurement = ThreadLocal.withInitial(() -> 0L);
 
     private Measurements() {}
 
     public static <T> T measure(String name, Supplier<T> actionToMeasure) {
-        var prev = nestedMeasurement;
+        var prev = nestedMeasurement.get();
 
         var start = System.nanoTime();
         T returnValue = actionToMeasure.get();
         var end = System.nanoTime();
 
-        var post = nestedMeasurement;
+        var post = nestedMeasurement.get();
         var time = end - start;
-        nestedMeasurement += time;
+        nestedMeasurement.set(post + time);
 
         LOGGER.info("{} took {}", name, calculateUnit(time - (post - prev)));
 
@@ -30,15 +33,15 @@ public class Measurements {
     }
 
     public static void measure(String name, Runnable actionToMeasure) {
-        var prev = nestedMeasurement;
+        var prev = nestedMeasurement.get();
 
         var start = System.nanoTime();
         actionToMeasure.run();
         var end = System.nanoTime();
 
-        var post = nestedMeasurement;
+        var post = nestedMeasurement.get();
         var time = end - start;
-        nestedMeasurement += time;
+        nestedMeasurement.set(post + time);
 
         LOGGER.info("{} took {}", name, calculateUnit(time - (post - prev)));
     }
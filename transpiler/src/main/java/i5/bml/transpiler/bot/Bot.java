@@ -1,74 +1,150 @@
 package i5.bml.transpiler.bot;
 
 import i5.bml.transpiler.bot.components.ComponentRegistry;
-import i5.bml.transpiler.bot.events.Event;
+import i5.bml.transpiler.bot.config.ThreadingMode;
 import i5.bml.transpiler.bot.events.EventHandlerRegistry;
+import i5.bml.transpiler.bot.events.EventQueue;
+import i5.bml.transpiler.bot.events.PerChatExecutor;
 import i5.bml.transpiler.bot.events.messenger.MessageEvent;
-import i5.bml.transpiler.bot.events.messenger.MessageEventHandler;
+import i5.bml.transpiler.bot.events.routines.RoutineEvent;
 import i5.bml.transpiler.bot.events.routines.RoutineEventHandler;
+import i5.bml.transpiler.bot.metrics.Histogram;
+import i5.bml.transpiler.bot.metrics.MetricsRegistry;
+import i5.bml.transpiler.bot.threads.SessionJournal;
+import i5.bml.transpiler.bot.tracing.Tracer;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.*;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 public class Bot {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Bot.class);
 
-    private final PriorityBlockingQueue<Event> eventQueue = new PriorityBlockingQueue<>(100,
-            Comparator.comparingLong(Event::arrivalTime));
+    private final EventQueue eventQueue = EventQueue.configured();
+
+    private final ThreadingMode threadingMode = ThreadingMode.configured();
 
     /**
      * This pool offers threads for the components that are external event resources.
      * It is also used to submit event handlers for incoming events. Hence, incoming events
      * are dealt with in a "multi-threaded" manner.
      */
-    private final ExecutorService threadPool = Executors.newCachedThreadPool();
+    private final ExecutorService threadPool = threadingMode.newExecutor();
 
-    private final Map<Object, CompletableFuture<Void>> previousEventCompletableFuture = new HashMap<>();
+    /**
+     * Events of the same chat are handled in order of arrival, events of different chats in parallel. One executor per
+     * shard, since a chat never changes its shard, the shards do not share any state.
+     */
+    private final PerChatExecutor[] chatExecutors = new PerChatExecutor[eventQueue.shardCount()];
+
+    /**
+     * Null if sessions are not persisted
+     */
+    private final SessionJournal sessionJournal;
+
+    private final Histogram messageHandlerDuration;
+
+    private final Histogram routineDuration;
 
     public Bot() {
-        // Register message event handlers
-        EventHandlerRegistry.registerEventHandler(MessageEventHandler.class);
+        Arrays.setAll(chatExecutors, shard -> new PerChatExecutor(threadPool));
+        LOGGER.info("Running event handlers on {} threads", threadingMode.name().toLowerCase());
+
+        var metrics = MetricsRegistry.shared();
+        metrics.gauge("bml_queue_events", "Events waiting in the event queue", eventQueue::size);
+        metrics.gauge("bml_queue_peak_events", "Largest number of events that have been waiting at the same time", eventQueue::peakSize);
+        metrics.gauge("bml_queue_capacity_events", "Capacity of the event queue", eventQueue::capacity);
+        metrics.counter("bml_queue_dropped_events_total", "Events dropped because the event queue was full", eventQueue::droppedEvents);
+        metrics.gauge("bml_active_chats", "Chats with running or pending event handlers",
+                () -> Arrays.stream(chatExecutors).mapToInt(PerChatExecutor::activeChats).sum());
+        messageHandlerDuration = metrics.histogram("bml_handler_duration_seconds", "Duration of event handlers", "event", "message");
+        routineDuration = metrics.histogram("bml_handler_duration_seconds", "Duration of event handlers", "event", "routine");
+
+        // Sessions have to be restored before components receive the first messages
+        sessionJournal = SessionJournal.configured();
 
         // Components (external event sources)
         ComponentRegistry.initComponents(threadPool, eventQueue);
 
         // Routines (internal event sources)
-        RoutineEventHandler.registerEventHandler(new ScheduledThreadPoolExecutor(1));
+        RoutineEventHandler.registerEventHandler(new ScheduledThreadPoolExecutor(1, threadingMode.threadFactory()), eventQueue);
     }
 
+    /**
+     * Starts a dispatcher loop per shard of the event queue, the calling thread runs the loop of the first shard.
+     */
     public void run() {
+        for (int shard = 1; shard < eventQueue.shardCount(); shard++) {
+            final var currentShard = shard;
+            var dispatcher = new Thread(() -> dispatch(currentShard), "dispatcher-" + shard);
+            dispatcher.start();
+        }
+
+        dispatch(0);
+    }
+
+    private void dispatch(int shard) {
+        var chatExecutor = chatExecutors[shard];
         //noinspection InfiniteLoopStatement -> The infinite loop is desired
         while (true) {
             try {
-                var event = eventQueue.take();
-
-                if (event instanceof MessageEvent messageEvent && ((MessageEvent) event).session() != null) {
-                    var currentChatId = messageEvent.session().chatId();
-                    var prevFuture = previousEventCompletableFuture.get(currentChatId);
-                    CompletableFuture<Void> newCompletableFuture;
-                    if (prevFuture != null) {
-                        newCompletableFuture = prevFuture.thenRunAsync(() ->
-                                EventHandlerRegistry.dispatchEventHandler(event), threadPool);
-                    } else {
-                        newCompletableFuture = CompletableFuture.runAsync(() ->
-                                EventHandlerRegistry.dispatchEventHandler(event), threadPool);
-                    }
-
-                    // Add exception handling
-                    newCompletableFuture.exceptionally(e -> {
-                        LOGGER.error("An exception occurred while dispatching handler for event {}:\n{}", event, ExceptionUtils.getRootCause(e).getMessage());
-                        return null;
-                    });
+                var event = eventQueue.take(shard);
 
-                    previousEventCompletableFuture.put(currentChatId, newCompletableFuture);
+                if (event instanceof MessageEvent messageEvent && messageEvent.session() != null) {
+                    var trace = messageEvent.trace();
+                    var dequeued = System.nanoTime();
+                    trace.recordSpan("queue", trace.root().startNanos(), dequeued);
+                    // NLU runs while earlier events of the same chat are handled, the handler runs once it is done
+                    var understood = EventHandlerRegistry.understand(event);
+                    chatExecutor.executeAsync(messageEvent.session().chatId(), () -> understood.thenAcceptAsync(ok -> {
+                        var start = System.nanoTime();
+                        // Time spent behind earlier events of the same chat or waiting for NLU
+                        trace.recordSpan("chat wait", dequeued, start);
+                        // A failing handler or journal must neither lose its duration nor leave its trace unfinished
+                        try {
+                            if (ok) {
+                                var span = trace.startSpan("handler");
+                                try {
+                                    EventHandlerRegistry.dispatchEventHandler(event);
+                                } finally {
+                                    span.close();
+                                    messageHandlerDuration.observeSince(start);
+                                }
+                                if (sessionJournal != null) {
+                                    sessionJournal.save(messageEvent.session());
+                                }
+                            } else {
+                                trace.root().error();
+                            }
+                        } finally {
+                            trace.finish();
+                        }
+                    }, threadPool));
+                } else if (event instanceof RoutineEvent routineEvent) {
+                    var trace = Tracer.current().startTrace("routine");
+                    trace.root().attribute("bml.routine", routineEvent.routineName());
+                    // Keyed by the routine, a routine that takes longer than its period must not overlap with itself
+                    chatExecutor.execute(routineEvent.routine(), () -> {
+                        var start = System.nanoTime();
+                        var span = trace.startSpan("handler");
+                        try {
+                            routineEvent.routine().run();
+                        } finally {
+                            span.close();
+                            routineDuration.observeSince(start);
+                            trace.finish();
+                        }
+                    });
                 } else {
-                    threadPool.execute(() -> EventHandlerRegistry.dispatchEventHandler(event));
+                    EventHandlerRegistry.understand(event).thenAcceptAsync(ok -> {
+                        if (ok) {
+                            EventHandlerRegistry.dispatchEventHandler(event);
+                        }
+                    }, threadPool);
                 }
             } catch (InterruptedException e) {
                 LOGGER.error("Execution of event main loop was interrupted", ExceptionUtils.getRootCause(e));
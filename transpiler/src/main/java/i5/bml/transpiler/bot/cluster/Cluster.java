@@ -0,0 +1,206 @@
+package i5.bml.transpiler.bot.cluster;
+
+import i5.bml.transpiler.bot.config.BotConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Partitions chats among several instances of the same bot. Instances announce themselves through the
+ * {@link SharedStateBackend}, every instance builds the same {@link ConsistentHashRing} from the live instances, and
+ * the owner of a chat on that ring handles all of its events. Messenger components ask {@link #forwardIfForeign} for
+ * every incoming update, updates of foreign chats end up in the inbox of their owner, which handles them as if it had
+ * received them itself. Sessions and dialogue states therefore only live on the owner, global components live in the
+ * backend.
+ * <p>
+ * Configured on start-up with <code>cluster.instance</code> (unique name of this instance, partitioning is off if not
+ * set), <code>cluster.backend</code> (<code>memory</code> (default), <code>filesystem</code>, or the class name of a
+ * {@link SharedStateBackend}), <code>cluster.dir</code> (directory of the filesystem backend, default
+ * <code>{@value DEFAULT_DIRECTORY}</code>), and <code>cluster.timeoutSeconds</code> (heartbeats an instance may miss
+ * before its chats move, default {@value DEFAULT_TIMEOUT_SECONDS}), see {@link BotConfig#option(String, String)}.
+ * Every instance journals its sessions in a directory of its own by default, see
+ * {@link i5.bml.transpiler.bot.threads.SessionJournal}.
+ */
+public class Cluster {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Cluster.class);
+
+    private static final String DEFAULT_DIRECTORY = "cluster";
+
+    private static final int DEFAULT_TIMEOUT_SECONDS = 5;
+
+    private static final int VIRTUAL_NODES = 128;
+
+    private static final Cluster CURRENT = configured();
+
+    /**
+     * Null if partitioning is off
+     */
+    private final String instanceId;
+
+    private final SharedStateBackend state;
+
+    private final Duration instanceTimeout;
+
+    private final Map<String, Consumer<String>> forwardHandlers = new ConcurrentHashMap<>();
+
+    private volatile ConsistentHashRing<String> ring;
+
+    public Cluster(String instanceId, SharedStateBackend state, Duration instanceTimeout) {
+        this.instanceId = instanceId;
+        this.state = state;
+        this.instanceTimeout = instanceTimeout;
+        this.ring = new ConsistentHashRing<>(instanceId == null ? Set.of() : Set.of(instanceId), VIRTUAL_NODES);
+    }
+
+    public static Cluster current() {
+        return CURRENT;
+    }
+
+    private static Cluster configured() {
+        var instanceOption = BotConfig.option("cluster.instance", "").trim();
+        var backendOption = BotConfig.option("cluster.backend", "memory").trim();
+
+        SharedStateBackend state;
+        switch (backendOption.toLowerCase()) {
+            case "memory" -> state = new InMemoryStateBackend();
+            case "filesystem" -> state = new FileSystemStateBackend(Path.of(BotConfig.option("cluster.dir", DEFAULT_DIRECTORY)));
+            default -> {
+                try {
+                    state = (SharedStateBackend) Class.forName(backendOption).getConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    LOGGER.error("Failed to create shared state backend {}, using memory: {}", backendOption, e.getMessage());
+                    LOGGER.debug("Stacktrace:", e);
+                    state = new InMemoryStateBackend();
+                }
+            }
+        }
+
+        var timeoutSeconds = DEFAULT_TIMEOUT_SECONDS;
+        try {
+            timeoutSeconds = Math.max(2, Integer.parseInt(BotConfig.option("cluster.timeoutSeconds", String.valueOf(DEFAULT_TIMEOUT_SECONDS)).trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid cluster timeout: {}", e.getMessage());
+        }
+
+        var cluster = new Cluster(instanceOption.isEmpty() ? null : instanceOption, state, Duration.ofSeconds(timeoutSeconds));
+        if (cluster.isPartitioned()) {
+            LOGGER.info("Running as instance {} of a partitioned bot, shared state in {}", instanceOption, state.getClass().getSimpleName());
+            var scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                var thread = new Thread(r, "cluster");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(cluster.guarded(cluster::refresh), 0, 1, TimeUnit.SECONDS);
+            scheduler.scheduleWithFixedDelay(cluster.guarded(cluster::receiveForwarded), 100, 100, TimeUnit.MILLISECONDS);
+        }
+
+        return cluster;
+    }
+
+    public SharedStateBackend state() {
+        return state;
+    }
+
+    public boolean isPartitioned() {
+        return instanceId != null;
+    }
+
+    /**
+     * @return the instance that handles the chat, null if partitioning is off.
+     */
+    public String ownerOf(Object chatId) {
+        return ring.nodeFor(chatId);
+    }
+
+    public boolean owns(Object chatId) {
+        return !isPartitioned() || instanceId.equals(ownerOf(chatId));
+    }
+
+    /**
+     * @param channel identifies the component that receives forwarded updates, see {@link #onForwarded}.
+     * @param payload the update, in a form that the handler of the owner understands (e.g., JSON), only computed if
+     *                the update is forwarded.
+     * @return whether the update has been forwarded, in that case, the caller must not handle it.
+     */
+    public boolean forwardIfForeign(Object chatId, String channel, Supplier<String> payload) {
+        if (owns(chatId)) {
+            return false;
+        }
+
+        var owner = ownerOf(chatId);
+        LOGGER.debug("Forwarding update of chat {} to instance {}", chatId, owner);
+        state.send(owner, channel + "\n" + payload.get());
+        return true;
+    }
+
+    /**
+     * @param handler handles updates that other instances forwarded to this one, regardless of the current owner of
+     *                their chat (otherwise, updates could bounce between instances while the ring changes).
+     */
+    public void onForwarded(String channel, Consumer<String> handler) {
+        forwardHandlers.put(channel, handler);
+    }
+
+    /**
+     * Sends a heartbeat and rebuilds the ring if instances joined or left.
+     */
+    public void refresh() {
+        state.heartbeat(instanceId);
+        var instances = new HashSet<>(state.liveInstances(instanceTimeout));
+        instances.add(instanceId);
+
+        if (!instances.equals(ring.nodes())) {
+            LOGGER.info("Instances changed from {} to {}", ring.nodes(), instances);
+            ring = new ConsistentHashRing<>(instances, VIRTUAL_NODES);
+        }
+    }
+
+    public void receiveForwarded() {
+        for (var message : state.receive(instanceId)) {
+            var separator = message.indexOf('\n');
+            if (separator < 0) {
+                LOGGER.warn("Dropping malformed forwarded update");
+                continue;
+            }
+
+            var channel = message.substring(0, separator);
+            var handler = forwardHandlers.get(channel);
+            if (handler == null) {
+                LOGGER.warn("Dropping forwarded update for unknown component {}", channel);
+                continue;
+            }
+
+            try {
+                handler.accept(message.substring(separator + 1));
+            } catch (Exception e) {
+                LOGGER.error("Failed to handle forwarded update for {}: {}", channel, e.getMessage());
+                LOGGER.debug("Stacktrace:", e);
+            }
+        }
+    }
+
+    /**
+     * An exception would cancel the scheduled task
+     */
+    private Runnable guarded(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                LOGGER.error("Cluster task failed: {}", e.getMessage());
+                LOGGER.debug("Stacktrace:", e);
+            }
+        };
+    }
+}
@@ -0,0 +1,88 @@
+package i5.bml.transpiler.bot.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Assigns keys (e.g., chat IDs) to nodes (e.g., bot instances). Every node is placed on the ring several times
+ * (virtual nodes), a key belongs to the first node that follows it on the ring. Adding or removing a node only moves
+ * the keys of that node, all other keys stay where they are.
+ * <p>
+ * Positions only depend on the string representation of nodes and keys, hence, every instance that knows the same
+ * nodes computes the same assignment. Not thread-safe, build a new ring when nodes change.
+ */
+public class ConsistentHashRing<T> {
+
+    private final NavigableMap<Long, T> ring = new TreeMap<>();
+
+    private final Set<T> nodes = new LinkedHashSet<>();
+
+    private final int virtualNodes;
+
+    public ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Number of virtual nodes must be positive, got %d".formatted(virtualNodes));
+        }
+
+        this.virtualNodes = virtualNodes;
+    }
+
+    public ConsistentHashRing(Collection<T> nodes, int virtualNodes) {
+        this(virtualNodes);
+        nodes.forEach(this::add);
+    }
+
+    public void add(T node) {
+        if (nodes.add(node)) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public void remove(T node) {
+        if (nodes.remove(node)) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // Positions might collide, we must not remove another node's position
+                ring.remove(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * @return the node that the key belongs to, or null if the ring is empty.
+     */
+    public T nodeFor(Object key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+
+        var entry = ring.ceilingEntry(hash(String.valueOf(key)));
+        // Wrap around
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public Set<T> nodes() {
+        return Collections.unmodifiableSet(nodes);
+    }
+
+    /**
+     * MD5 instead of {@link Object#hashCode()}: spreads sequential keys (e.g., chat IDs) and similar node names
+     * evenly, and is the same on every JVM.
+     */
+    static long hash(String value) {
+        try {
+            var digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has to support MD5
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package i5.bml.transpiler.bot.cluster;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the shared state in a directory that all instances can access (e.g., a shared volume). Every operation reads
+ * and writes the whole component under a file lock, which is simple and safe, but only suited for small components
+ * and moderate traffic. Components are stored as JSON of their declared type, i.e., keys and values of maps and
+ * lists have to be representable in JSON (e.g., strings, numbers, JSON and OpenAPI objects, but not messenger users).
+ * <p>
+ * Iterating over a map or list sees a snapshot, changes through the iterator are not written back.
+ */
+public class FileSystemStateBackend implements SharedStateBackend {
+
+    private static final String MESSAGE_SUFFIX = ".msg";
+
+    /**
+     * File locks are held by the whole process (and overlapping ones throw), threads of this process have to be
+     * serialized separately, also across backends on the same directory
+     */
+    private static final Map<Path, ReentrantLock> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+    /**
+     * Map keys as JSON too, otherwise keys that are objects are written as their <code>toString()</code>
+     */
+    private static final Gson GSON = new GsonBuilder().enableComplexMapKeySerialization().create();
+
+    private final Path directory;
+
+    /**
+     * Orders messages that this process sends within the same millisecond
+     */
+    private final AtomicLong messageCounter = new AtomicLong();
+
+    public FileSystemStateBackend(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public <K, V> Map<K, V> map(String name, Type type) {
+        return new FileMap<>(file("maps", name), type);
+    }
+
+    @Override
+    public <T> List<T> list(String name, Type type) {
+        return new FileList<>(file("lists", name), type);
+    }
+
+    @Override
+    public SharedNumber number(String name, long initialValue) {
+        var file = file("numbers", name);
+        // Only initialize a number that no instance has written yet
+        withFile(file, long[].class, () -> new long[]{initialValue}, false, value -> value[0]);
+        return new FileNumber(file);
+    }
+
+    @Override
+    public void heartbeat(String instanceId) {
+        try {
+            var file = file("instances", instanceId);
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, String.valueOf(System.currentTimeMillis()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Set<String> liveInstances(Duration timeout) {
+        var instancesDir = directory.resolve("instances");
+        if (!Files.isDirectory(instancesDir)) {
+            return Set.of();
+        }
+
+        var now = System.currentTimeMillis();
+        try (var files = Files.list(instancesDir)) {
+            return files.filter(f -> {
+                        try {
+                            return now - Long.parseLong(Files.readString(f).trim()) < timeout.toMillis();
+                        } catch (IOException | NumberFormatException e) {
+                            // Written concurrently, the next heartbeat tells
+                            return false;
+                        }
+                    })
+                    .map(f -> decode(f.getFileName().toString()))
+                    .collect(Collectors.toSet());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void send(String instanceId, String message) {
+        var inbox = directory.resolve("inbox").resolve(encode(instanceId));
+        // Sortable by name: time of sending, then order of sending within this process
+        var name = "%013d-%012d-%s".formatted(System.currentTimeMillis(), messageCounter.getAndIncrement(), UUID.randomUUID());
+        try {
+            Files.createDirectories(inbox);
+            var tmpFile = inbox.resolve(name + ".tmp");
+            Files.writeString(tmpFile, message, StandardCharsets.UTF_8);
+            // Receivers only pick up complete messages
+            Files.move(tmpFile, inbox.resolve(name + MESSAGE_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<String> receive(String instanceId) {
+        var inbox = directory.resolve("inbox").resolve(encode(instanceId));
+        if (!Files.isDirectory(inbox)) {
+            return List.of();
+        }
+
+        try (var files = Files.list(inbox)) {
+            var messages = new ArrayList<String>();
+            for (var file : files.filter(f -> f.getFileName().toString().endsWith(MESSAGE_SUFFIX)).sorted().toList()) {
+                messages.add(Files.readString(file, StandardCharsets.UTF_8));
+                Files.delete(file);
+            }
+            return messages;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path file(String kind, String name) {
+        return directory.resolve(kind).resolve(encode(name));
+    }
+
+    private static String encode(String name) {
+        return URLEncoder.encode(name, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String fileName) {
+        return URLDecoder.decode(fileName, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the content of the file (or creates it with <code>initialContent</code>), applies the operation, and
+     * writes the content back if <code>write</code> is set, all under a lock that spans threads and processes.
+     *
+     * @param type type of the content, the file holds it as JSON.
+     */
+    private <S, R> R withFile(Path file, Type type, Supplier<S> initialContent, boolean write, Function<S, R> operation) {
+        var localLock = LOCAL_LOCKS.computeIfAbsent(file.toAbsolutePath().normalize(), f -> new ReentrantLock());
+        localLock.lock();
+        try {
+            Files.createDirectories(file.getParent());
+            try (var channel = FileChannel.open(file.resolveSibling(file.getFileName() + ".lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                var fileLock = channel.lock();
+                try {
+                    S content;
+                    if (Files.exists(file)) {
+                        content = GSON.fromJson(Files.readString(file, StandardCharsets.UTF_8), type);
+                    } else {
+                        content = initialContent.get();
+                        write = true;
+                    }
+
+                    var result = operation.apply(content);
+                    if (write) {
+                        var tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+                        Files.writeString(tmpFile, GSON.toJson(content, type), StandardCharsets.UTF_8);
+                        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    return result;
+                } finally {
+                    fileLock.release();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (JsonParseException e) {
+            throw new IllegalStateException("Shared state in %s was written by an incompatible bot".formatted(file), e);
+        } finally {
+            localLock.unlock();
+        }
+    }
+
+    private class FileMap<K, V> extends AbstractMap<K, V> {
+
+        private final Path file;
+
+        private final Type type;
+
+        private FileMap(Path file, Type type) {
+            this.file = file;
+            this.type = type;
+        }
+
+        private <R> R read(Function<Map<K, V>, R> operation) {
+            return withFile(file, type, HashMap::new, false, operation);
+        }
+
+        private <R> R write(Function<Map<K, V>, R> operation) {
+            return withFile(file, type, HashMap::new, true, operation);
+        }
+
+        @Override
+        public V get(Object key) {
+            return read(map -> map.get(key));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return read(map -> map.containsKey(key));
+        }
+
+        @Override
+        public int size() {
+            return read(Map::size);
+        }
+
+        @Override
+        public V put(K key, V value) {
+            return write(map -> map.put(key, value));
+        }
+
+        @Override
+        public V remove(Object key) {
+            return write(map -> map.remove(key));
+        }
+
+        @Override
+        public void clear() {
+            write(map -> {
+                map.clear();
+                return null;
+            });
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return Collections.unmodifiableMap(read(HashMap::new)).entrySet();
+        }
+    }
+
+    private class FileList<T> extends AbstractList<T> {
+
+        private final Path file;
+
+        private final Type type;
+
+        private FileList(Path file, Type type) {
+            this.file = file;
+            this.type = type;
+        }
+
+        private <R> R read(Function<List<T>, R> operation) {
+            return withFile(file, type, ArrayList::new, false, operation);
+        }
+
+        private <R> R write(Function<List<T>, R> operation) {
+            return withFile(file, type, ArrayList::new, true, operation);
+        }
+
+        @Override
+        public T get(int index) {
+            return read(list -> list.get(index));
+        }
+
+        @Override
+        public int size() {
+            return read(List::size);
+        }
+
+        @Override
+        public T set(int index, T element) {
+            return write(list -> list.set(index, element));
+        }
+
+        @Override
+        public void add(int index, T element) {
+            write(list -> {
+                list.add(index, element);
+                return null;
+            });
+        }
+
+        @Override
+        public boolean add(T element) {
+            return write(list -> list.add(element));
+        }
+
+        @Override
+        public T remove(int index) {
+            return write(list -> list.remove(index));
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return Collections.unmodifiableList(read(ArrayList::new)).iterator();
+        }
+    }
+
+    private class FileNumber implements SharedNumber {
+
+        private final Path file;
+
+        private FileNumber(Path file) {
+            this.file = file;
+        }
+
+        // Stored as single-element array, which we can update in place (unlike a boxed long)
+        @Override
+        public long get() {
+            return withFile(file, long[].class, () -> new long[1], false, value -> value[0]);
+        }
+
+        @Override
+        public void set(long newValue) {
+            updateAndGet(value -> newValue);
+        }
+
+        @Override
+        public long updateAndGet(LongUnaryOperator updateFunction) {
+            return withFile(file, long[].class, () -> new long[1], true, value -> value[0] = updateFunction.applyAsLong(value[0]));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package i5.bml.transpiler.bot.cluster;
+
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the shared state in memory, i.e., only instances in the same process share it. This is the default for a
+ * single instance, and a stand-in for tests of several instances.
+ */
+public class InMemoryStateBackend implements SharedStateBackend {
+
+    private final Map<String, Map<?, ?>> maps = new ConcurrentHashMap<>();
+
+    private final Map<String, List<?>> lists = new ConcurrentHashMap<>();
+
+    private final Map<String, SharedNumber> numbers = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> heartbeats = new ConcurrentHashMap<>();
+
+    private final Map<String, Queue<String>> inboxes = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <K, V> Map<K, V> map(String name, Type type) {
+        return (Map<K, V>) maps.computeIfAbsent(name, k -> new ConcurrentHashMap<>());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> List<T> list(String name, Type type) {
+        return (List<T>) lists.computeIfAbsent(name, k -> Collections.synchronizedList(new ArrayList<>()));
+    }
+
+    @Override
+    public SharedNumber number(String name, long initialValue) {
+        return numbers.computeIfAbsent(name, k -> new AtomicNumber(initialValue));
+    }
+
+    @Override
+    public void heartbeat(String instanceId) {
+        heartbeats.put(instanceId, System.nanoTime());
+    }
+
+    @Override
+    public Set<String> liveInstances(Duration timeout) {
+        var now = System.nanoTime();
+        return heartbeats.entrySet().stream()
+                .filter(e -> now - e.getValue() < timeout.toNanos())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public void send(String instanceId, String message) {
+        inboxes.computeIfAbsent(instanceId, k -> new ConcurrentLinkedQueue<>()).add(message);
+    }
+
+    @Override
+    public List<String> receive(String instanceId) {
+        var inbox = inboxes.get(instanceId);
+        if (inbox == null) {
+            return List.of();
+        }
+
+        var messages = new ArrayList<String>();
+        String message;
+        while ((message = inbox.poll()) != null) {
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private record AtomicNumber(AtomicLong value) implements SharedNumber {
+
+        private AtomicNumber(long initialValue) {
+            this(new AtomicLong(initialValue));
+        }
+
+        @Override
+        public long get() {
+            return value.get();
+        }
+
+        @Override
+        public void set(long newValue) {
+            value.set(newValue);
+        }
+
+        @Override
+        public long updateAndGet(LongUnaryOperator updateFunction) {
+            return value.updateAndGet(updateFunction);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package i5.bml.transpiler.bot.cluster;
+
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Global <code>Number</code> component, see {@link SharedStateBackend#number(String, long)}.
+ */
+public interface SharedNumber {
+
+    long get();
+
+    void set(long value);
+
+    /**
+     * Atomically replaces the value, also across instances if the backend is shared.
+     */
+    long updateAndGet(LongUnaryOperator updateFunction);
+}
@@ -0,0 +1,60 @@
+package i5.bml.transpiler.bot.cluster;
+
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * State that all instances of a bot share: global components (<code>Map</code>, <code>List</code>, and
+ * <code>Number</code>), the set of live instances, and an inbox per instance for events of chats that another
+ * instance owns.
+ * <p>
+ * Implementations must be thread-safe. Bundled are {@link InMemoryStateBackend} (single instance, or several
+ * instances in one process) and {@link FileSystemStateBackend} (instances that share a directory). Other backends
+ * (e.g., a key-value store) can be plugged in by class name, see {@link Cluster}; they need a public constructor
+ * without parameters.
+ */
+public interface SharedStateBackend {
+
+    /**
+     * @param type type of the map (e.g., <code>Map&lt;String, Long&gt;</code>), for backends that store it outside
+     *             of the process.
+     * @return the map with the given name, created empty if it does not exist yet.
+     */
+    <K, V> Map<K, V> map(String name, Type type);
+
+    /**
+     * @param type type of the list (e.g., <code>List&lt;String&gt;</code>), for backends that store it outside of the
+     *             process.
+     * @return the list with the given name, created empty if it does not exist yet.
+     */
+    <T> List<T> list(String name, Type type);
+
+    /**
+     * @param initialValue value of the number if it does not exist yet.
+     * @return the number with the given name.
+     */
+    SharedNumber number(String name, long initialValue);
+
+    /**
+     * Announces that the instance is alive.
+     */
+    void heartbeat(String instanceId);
+
+    /**
+     * @return instances that sent a heartbeat within the given time.
+     */
+    Set<String> liveInstances(Duration timeout);
+
+    /**
+     * Appends a message to the inbox of the instance.
+     */
+    void send(String instanceId, String message);
+
+    /**
+     * Removes and returns all messages in the inbox of the instance, in the order they were sent.
+     */
+    List<String> receive(String instanceId);
+}
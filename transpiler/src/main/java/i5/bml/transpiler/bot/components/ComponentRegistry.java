@@ -1,6 +1,6 @@
 package i5.bml.transpiler.bot.components;
 
-import i5.bml.transpiler.bot.events.Event;
+import i5.bml.transpiler.bot.events.EventQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -8,7 +8,6 @@ import java.util.Arrays;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.PriorityBlockingQueue;
 
 public class ComponentRegistry {
 
@@ -16,7 +15,7 @@ public class ComponentRegistry {
 
     private ComponentRegistry() {}
 
-    public static void initComponents(ExecutorService threadPool, PriorityBlockingQueue<Event> eventQueue) {
+    public static void initComponents(ExecutorService threadPool, EventQueue eventQueue) {
         var futures = Arrays.stream(ComponentRegistry.class.getDeclaredMethods())
                 .filter(m -> m.isAnnotationPresent(ComponentInitializer.class))
                 .map(m -> {
@@ -1,4 +1,24 @@
 package i5.bml.transpiler.bot.config;
 
+import java.util.Objects;
+
 public class BotConfig {
+
+    /**
+     * Default of {@link ThreadingMode#configured()}, replaced if the bot declares <code>threads</code>
+     */
+    public static final String THREADS = "platform";
+
+    /**
+     * Runtime options can be set as system property (e.g., <code>-Dbml.queue.capacity=100</code>) or as environment
+     * variable (e.g., <code>BML_QUEUE_CAPACITY=100</code>), the system property takes precedence.
+     *
+     * @param name         name of the option without prefix, e.g., <code>queue.capacity</code>.
+     * @param defaultValue value if the option is not set.
+     * @return value of the option.
+     */
+    public static String option(String name, String defaultValue) {
+        var envValue = System.getenv("BML_" + name.replace('.', '_').toUpperCase());
+        return System.getProperty("bml." + name, Objects.requireNonNullElse(envValue, defaultValue));
+    }
 }
@@ -6,6 +6,11 @@ public class BotSettings {
 
     private String rasaModelName;
 
+    /**
+     * Fingerprint of the training data that the Rasa model has been trained on
+     */
+    private String rasaTrainingDataFingerprint;
+
     public String rasaModelName() {
         return rasaModelName;
     }
@@ -14,22 +19,32 @@ public class BotSettings {
         this.rasaModelName = rasaModelName;
     }
 
+    public String rasaTrainingDataFingerprint() {
+        return rasaTrainingDataFingerprint;
+    }
+
+    public void rasaTrainingDataFingerprint(String rasaTrainingDataFingerprint) {
+        this.rasaTrainingDataFingerprint = rasaTrainingDataFingerprint;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == this) return true;
         if (obj == null || obj.getClass() != this.getClass()) return false;
         var that = (BotSettings) obj;
-        return Objects.equals(this.rasaModelName, that.rasaModelName);
+        return Objects.equals(this.rasaModelName, that.rasaModelName)
+                && Objects.equals(this.rasaTrainingDataFingerprint, that.rasaTrainingDataFingerprint);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(rasaModelName);
+        return Objects.hash(rasaModelName, rasaTrainingDataFingerprint);
     }
 
     @Override
     public String toString() {
         return "BotSettings[" +
-                "rasaModelName=" + rasaModelName + ']';
+                "rasaModelName=" + rasaModelName + ", " +
+                "rasaTrainingDataFingerprint=" + rasaTrainingDataFingerprint + ']';
     }
 }
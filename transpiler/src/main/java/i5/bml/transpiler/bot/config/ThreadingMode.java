@@ -0,0 +1,86 @@
+package i5.bml.transpiler.bot.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Threads that event handlers, routines, and components run on. With {@link #VIRTUAL}, handlers that block on
+ * HTTP calls (e.g., to Rasa, OpenAI, or OpenAPI components) do not occupy a platform thread each, so bursts of
+ * concurrent conversations do not exhaust the threads of the machine.
+ * <p>
+ * The default is set at compile time (<code>Bot(threads="virtual")</code>) and can be overridden on start-up with
+ * <code>-Dbml.threads=virtual</code> or the environment variable <code>BML_THREADS</code>. Virtual threads require
+ * Java 21, on older runtimes we fall back to platform threads.
+ */
+public enum ThreadingMode {
+    PLATFORM,
+    VIRTUAL;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThreadingMode.class);
+
+    public static ThreadingMode configured() {
+        return resolve(BotConfig.option("threads", BotConfig.THREADS), virtualThreadsAvailable());
+    }
+
+    static ThreadingMode resolve(String value, boolean virtualThreadsAvailable) {
+        try {
+            var mode = valueOf(value.trim().toUpperCase());
+            if (mode == VIRTUAL && !virtualThreadsAvailable) {
+                LOGGER.warn("Virtual threads are not available on Java {}, falling back to platform threads", Runtime.version().feature());
+                return PLATFORM;
+            }
+
+            return mode;
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Unknown threading mode '{}', falling back to platform threads", value);
+            return PLATFORM;
+        }
+    }
+
+    /**
+     * @return executor for event handlers and components, creates threads on demand.
+     */
+    public ExecutorService newExecutor() {
+        if (this == VIRTUAL) {
+            try {
+                // Reflection, since the bot might be compiled with a JDK that does not know virtual threads yet
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                LOGGER.error("Failed to create virtual thread executor: {}", e.getMessage());
+                LOGGER.debug("Stacktrace:", e);
+            }
+        }
+
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * @return thread factory for fixed-size pools (e.g., the scheduler of routines).
+     */
+    public ThreadFactory threadFactory() {
+        if (this == VIRTUAL) {
+            try {
+                var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                LOGGER.error("Failed to create virtual thread factory: {}", e.getMessage());
+                LOGGER.debug("Stacktrace:", e);
+            }
+        }
+
+        return Executors.defaultThreadFactory();
+    }
+
+    static boolean virtualThreadsAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
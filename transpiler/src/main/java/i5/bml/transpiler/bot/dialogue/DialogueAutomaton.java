@@ -13,4 +13,14 @@ public interface DialogueAutomaton {
     State defaultState();
 
     State getStateByName(String stateName);
+
+    /**
+     * @return index of the current state, or -1 if the automaton is in a state that is not tracked (e.g., a sink).
+     */
+    int currentStateIndex();
+
+    /**
+     * Moves the automaton to the state with the given index without executing its action, unknown indices are ignored.
+     */
+    void restoreState(int stateIndex);
 }
@@ -63,6 +63,18 @@ public class DialogueAutomatonTemplate implements DialogueAutomaton {
         return namedStates.get(stateName);
     }
 
+    @Override
+    public int currentStateIndex() {
+        return states.indexOf(currentState);
+    }
+
+    @Override
+    public void restoreState(int stateIndex) {
+        if (stateIndex >= 0 && stateIndex < states.size()) {
+            currentState = states.get(stateIndex);
+        }
+    }
+
     @Override
     public String toString() {
         return "%s{currentState=%s}".formatted(getClass().getSimpleName(), currentState);
@@ -2,32 +2,45 @@ package i5.bml.transpiler.bot.events;
 
 import i5.bml.transpiler.bot.events.messenger.MessageEvent;
 import i5.bml.transpiler.bot.events.messenger.MessageEventContext;
-import i5.bml.transpiler.bot.events.messenger.MessageEventType;
+import i5.bml.transpiler.bot.events.messenger.MessageEventHandler;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Method;
-import java.util.Arrays;
-import java.util.EnumMap;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class EventHandlerRegistry {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EventHandlerRegistry.class);
 
-    private static final Map<MessageEventType, Method> messageEventHandler = new EnumMap<>(MessageEventType.class);
-
     private EventHandlerRegistry() {}
 
-    public static void registerEventHandler(Class<?> eventHandlerClazz) {
-        Arrays.stream(eventHandlerClazz.getDeclaredMethods())
-                .forEach(m -> {
-                    var eventHandlers = m.getAnnotationsByType(MessageEventHandlerMethod.class);
-                    for (var eventHandler : eventHandlers) {
-                        messageEventHandler.put(eventHandler.messageEventType(), m);
-                    }
-                });
+    /**
+     * Starts NLU for message events whose handler needs it, see {@link MessageEventHandler#understand(MessageEvent)}.
+     *
+     * @return completes with false if the event could not be understood (which has been logged), i.e., its handler must
+     * not be dispatched. Never completes exceptionally.
+     */
+    public static CompletableFuture<Boolean> understand(Event event) {
+        if (!(event instanceof MessageEvent messageEvent) || messageEvent.messageEventType() == null) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        CompletableFuture<Void> understood;
+        try {
+            understood = MessageEventHandler.understand(messageEvent);
+        } catch (Exception e) {
+            understood = CompletableFuture.failedFuture(e);
+        }
+
+        return understood.handle((r, e) -> {
+            if (e != null) {
+                LOGGER.error("Understanding message event {} failed: {}", messageEvent.messageEventType(), ExceptionUtils.getRootCause(e).getMessage());
+                LOGGER.debug("Stacktrace:", e);
+                return false;
+            }
+            return true;
+        });
     }
 
     public static void dispatchEventHandler(Event event) {
@@ -39,17 +52,19 @@ public class EventHandlerRegistry {
 
         if (eventSource == EventSource.SLACK || eventSource == EventSource.TELEGRAM) {
             var messageEvent = (MessageEvent) event;
+            if (messageEvent.messageEventType() == null) {
+                LOGGER.warn("Message event {} has no type. Not executing any event handlers.", messageEvent);
+                return;
+            }
 
-            var handler = messageEventHandler.get(messageEvent.messageEventType());
-            if (handler == null) {
-                LOGGER.warn("No handler registered for message event {}", messageEvent.messageEventType());
-            } else {
-                try {
-                    handler.invoke(null, new MessageEventContext(messageEvent));
-                } catch (Exception e) {
-                    LOGGER.error("Execution of handler for message event {} failed: {}", messageEvent.messageEventType(), e.getCause().getMessage());
-                    LOGGER.debug("Stacktrace:", e);
+            try {
+                // Handlers are known at compile time, hence, the generated `dispatch` calls them directly
+                if (!MessageEventHandler.dispatch(new MessageEventContext(messageEvent))) {
+                    LOGGER.warn("No handler registered for message event {}", messageEvent.messageEventType());
                 }
+            } catch (Exception e) {
+                LOGGER.error("Execution of handler for message event {} failed: {}", messageEvent.messageEventType(), ExceptionUtils.getRootCause(e).getMessage());
+                LOGGER.debug("Stacktrace:", e);
             }
         }
     }
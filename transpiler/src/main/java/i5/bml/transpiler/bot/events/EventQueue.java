@@ -0,0 +1,336 @@
+package i5.bml.transpiler.bot.events;
+
+import i5.bml.transpiler.bot.config.BotConfig;
+import i5.bml.transpiler.bot.events.messenger.MessageEvent;
+import i5.bml.transpiler.bot.events.messenger.MessageHelper;
+import i5.bml.transpiler.bot.events.routines.RoutineEvent;
+import i5.bml.transpiler.bot.tracing.Tracer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue of incoming events, ordered by arrival time. Once the queue is full, the {@link OverflowPolicy}
+ * decides what happens to new events, hence, a traffic spike costs latency or single events, but never the memory of
+ * the whole bot.
+ * <p>
+ * The queue is partitioned into shards by chat, each consumed by its own dispatcher loop (see {@link #take(int)}).
+ * Events of a chat always end up in the same shard, so they are dispatched in order without any coordination
+ * between the loops.
+ * <p>
+ * Configured on start-up with <code>queue.capacity</code> (default {@value DEFAULT_CAPACITY}),
+ * <code>queue.policy</code> (default <code>block</code>), <code>queue.busyMessage</code>, and
+ * <code>dispatcher.shards</code> (default: number of cores), see {@link BotConfig#option(String, String)}.
+ */
+public class EventQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventQueue.class);
+
+    private static final int DEFAULT_CAPACITY = 1000;
+
+    private static final String DEFAULT_BUSY_MESSAGE = "I am a bit overwhelmed right now, please try again in a few minutes.";
+
+    public enum OverflowPolicy {
+        /**
+         * Producers (i.e., messenger components and the routine scheduler) wait until there is space again
+         */
+        BLOCK,
+
+        /**
+         * The event that arrived first is dropped in favor of the new one
+         */
+        DROP_OLDEST,
+
+        /**
+         * Queued routine events are dropped in favor of messages, if there are none, the oldest event is dropped
+         */
+        DROP_ROUTINES_FIRST,
+
+        /**
+         * New events are dropped, their authors receive a "busy" message
+         */
+        REPLY_BUSY
+    }
+
+    private final Shard[] shards;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final String busyMessage;
+
+    private final LongAdder droppedEvents = new LongAdder();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicInteger peakSize = new AtomicInteger();
+
+    /**
+     * Spreads events without a chat (e.g., group membership changes without session) over the shards
+     */
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    public EventQueue(int capacity, OverflowPolicy overflowPolicy, String busyMessage) {
+        this(capacity, 1, overflowPolicy, busyMessage);
+    }
+
+    /**
+     * @param capacity   total capacity, evenly divided among the shards.
+     * @param shardCount number of shards, each shard is consumed by its own dispatcher loop.
+     */
+    public EventQueue(int capacity, int shardCount, OverflowPolicy overflowPolicy, String busyMessage) {
+        if (capacity < 1 || shardCount < 1) {
+            throw new IllegalArgumentException("Capacity and shard count must be positive, got %d and %d".formatted(capacity, shardCount));
+        }
+
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            // Round up, so that we never have less than the requested capacity
+            shards[i] = new Shard(i, (capacity + shardCount - 1) / shardCount);
+        }
+        this.overflowPolicy = overflowPolicy;
+        this.busyMessage = busyMessage;
+    }
+
+    public static EventQueue configured() {
+        var capacityOption = BotConfig.option("queue.capacity", String.valueOf(DEFAULT_CAPACITY));
+        var policyOption = BotConfig.option("queue.policy", OverflowPolicy.BLOCK.name());
+        var shardsOption = BotConfig.option("dispatcher.shards", String.valueOf(Runtime.getRuntime().availableProcessors()));
+
+        int capacity;
+        try {
+            capacity = Math.max(1, Integer.parseInt(capacityOption.trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid event queue capacity '{}', using {}", capacityOption, DEFAULT_CAPACITY);
+            capacity = DEFAULT_CAPACITY;
+        }
+
+        int shardCount;
+        try {
+            shardCount = Math.max(1, Integer.parseInt(shardsOption.trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid number of dispatcher shards '{}', using 1", shardsOption);
+            shardCount = 1;
+        }
+
+        OverflowPolicy overflowPolicy;
+        try {
+            overflowPolicy = OverflowPolicy.valueOf(policyOption.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Unknown event queue policy '{}', using {}", policyOption, OverflowPolicy.BLOCK);
+            overflowPolicy = OverflowPolicy.BLOCK;
+        }
+
+        LOGGER.info("Event queue holds up to {} events in {} shard(s), overflow policy {}", capacity, shardCount, overflowPolicy);
+        return new EventQueue(capacity, shardCount, overflowPolicy, BotConfig.option("queue.busyMessage", DEFAULT_BUSY_MESSAGE));
+    }
+
+    /**
+     * Enqueues the event into the shard of its chat, or applies the overflow policy if that shard is full. If the
+     * calling thread is interrupted while waiting for space, the event is dropped and the interrupt flag is restored.
+     */
+    public void put(Event event) {
+        if (event instanceof MessageEvent messageEvent) {
+            // The root span covers the event from its arrival until its handler has finished
+            var trace = Tracer.current().startTrace("message");
+            trace.root().attribute("bml.messenger", messageEvent.eventSource()).attribute("bml.event", messageEvent.messageEventType());
+            messageEvent.trace(trace);
+        }
+
+        var droppedEvent = shards[shardOf(event)].put(event);
+        if (droppedEvent == null) {
+            peakSize.accumulateAndGet(size.incrementAndGet(), Math::max);
+        } else {
+            // Either the new event or a queued one that made room for it, the size stays the same
+            drop(droppedEvent);
+        }
+    }
+
+    /**
+     * @param shard index of the shard, in <code>[0, shardCount())</code>.
+     */
+    public Event take(int shard) throws InterruptedException {
+        var event = shards[shard].take();
+        size.decrementAndGet();
+        return event;
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return largest number of events that have been waiting at the same time.
+     */
+    public int peakSize() {
+        return peakSize.get();
+    }
+
+    public int capacity() {
+        return shards.length * shards[0].capacity;
+    }
+
+    public long droppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    /**
+     * Events of the same chat always end up in the same shard, hence, their order is preserved.
+     */
+    private int shardOf(Event event) {
+        if (shards.length == 1) {
+            return 0;
+        }
+
+        Object key;
+        if (event instanceof MessageEvent messageEvent && messageEvent.session() != null) {
+            key = messageEvent.session().chatId();
+        } else if (event instanceof RoutineEvent routineEvent) {
+            key = routineEvent.routineName();
+        } else {
+            return Math.floorMod(nextShard.getAndIncrement(), shards.length);
+        }
+
+        // Spread the hash, chat IDs are often sequential numbers
+        var hash = key.hashCode() * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    private void drop(Event event) {
+        droppedEvents.increment();
+        LOGGER.debug("Dropped event {}", event);
+        if (event instanceof MessageEvent messageEvent) {
+            var root = messageEvent.trace().root();
+            root.attribute("bml.dropped", true).error();
+            messageEvent.trace().finish();
+        }
+
+        // Replying blocks the producer, which is fine, since we are overloaded anyway
+        if (overflowPolicy == OverflowPolicy.REPLY_BUSY && event instanceof MessageEvent messageEvent && messageEvent.user() != null) {
+            try {
+                MessageHelper.replyToMessenger(messageEvent.user(), busyMessage);
+            } catch (Exception e) {
+                LOGGER.error("Failed to send busy message: {}", e.getMessage());
+                LOGGER.debug("Stacktrace:", e);
+            }
+        }
+    }
+
+    /**
+     * A bounded priority queue with its own lock, shards do not contend with each other.
+     */
+    private class Shard {
+
+        private final PriorityQueue<Event> events = new PriorityQueue<>(Comparator.comparingLong(Event::arrivalTime));
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Condition notEmpty = lock.newCondition();
+
+        private final Condition notFull = lock.newCondition();
+
+        private final int index;
+
+        private final int capacity;
+
+        private boolean overflowing;
+
+        private Shard(int index, int capacity) {
+            this.index = index;
+            this.capacity = capacity;
+        }
+
+        /**
+         * @return the event that has been dropped (which might be the given one), or null.
+         */
+        private Event put(Event event) {
+            Event droppedEvent = null;
+            lock.lock();
+            try {
+                if (events.size() >= capacity) {
+                    if (!overflowing) {
+                        overflowing = true;
+                        LOGGER.warn("Event queue shard {} is full ({} events), applying overflow policy {}", index, capacity, overflowPolicy);
+                    }
+
+                    droppedEvent = switch (overflowPolicy) {
+                        case BLOCK -> awaitSpace(event);
+                        case DROP_OLDEST -> events.poll();
+                        case DROP_ROUTINES_FIRST -> dropRoutineEvent(event);
+                        case REPLY_BUSY -> event;
+                    };
+                }
+
+                if (droppedEvent != event) {
+                    events.add(event);
+                    notEmpty.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            return droppedEvent;
+        }
+
+        private Event take() throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                while (events.isEmpty()) {
+                    notEmpty.await();
+                }
+
+                var event = events.poll();
+                if (overflowing && events.size() < capacity / 2) {
+                    overflowing = false;
+                    LOGGER.info("Event queue shard {} recovered, {} event(s) dropped so far", index, droppedEvents.sum());
+                }
+
+                notFull.signal();
+                return event;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return the given event if we were interrupted while waiting, null otherwise.
+         */
+        private Event awaitSpace(Event event) {
+            try {
+                while (events.size() >= capacity) {
+                    notFull.await();
+                }
+
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return event;
+            }
+        }
+
+        private Event dropRoutineEvent(Event event) {
+            if (event.eventSource() == EventSource.ROUTINE) {
+                return event;
+            }
+
+            var routineEvent = events.stream()
+                    .filter(e -> e.eventSource() == EventSource.ROUTINE)
+                    .min(events.comparator());
+            if (routineEvent.isPresent()) {
+                events.remove(routineEvent.get());
+                return routineEvent.get();
+            }
+
+            return events.poll();
+        }
+    }
+}
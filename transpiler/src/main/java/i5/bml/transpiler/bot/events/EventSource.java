@@ -2,5 +2,6 @@ package i5.bml.transpiler.bot.events;
 
 public enum EventSource {
     TELEGRAM,
-    SLACK
+    SLACK,
+    ROUTINE
 }
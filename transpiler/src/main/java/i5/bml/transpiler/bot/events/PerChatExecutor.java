@@ -0,0 +1,126 @@
+package i5.bml.transpiler.bot.events;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Executes tasks of the same chat one after another (in submission order), while tasks of different chats run in
+ * parallel on the given executor.
+ * <p>
+ * Every chat with pending tasks has a mailbox, the head of a mailbox is the task that is currently running. Once a
+ * mailbox runs empty, it is removed, i.e., we only keep state for chats that are currently active.
+ * <p>
+ * Asynchronous tasks (see {@link #executeAsync(Object, Supplier)}) stay at the head of their mailbox until they have
+ * completed, but no thread waits for them in the meantime.
+ */
+public class PerChatExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PerChatExecutor.class);
+
+    private final Executor executor;
+
+    /**
+     * Mailboxes are only accessed inside of <code>compute</code> calls, which serialize access per chat
+     */
+    private final ConcurrentHashMap<Object, ArrayDeque<Supplier<? extends CompletionStage<?>>>> mailboxes = new ConcurrentHashMap<>();
+
+    public PerChatExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public void execute(Object chatId, Runnable task) {
+        executeAsync(chatId, () -> {
+            task.run();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Like {@link #execute(Object, Runnable)}, but the next task of the chat only starts once the stage returned by the
+     * task has completed (normally or exceptionally).
+     */
+    public void executeAsync(Object chatId, Supplier<? extends CompletionStage<?>> task) {
+        var idle = new boolean[1];
+        mailboxes.compute(chatId, (k, mailbox) -> {
+            if (mailbox == null) {
+                mailbox = new ArrayDeque<>();
+                idle[0] = true;
+            }
+
+            mailbox.add(task);
+            return mailbox;
+        });
+
+        // Otherwise, the task is picked up by the drain that is already running for this chat
+        if (idle[0]) {
+            executor.execute(() -> drain(chatId, task));
+        }
+    }
+
+    /**
+     * @return number of chats that currently have pending tasks.
+     */
+    public int activeChats() {
+        return mailboxes.size();
+    }
+
+    private void drain(Object chatId, Supplier<? extends CompletionStage<?>> task) {
+        while (task != null) {
+            CompletableFuture<?> completion = null;
+            try {
+                completion = task.get().toCompletableFuture();
+            } catch (Exception e) {
+                logFailure(chatId, e);
+            }
+
+            if (completion != null) {
+                if (!completion.isDone()) {
+                    // Release the thread, the chat continues once the task has completed
+                    completion.whenComplete((r, e) -> {
+                        if (e != null) {
+                            logFailure(chatId, e);
+                        }
+                        executor.execute(() -> drain(chatId, completeTask(chatId)));
+                    });
+                    return;
+                }
+
+                // Already completed, hence, this runs right away
+                completion.whenComplete((r, e) -> {
+                    if (e != null) {
+                        logFailure(chatId, e);
+                    }
+                });
+            }
+
+            task = completeTask(chatId);
+        }
+    }
+
+    private static void logFailure(Object chatId, Throwable e) {
+        LOGGER.error("An exception occurred while executing task of chat {}:\n{}", chatId, ExceptionUtils.getRootCause(e).getMessage());
+    }
+
+    /**
+     * @return the next task of the chat, or null if the chat has become idle (and its mailbox has been removed).
+     */
+    private Supplier<? extends CompletionStage<?>> completeTask(Object chatId) {
+        var next = new AtomicReference<Supplier<? extends CompletionStage<?>>>();
+        mailboxes.computeIfPresent(chatId, (k, mailbox) -> {
+            mailbox.poll();
+            next.set(mailbox.peek());
+            return next.get() == null ? null : mailbox;
+        });
+
+        return next.get();
+    }
+}
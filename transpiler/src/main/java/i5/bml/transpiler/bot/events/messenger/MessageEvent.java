@@ -4,6 +4,7 @@ import i5.bml.transpiler.bot.events.Event;
 import i5.bml.transpiler.bot.events.EventSource;
 import i5.bml.transpiler.bot.threads.Session;
 import i5.bml.transpiler.bot.threads.User;
+import i5.bml.transpiler.bot.tracing.Trace;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -51,6 +52,11 @@ public class MessageEvent implements Event {
 
     private final long arrivalTime;
 
+    /**
+     * Started on arrival in the event queue, {@link Trace#NONE} if the event is not traced
+     */
+    private Trace trace = Trace.NONE;
+
     public MessageEvent(EventSource eventSource, long arrivalTime) {
         this.eventSource = eventSource;
         this.arrivalTime = arrivalTime;
@@ -120,6 +126,14 @@ public class MessageEvent implements Event {
         this.username = username;
     }
 
+    public Trace trace() {
+        return trace;
+    }
+
+    public void trace(Trace trace) {
+        this.trace = trace;
+    }
+
     @Override
     public EventSource eventSource() {
         return eventSource;
@@ -1,6 +1,33 @@
 package i5.bml.transpiler.bot.events.messenger;
 
+import java.util.concurrent.CompletableFuture;
+
 public class MessageEventHandler {
 
     private MessageEventHandler() {}
+
+    /**
+     * Calls the handler of the event's type directly, the transpiler adds a case for every handler.
+     *
+     * @return false if there is no handler for the event's type.
+     */
+    public static boolean dispatch(MessageEventContext ctx) {
+        switch (ctx.event().messageEventType()) {
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Sets intent and entity of the event if its handler needs them, the transpiler adds a case for every such handler.
+     * NLU requests are sent asynchronously, i.e., no thread waits for the NLU model while it computes.
+     *
+     * @return completes once the event is ready to be dispatched.
+     */
+    public static CompletableFuture<Void> understand(MessageEvent event) {
+        switch (event.messageEventType()) {
+            default:
+                return CompletableFuture.completedFuture(null);
+        }
+    }
 }
@@ -1,9 +1,13 @@
 package i5.bml.transpiler.bot.events.messenger;
 
+import i5.bml.transpiler.bot.metrics.MetricsRegistry;
 import i5.bml.transpiler.bot.threads.User;
+import i5.bml.transpiler.bot.tracing.Tracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.function.BooleanSupplier;
+
 public class MessageHelper {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MessageHelper.class);
@@ -17,4 +21,38 @@ public class MessageHelper {
     public static void replyToMessenger(MessageEventContext context, String msg) {
         replyToMessenger(context.event().user(), msg);
     }
+
+    /**
+     * @return a message that is shown while its text is generated, if the messenger can edit messages, otherwise, the
+     * complete text is sent once it is there.
+     */
+    public static MessageStream streamToMessenger(User user) {
+        return new MessageStream("unknown", null, msg -> replyToMessenger(user, msg));
+    }
+
+    public static MessageStream streamToMessenger(MessageEventContext context) {
+        return streamToMessenger(context.event().user());
+    }
+
+    /**
+     * Called by the send methods that messenger components add to this class
+     *
+     * @param send sends the message, returns whether it has been sent.
+     */
+    private static void send(String messenger, BooleanSupplier send) {
+        boolean sent;
+        try (var span = Tracer.startSpan("reply")) {
+            span.attribute("bml.messenger", messenger);
+            sent = send.getAsBoolean();
+            if (!sent) {
+                span.error();
+            }
+        }
+
+        if (sent) {
+            MetricsRegistry.shared().counter("bml_messages_sent_total", "Messages sent to messengers", "messenger", messenger).increment();
+        } else {
+            MetricsRegistry.shared().counter("bml_message_send_failures_total", "Messages that could not be sent to messengers", "messenger", messenger).increment();
+        }
+    }
 }
@@ -0,0 +1,147 @@
+package i5.bml.transpiler.bot.events.messenger;
+
+import i5.bml.transpiler.bot.config.BotConfig;
+import i5.bml.transpiler.bot.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * A message that is delivered while its text is generated, e.g., a streamed completion of a language model. The message
+ * is posted as soon as there is text, and then edited with the text so far, at most once per update interval (messengers
+ * limit the rate of edits). Once the text is complete, the message gets its final text. Messengers that cannot edit
+ * messages get the complete text as a normal reply instead, just like messages that could not be posted.
+ * <p>
+ * Used by the thread that generates the text, i.e., not thread-safe.
+ * <p>
+ * Configured on start-up with <code>messages.stream.updateMillis</code> (default {@value DEFAULT_UPDATE_MILLIS}), see
+ * {@link BotConfig#option(String, String)}.
+ */
+public class MessageStream {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageStream.class);
+
+    private static final int DEFAULT_UPDATE_MILLIS = 1000;
+
+    private static final Duration UPDATE_INTERVAL = updateInterval();
+
+    /**
+     * A message in a messenger that can be edited
+     */
+    public interface Target {
+        /**
+         * Posts the first version of the message, as plain text.
+         *
+         * @return handle of the posted message (e.g., its ID), or null if it could not be posted.
+         */
+        Object post(String text);
+
+        /**
+         * @param complete whether the text is final, i.e., formatting (e.g., Markdown) can be applied.
+         * @return whether the message has been edited.
+         */
+        boolean edit(Object handle, String text, boolean complete);
+    }
+
+    private final String messenger;
+
+    private final Target target;
+
+    private final Consumer<String> reply;
+
+    private final long updateIntervalNanos;
+
+    private final StringBuilder text = new StringBuilder();
+
+    private Object handle;
+
+    private boolean postFailed;
+
+    private int shownLength;
+
+    private long lastUpdate;
+
+    /**
+     * @param target null if the messenger cannot edit messages.
+     * @param reply  sends the complete text as a normal reply.
+     */
+    public MessageStream(String messenger, Target target, Consumer<String> reply, Duration updateInterval) {
+        this.messenger = messenger;
+        this.target = target;
+        this.reply = reply;
+        this.updateIntervalNanos = updateInterval.toNanos();
+    }
+
+    /**
+     * With the configured update interval
+     */
+    public MessageStream(String messenger, Target target, Consumer<String> reply) {
+        this(messenger, target, reply, UPDATE_INTERVAL);
+    }
+
+    private static Duration updateInterval() {
+        try {
+            return Duration.ofMillis(Math.max(0, Integer.parseInt(BotConfig.option("messages.stream.updateMillis",
+                    String.valueOf(DEFAULT_UPDATE_MILLIS)).trim())));
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid message stream option: {}", e.getMessage());
+            return Duration.ofMillis(DEFAULT_UPDATE_MILLIS);
+        }
+    }
+
+    /**
+     * Appends generated text, and shows it if the message has not been posted yet or the last update is long enough
+     * ago.
+     */
+    public void append(String delta) {
+        text.append(delta);
+        if (target == null || postFailed) {
+            return;
+        }
+
+        var now = System.nanoTime();
+        if (handle == null) {
+            // Messengers reject blank messages
+            if (delta.isBlank()) {
+                return;
+            }
+
+            handle = target.post(text.toString());
+            postFailed = handle == null;
+            shownLength = text.length();
+            lastUpdate = now;
+        } else if (now - lastUpdate >= updateIntervalNanos && text.length() > shownLength) {
+            if (target.edit(handle, text.toString(), false)) {
+                shownLength = text.length();
+            }
+            lastUpdate = now;
+            MetricsRegistry.shared().counter("bml_message_edits_total", "Edits of streamed messages", "messenger", messenger).increment();
+        }
+    }
+
+    /**
+     * Shows the complete text. If the final edit fails, but the message already shows the complete text (only without
+     * formatting), it is not sent again.
+     */
+    public void complete() {
+        var completeText = text.toString();
+        if (handle != null && (target.edit(handle, completeText, true) || shownLength == completeText.length())) {
+            MetricsRegistry.shared().counter("bml_messages_sent_total", "Messages sent to messengers", "messenger", messenger).increment();
+            return;
+        }
+
+        if (handle != null) {
+            // The user only sees a part of the text otherwise
+            LOGGER.warn("Failed to show the complete text of a streamed message, sending it again");
+        }
+        if (!completeText.isBlank()) {
+            reply.accept(completeText);
+        }
+    }
+
+    public String text() {
+        return text.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package i5.bml.transpiler.bot.events.routines;
+
+import i5.bml.transpiler.bot.events.Event;
+import i5.bml.transpiler.bot.events.EventSource;
+
+/**
+ * Emitted whenever a routine is due, so that routines compete with messages for the event queue.
+ */
+public class RoutineEvent implements Event {
+
+    private final String routineName;
+
+    /**
+     * Invokes the routine, the same instance for every event of a routine
+     */
+    private final Runnable routine;
+
+    private final long arrivalTime;
+
+    public RoutineEvent(String routineName, Runnable routine, long arrivalTime) {
+        this.routineName = routineName;
+        this.routine = routine;
+        this.arrivalTime = arrivalTime;
+    }
+
+    public String routineName() {
+        return routineName;
+    }
+
+    public Runnable routine() {
+        return routine;
+    }
+
+    @Override
+    public EventSource eventSource() {
+        return EventSource.ROUTINE;
+    }
+
+    @Override
+    public long arrivalTime() {
+        return arrivalTime;
+    }
+
+    @Override
+    public String toString() {
+        return "RoutineEvent{routineName='%s', arrivalTime=%d}".formatted(routineName, arrivalTime);
+    }
+}
@@ -1,13 +1,13 @@
 package i5.bml.transpiler.bot.events.routines;
 
-import i5.bml.transpiler.bot.events.RoutineEventHandlerMethod;
+import i5.bml.transpiler.bot.events.EventQueue;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.InvocationTargetException;
-import java.util.Arrays;
+import java.time.Instant;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class RoutineEventHandler {
 
@@ -15,19 +15,26 @@ public class RoutineEventHandler {
 
     private RoutineEventHandler() {}
 
-    public static void registerEventHandler(ScheduledThreadPoolExecutor scheduler) {
-        Arrays.stream(RoutineEventHandler.class.getDeclaredMethods())
-                .filter(m -> m.isAnnotationPresent(RoutineEventHandlerMethod.class))
-                .forEach(m -> {
-                    var annotation = m.getAnnotation(RoutineEventHandlerMethod.class);
-                    scheduler.setCorePoolSize(scheduler.getCorePoolSize() + 1);
-                    scheduler.scheduleAtFixedRate(() -> {
-                        try {
-                            m.invoke(null, (Object) null);
-                        } catch (IllegalAccessException | InvocationTargetException e) {
-                            LOGGER.error("Invoking routine {} failed", m.getDeclaringClass().getSimpleName(), ExceptionUtils.getRootCause(e));
-                        }
-                    }, 0, annotation.period(), annotation.timeUnit());
-                });
+    /**
+     * Schedules every routine, the transpiler adds a call to {@link #schedule} for each of them.
+     */
+    public static void registerEventHandler(ScheduledThreadPoolExecutor scheduler, EventQueue eventQueue) {
+    }
+
+    /**
+     * The scheduler only emits a {@link RoutineEvent} whenever a routine is due, the routine itself is executed
+     * like any other event handler.
+     */
+    private static void schedule(ScheduledThreadPoolExecutor scheduler, EventQueue eventQueue, String routineName,
+                                 Runnable routine, long period, TimeUnit timeUnit) {
+        Runnable guardedRoutine = () -> {
+            try {
+                routine.run();
+            } catch (Exception e) {
+                LOGGER.error("Invoking routine {} failed", routineName, ExceptionUtils.getRootCause(e));
+            }
+        };
+        scheduler.scheduleAtFixedRate(() -> eventQueue.put(new RoutineEvent(routineName, guardedRoutine,
+                Instant.now().getEpochSecond())), 0, period, timeUnit);
     }
 }
@@ -0,0 +1,289 @@
+package i5.bml.transpiler.bot.http;
+
+import i5.bml.transpiler.bot.config.BotConfig;
+import i5.bml.transpiler.bot.metrics.MetricsRegistry;
+import i5.bml.transpiler.bot.metrics.RequestMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serial;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Stops calling a dependency (e.g., Rasa or OpenAI) that fails or is slow, such that messages fail fast (and get a
+ * fallback) instead of piling up behind it. Calls are counted over the last calls: once enough calls have been made and
+ * too many of them failed or took too long, the breaker opens and rejects all calls. After the open duration, a single
+ * probe call is let through (half-open): if it succeeds in time, the breaker closes again, otherwise it stays open for
+ * another open duration. The breaker does not cancel calls, their duration is bounded by the timeouts of
+ * {@link HttpSettings}.
+ * <p>
+ * Configured on start-up per dependency, e.g., for <code>rasa</code>, with <code>breaker.rasa.slowCallMillis</code>
+ * (default depends on the dependency), <code>breaker.rasa.windowSize</code> (default {@value DEFAULT_WINDOW_SIZE}),
+ * <code>breaker.rasa.minimumCalls</code> (default {@value DEFAULT_MINIMUM_CALLS}),
+ * <code>breaker.rasa.failureRatePercent</code> and <code>breaker.rasa.slowCallRatePercent</code> (default
+ * {@value DEFAULT_RATE_PERCENT} each), and <code>breaker.rasa.openSeconds</code> (default {@value DEFAULT_OPEN_SECONDS}),
+ * see {@link BotConfig#option(String, String)}.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private static final int DEFAULT_WINDOW_SIZE = 20;
+
+    private static final int DEFAULT_MINIMUM_CALLS = 10;
+
+    private static final int DEFAULT_RATE_PERCENT = 50;
+
+    private static final int DEFAULT_OPEN_SECONDS = 30;
+
+    private static final byte FAILED = 1;
+
+    private static final byte SLOW = 2;
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    /**
+     * The call has not been made, since the breaker is open
+     */
+    public static class OpenException extends RuntimeException {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        public OpenException(String dependency) {
+            super("Circuit breaker of %s is open, not calling it".formatted(dependency));
+        }
+    }
+
+    private final String dependency;
+
+    private final long slowCallNanos;
+
+    private final int minimumCalls;
+
+    private final int failureRatePercent;
+
+    private final int slowCallRatePercent;
+
+    private final long openNanos;
+
+    /**
+     * Outcomes of the last calls (ring buffer), a combination of {@link #FAILED} and {@link #SLOW}, 0 if the call was
+     * fine
+     */
+    private final byte[] outcomes;
+
+    private int nextOutcome;
+
+    private int recordedCalls;
+
+    private int failedCalls;
+
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    private boolean probing;
+
+    /**
+     * Incremented with every transition, tells calls that were permitted in an earlier state apart
+     */
+    private long generation;
+
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    public CircuitBreaker(String dependency, Duration slowCallThreshold, int windowSize, int minimumCalls,
+                          int failureRatePercent, int slowCallRatePercent, Duration openDuration) {
+        this.dependency = dependency;
+        this.slowCallNanos = slowCallThreshold.toNanos();
+        this.outcomes = new byte[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallRatePercent = slowCallRatePercent;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * @param defaultSlowCallThreshold calls that take at least as long count as slow, unless configured otherwise.
+     */
+    public static CircuitBreaker configured(String dependency, Duration defaultSlowCallThreshold) {
+        var prefix = "breaker." + dependency + ".";
+        var breaker = new CircuitBreaker(dependency,
+                Duration.ofMillis(intOption(prefix + "slowCallMillis", (int) defaultSlowCallThreshold.toMillis())),
+                intOption(prefix + "windowSize", DEFAULT_WINDOW_SIZE),
+                intOption(prefix + "minimumCalls", DEFAULT_MINIMUM_CALLS),
+                intOption(prefix + "failureRatePercent", DEFAULT_RATE_PERCENT),
+                intOption(prefix + "slowCallRatePercent", DEFAULT_RATE_PERCENT),
+                Duration.ofSeconds(intOption(prefix + "openSeconds", DEFAULT_OPEN_SECONDS)));
+
+        var metrics = MetricsRegistry.shared();
+        metrics.gauge("bml_circuit_breaker_state", "State of the circuit breaker of a dependency (0 closed, 1 open, 2 half-open)",
+                () -> breaker.state().ordinal(), "dependency", dependency);
+        metrics.counter("bml_circuit_breaker_rejected_calls_total", "Calls that failed fast since the circuit breaker was open",
+                breaker::rejectedCalls, "dependency", dependency);
+
+        return breaker;
+    }
+
+    private static int intOption(String name, int defaultValue) {
+        try {
+            return Math.max(1, Integer.parseInt(BotConfig.option(name, String.valueOf(defaultValue)).trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid circuit breaker option {}: {}", name, e.getMessage());
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Permission to make one call, its outcome has to be recorded with {@link #record(long, boolean)}
+     */
+    public final class Permit {
+
+        private final long generation;
+
+        private final boolean probe;
+
+        private Permit(long generation, boolean probe) {
+            this.generation = generation;
+            this.probe = probe;
+        }
+
+        /**
+         * @param durationNanos how long the call took, e.g., until the first response for streamed responses.
+         */
+        public void record(long durationNanos, boolean failed) {
+            CircuitBreaker.this.record(this, durationNanos, failed);
+        }
+    }
+
+    /**
+     * Asks for permission to make a call.
+     *
+     * @return the permit of the call, or null if the call must not be made.
+     */
+    public synchronized Permit tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            transition(State.HALF_OPEN);
+        }
+
+        if (state == State.CLOSED || state == State.HALF_OPEN && !probing) {
+            probing = state == State.HALF_OPEN;
+            return new Permit(generation, probing);
+        }
+
+        rejectedCalls.increment();
+        return null;
+    }
+
+    private synchronized void record(Permit permit, long durationNanos, boolean failed) {
+        var slow = durationNanos >= slowCallNanos;
+        // Only the outcome of the probe itself decides, not of calls that were permitted before the breaker opened
+        if (permit.probe) {
+            if (permit.generation == generation) {
+                probing = false;
+                transition(failed || slow ? State.OPEN : State.CLOSED);
+            }
+            return;
+        }
+
+        // Calls that were permitted in an earlier state do not count anymore
+        if (state != State.CLOSED || permit.generation != generation) {
+            return;
+        }
+
+        var outcome = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+        var replaced = recordedCalls == outcomes.length ? outcomes[nextOutcome] : 0;
+        failedCalls += (outcome & FAILED) - (replaced & FAILED);
+        slowCalls += ((outcome & SLOW) - (replaced & SLOW)) / SLOW;
+        outcomes[nextOutcome] = outcome;
+        nextOutcome = (nextOutcome + 1) % outcomes.length;
+        recordedCalls = Math.min(recordedCalls + 1, outcomes.length);
+
+        if (recordedCalls >= minimumCalls
+                && (failedCalls * 100 >= failureRatePercent * recordedCalls || slowCalls * 100 >= slowCallRatePercent * recordedCalls)) {
+            LOGGER.warn("{} of the last {} calls of {} failed and {} were slow", failedCalls, recordedCalls, dependency, slowCalls);
+            transition(State.OPEN);
+        }
+    }
+
+    private void transition(State newState) {
+        if (newState == State.OPEN) {
+            openedAt = System.nanoTime();
+            LOGGER.warn("Circuit breaker of {} opened, failing calls fast for {} s", dependency, Duration.ofNanos(openNanos).toSeconds());
+        } else if (newState == State.CLOSED) {
+            LOGGER.info("Circuit breaker of {} closed, {} works again", dependency, dependency);
+        }
+
+        generation++;
+        if (newState != State.HALF_OPEN) {
+            // Every state starts counting from scratch
+            recordedCalls = 0;
+            nextOutcome = 0;
+            failedCalls = 0;
+            slowCalls = 0;
+        }
+        state = newState;
+    }
+
+    /**
+     * Makes the call, unless the breaker is open.
+     *
+     * @throws OpenException if the breaker is open.
+     */
+    public <T, E extends Exception> T call(RequestMetrics.Request<T, E> request) throws E {
+        var permit = tryAcquire();
+        if (permit == null) {
+            throw new OpenException(dependency);
+        }
+
+        var start = System.nanoTime();
+        var failed = true;
+        try {
+            var result = request.execute();
+            failed = false;
+            return result;
+        } finally {
+            permit.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Like {@link #call(RequestMetrics.Request)}, for calls that complete asynchronously.
+     *
+     * @return completes exceptionally with {@link OpenException} if the breaker is open.
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> request) {
+        var permit = tryAcquire();
+        if (permit == null) {
+            return CompletableFuture.failedFuture(new OpenException(dependency));
+        }
+
+        var start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = request.get();
+        } catch (RuntimeException e) {
+            permit.record(System.nanoTime() - start, true);
+            throw e;
+        }
+
+        return future.whenComplete((r, e) -> permit.record(System.nanoTime() - start, e != null));
+    }
+
+    public synchronized State state() {
+        // An open breaker whose open duration has passed lets the next call through, it is as good as half-open
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public long rejectedCalls() {
+        return rejectedCalls.sum();
+    }
+}
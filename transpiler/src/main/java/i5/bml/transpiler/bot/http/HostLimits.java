@@ -0,0 +1,70 @@
+package i5.bml.transpiler.bot.http;
+
+import i5.bml.transpiler.bot.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits concurrent requests per destination host, across all HTTP clients of the bot. A request that does not get a
+ * permit within the wait time fails instead of queuing up behind a host that does not respond.
+ */
+public class HostLimits {
+
+    private static final HostLimits SHARED = new HostLimits(HttpSettings.current());
+
+    private final HttpSettings settings;
+
+    private final ConcurrentHashMap<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    /**
+     * Released when closed
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public HostLimits(HttpSettings settings) {
+        this.settings = settings;
+    }
+
+    public static HostLimits shared() {
+        return SHARED;
+    }
+
+    /**
+     * Waits for a permit at most as long as it takes to connect, see {@link HttpSettings#connectTimeout()}.
+     *
+     * @throws IOException if there is no permit in time, i.e., the request fails like a request that cannot connect.
+     */
+    public Permit acquire(String host) throws IOException {
+        return acquire(host, settings.connectTimeout());
+    }
+
+    Permit acquire(String host, Duration maxWait) throws IOException {
+        var semaphore = permits.computeIfAbsent(host, h -> {
+            var limit = settings.maxRequestsPerHost(h);
+            MetricsRegistry.shared().gauge("bml_http_requests_in_flight", "Concurrent HTTP requests per destination host",
+                    () -> limit - permits.get(h).availablePermits(), "host", h);
+            return new Semaphore(limit);
+        });
+
+        try {
+            if (!semaphore.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS)) {
+                MetricsRegistry.shared().counter("bml_http_rejected_requests_total",
+                        "HTTP requests that failed since their destination host had too many requests in flight", "host", host).increment();
+                throw new IOException("Too many concurrent requests to %s, waited %d ms".formatted(host, maxWait.toMillis()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a request to " + host);
+        }
+
+        return semaphore::release;
+    }
+}
@@ -0,0 +1,79 @@
+package i5.bml.transpiler.bot.http;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * OkHttp clients of all components (e.g., Rasa, OpenAI, and Slack). They share one connection pool and one dispatcher,
+ * i.e., idle connections and threads of all components are bounded together, and they only differ in their timeouts,
+ * see {@link HttpSettings}. Requests are limited per destination host, see {@link HostLimits}.
+ */
+public class HttpClients {
+
+    private static final HttpSettings SETTINGS = HttpSettings.current();
+
+    private static final ConnectionPool CONNECTION_POOL = new ConnectionPool(SETTINGS.maxIdleConnections(),
+            SETTINGS.keepAlive().toMillis(), TimeUnit.MILLISECONDS);
+
+    private static final Dispatcher DISPATCHER = dispatcher();
+
+    private static final Map<HttpSettings.CallType, OkHttpClient> CLIENTS = new EnumMap<>(HttpSettings.CallType.class);
+
+    private HttpClients() {}
+
+    /**
+     * Threads of asynchronous calls, they are only kept while there are calls and never keep the bot alive
+     */
+    private static Dispatcher dispatcher() {
+        var threadCount = new AtomicInteger();
+        var executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            var thread = new Thread(r, "http-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // HostLimits is the only limit, otherwise, the dispatcher's own limits would cap asynchronous calls below the
+        // per-host overrides (e.g., http.maxRequestsPerHost.api.openai.com)
+        var dispatcher = new Dispatcher(executor);
+        dispatcher.setMaxRequests(Integer.MAX_VALUE);
+        dispatcher.setMaxRequestsPerHost(Integer.MAX_VALUE);
+        return dispatcher;
+    }
+
+    /**
+     * @return the shared client with the timeouts of the call type.
+     */
+    public static synchronized OkHttpClient forCalls(HttpSettings.CallType type) {
+        return CLIENTS.computeIfAbsent(type, t -> configure(new OkHttpClient.Builder(), t).build());
+    }
+
+    /**
+     * Makes a client that a library builds itself (e.g., with authentication) use the shared connection pool,
+     * dispatcher, and host limits, with the timeouts of the call type.
+     */
+    public static OkHttpClient.Builder configure(OkHttpClient.Builder builder, HttpSettings.CallType type) {
+        var timeout = SETTINGS.timeout(type);
+        return builder.connectionPool(CONNECTION_POOL)
+                .dispatcher(DISPATCHER)
+                .connectTimeout(SETTINGS.connectTimeout())
+                .readTimeout(timeout)
+                .writeTimeout(timeout)
+                .callTimeout(timeout)
+                .addInterceptor(chain -> {
+                    var permit = HostLimits.shared().acquire(chain.request().url().host());
+                    try {
+                        return chain.proceed(chain.request());
+                    } finally {
+                        permit.close();
+                    }
+                });
+    }
+}
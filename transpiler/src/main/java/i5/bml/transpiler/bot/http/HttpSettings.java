@@ -0,0 +1,137 @@
+package i5.bml.transpiler.bot.http;
+
+import i5.bml.transpiler.bot.config.BotConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Settings of all outgoing HTTP calls of the bot, whatever HTTP client a component uses.
+ * <p>
+ * Configured on start-up with <code>http.connectTimeoutSeconds</code> (default {@value DEFAULT_CONNECT_TIMEOUT_SECONDS}),
+ * <code>http.&lt;call type&gt;.timeoutSeconds</code> (e.g., <code>http.nlu.timeoutSeconds</code>, defaults see
+ * {@link CallType}), <code>http.maxIdleConnections</code> (default {@value DEFAULT_MAX_IDLE_CONNECTIONS}),
+ * <code>http.keepAliveSeconds</code> (default {@value DEFAULT_KEEP_ALIVE_SECONDS}), and
+ * <code>http.maxRequestsPerHost</code> (default {@value DEFAULT_MAX_REQUESTS_PER_HOST}), which can be overridden per
+ * host, e.g., <code>http.maxRequestsPerHost.api.openai.com</code>, see {@link BotConfig#option(String, String)}.
+ */
+public class HttpSettings {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpSettings.class);
+
+    private static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 10;
+
+    private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 10;
+
+    private static final int DEFAULT_KEEP_ALIVE_SECONDS = 60;
+
+    private static final int DEFAULT_MAX_REQUESTS_PER_HOST = 16;
+
+    private static final HttpSettings CURRENT = configured();
+
+    /**
+     * Kinds of calls with their own timeout, which covers the whole call (i.e., connecting, sending, and receiving)
+     */
+    public enum CallType {
+        /**
+         * Requests to APIs, e.g., OpenAPI components or messengers
+         */
+        API(30),
+        /**
+         * Classifying a single message, e.g., Rasa's <code>/model/parse</code>
+         */
+        NLU(10),
+        /**
+         * Generating text with a language model, e.g., OpenAI chat completions
+         */
+        COMPLETION(120),
+        /**
+         * Managing NLU models, e.g., training a Rasa model, which takes minutes
+         */
+        TRAINING(600);
+
+        private final int defaultTimeoutSeconds;
+
+        CallType(int defaultTimeoutSeconds) {
+            this.defaultTimeoutSeconds = defaultTimeoutSeconds;
+        }
+    }
+
+    private final Duration connectTimeout;
+
+    private final Map<CallType, Duration> timeouts;
+
+    private final int maxIdleConnections;
+
+    private final Duration keepAlive;
+
+    private final int maxRequestsPerHost;
+
+    public HttpSettings(Duration connectTimeout, Map<CallType, Duration> timeouts, int maxIdleConnections,
+                        Duration keepAlive, int maxRequestsPerHost) {
+        this.connectTimeout = connectTimeout;
+        this.timeouts = new EnumMap<>(CallType.class);
+        this.timeouts.putAll(timeouts);
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAlive = keepAlive;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    public static HttpSettings current() {
+        return CURRENT;
+    }
+
+    private static HttpSettings configured() {
+        var timeouts = new EnumMap<CallType, Duration>(CallType.class);
+        for (var type : CallType.values()) {
+            timeouts.put(type, Duration.ofSeconds(intOption("http.%s.timeoutSeconds".formatted(type.name().toLowerCase(Locale.ROOT)),
+                    type.defaultTimeoutSeconds)));
+        }
+
+        return new HttpSettings(Duration.ofSeconds(intOption("http.connectTimeoutSeconds", DEFAULT_CONNECT_TIMEOUT_SECONDS)),
+                timeouts,
+                intOption("http.maxIdleConnections", DEFAULT_MAX_IDLE_CONNECTIONS),
+                Duration.ofSeconds(intOption("http.keepAliveSeconds", DEFAULT_KEEP_ALIVE_SECONDS)),
+                intOption("http.maxRequestsPerHost", DEFAULT_MAX_REQUESTS_PER_HOST));
+    }
+
+    private static int intOption(String name, int defaultValue) {
+        try {
+            return Math.max(1, Integer.parseInt(BotConfig.option(name, String.valueOf(defaultValue)).trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid HTTP option {}: {}", name, e.getMessage());
+            return defaultValue;
+        }
+    }
+
+    public Duration connectTimeout() {
+        return connectTimeout;
+    }
+
+    public Duration timeout(CallType type) {
+        return timeouts.get(type);
+    }
+
+    public int maxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public Duration keepAlive() {
+        return keepAlive;
+    }
+
+    public int maxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * @return limit of concurrent requests to the host, <code>http.maxRequestsPerHost.&lt;host&gt;</code> if set.
+     */
+    public int maxRequestsPerHost(String host) {
+        return intOption("http.maxRequestsPerHost." + host, maxRequestsPerHost);
+    }
+}
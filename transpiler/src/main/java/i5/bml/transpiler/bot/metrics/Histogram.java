@@ -0,0 +1,96 @@
+package i5.bml.transpiler.bot.metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of durations in fixed buckets (in seconds). Recording is lock-free and never allocates, quantiles are
+ * estimated as the upper bound of the bucket they fall into.
+ */
+public class Histogram {
+
+    /**
+     * Upper bounds of the buckets in seconds, covers quick handlers as well as slow LLM calls
+     */
+    static final double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+    /**
+     * Last element counts observations above the largest bucket
+     */
+    private final LongAdder[] bucketCounts = new LongAdder[BUCKETS.length + 1];
+
+    private final DoubleAdder sum = new DoubleAdder();
+
+    private final LongAdder count = new LongAdder();
+
+    public Histogram() {
+        for (int i = 0; i < bucketCounts.length; i++) {
+            bucketCounts[i] = new LongAdder();
+        }
+    }
+
+    public void observe(double seconds) {
+        var bucket = 0;
+        while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+            bucket++;
+        }
+
+        bucketCounts[bucket].increment();
+        sum.add(seconds);
+        count.increment();
+    }
+
+    /**
+     * @param startNanos result of {@link System#nanoTime()} at the start of the observed operation.
+     */
+    public void observeSince(long startNanos) {
+        observe((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double sum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return number of observations per bucket, not cumulative, the last element counts observations above the
+     * largest bucket.
+     */
+    long[] bucketCounts() {
+        var counts = new long[bucketCounts.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = bucketCounts[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * @param q quantile in <code>[0, 1]</code>, e.g., <code>0.99</code>.
+     * @return upper bound of the bucket that contains the quantile, {@link Double#POSITIVE_INFINITY} if it is above
+     * the largest bucket, and <code>NaN</code> if nothing has been observed yet.
+     */
+    public double quantile(double q) {
+        var counts = bucketCounts();
+        var total = 0L;
+        for (var c : counts) {
+            total += c;
+        }
+
+        if (total == 0) {
+            return Double.NaN;
+        }
+
+        var rank = Math.max(1, (long) Math.ceil(q * total));
+        var seen = 0L;
+        for (int i = 0; i < BUCKETS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return BUCKETS[i];
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+}
@@ -0,0 +1,224 @@
+package i5.bml.transpiler.bot.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import i5.bml.transpiler.bot.config.BotConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Counters, gauges, and latency histograms of the running bot, e.g., queue depth, handler latency, latency of NLU and
+ * API calls, and failed messages. Metrics are identified by name and labels (alternating label names and values,
+ * e.g., <code>"messenger", "telegram"</code>), asking twice for the same metric returns the same instance.
+ * <p>
+ * Configured on start-up with <code>metrics.port</code> (serves all metrics in the Prometheus text format on
+ * <code>/metrics</code>, off if not set) and <code>metrics.logIntervalSeconds</code> (logs a summary periodically,
+ * default {@value DEFAULT_LOG_INTERVAL_SECONDS}, 0 turns it off), see {@link BotConfig#option(String, String)}.
+ */
+public class MetricsRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    private static final int DEFAULT_LOG_INTERVAL_SECONDS = 60;
+
+    private static final MetricsRegistry SHARED = configured();
+
+    private enum Type {COUNTER, GAUGE, HISTOGRAM}
+
+    /**
+     * @param metrics by rendered labels, values are {@link Counter}, {@link Histogram}, or suppliers
+     */
+    private record Family(String help, Type type, Map<String, Object> metrics) {}
+
+    /**
+     * Sorted by name, such that the output is stable
+     */
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public static MetricsRegistry shared() {
+        return SHARED;
+    }
+
+    private static MetricsRegistry configured() {
+        var registry = new MetricsRegistry();
+
+        var port = BotConfig.option("metrics.port", "").trim();
+        if (!port.isEmpty()) {
+            try {
+                registry.serve(Integer.parseInt(port));
+                LOGGER.info("Serving metrics on port {}", port);
+            } catch (IOException | NumberFormatException e) {
+                LOGGER.error("Failed to serve metrics on port {}: {}", port, e.getMessage());
+                LOGGER.debug("Stacktrace:", e);
+            }
+        }
+
+        var logInterval = DEFAULT_LOG_INTERVAL_SECONDS;
+        try {
+            logInterval = Integer.parseInt(BotConfig.option("metrics.logIntervalSeconds", String.valueOf(DEFAULT_LOG_INTERVAL_SECONDS)).trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid metrics log interval: {}", e.getMessage());
+        }
+
+        if (logInterval > 0) {
+            var scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                var thread = new Thread(r, "metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(() -> {
+                try {
+                    LOGGER.info("Metrics: {}", registry.summary());
+                } catch (Exception e) {
+                    LOGGER.error("Failed to summarize metrics: {}", e.getMessage());
+                }
+            }, logInterval, logInterval, TimeUnit.SECONDS);
+        }
+
+        return registry;
+    }
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) metric(name, help, Type.COUNTER, labels, Counter::new);
+    }
+
+    /**
+     * Counter whose value is maintained elsewhere, e.g., dropped events of the event queue.
+     */
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        metric(name, help, Type.COUNTER, labels, () -> value);
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        metric(name, help, Type.GAUGE, labels, () -> value);
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) metric(name, help, Type.HISTOGRAM, labels, Histogram::new);
+    }
+
+    /**
+     * @param target    the external service, e.g., <code>rasa</code>.
+     * @param operation the kind of request, e.g., <code>parse</code>.
+     */
+    public RequestMetrics requests(String target, String operation) {
+        return new RequestMetrics(target + " " + operation,
+                histogram("bml_request_duration_seconds", "Duration of requests to external services",
+                        "target", target, "operation", operation),
+                counter("bml_request_failures_total", "Failed requests to external services",
+                        "target", target, "operation", operation));
+    }
+
+    private Object metric(String name, String help, Type type, String[] labels, Supplier<Object> factory) {
+        var family = families.computeIfAbsent(name, n -> new Family(help, type, new ConcurrentHashMap<>()));
+        if (family.type() != type) {
+            throw new IllegalArgumentException("Metric %s is a %s".formatted(name, family.type().name().toLowerCase()));
+        }
+
+        return family.metrics().computeIfAbsent(renderLabels(labels), l -> factory.get());
+    }
+
+    private static String renderLabels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels have to be pairs of name and value");
+        }
+
+        if (labels.length == 0) {
+            return "";
+        }
+
+        var joiner = new StringJoiner(",", "{", "}");
+        for (int i = 0; i < labels.length; i += 2) {
+            var value = labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+            joiner.add("%s=\"%s\"".formatted(labels[i], value));
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * @return all metrics in the Prometheus text exposition format.
+     */
+    public String scrape() {
+        var out = new StringBuilder();
+        families.forEach((name, family) -> {
+            out.append("# HELP ").append(name).append(' ').append(family.help()).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type().name().toLowerCase()).append('\n');
+            family.metrics().forEach((labels, metric) -> {
+                if (metric instanceof Histogram histogram) {
+                    var counts = histogram.bucketCounts();
+                    var cumulative = 0L;
+                    for (int i = 0; i <= Histogram.BUCKETS.length; i++) {
+                        cumulative += counts[i];
+                        var le = i < Histogram.BUCKETS.length ? String.valueOf(Histogram.BUCKETS[i]) : "+Inf";
+                        out.append(name).append("_bucket").append(withLabel(labels, "le", le)).append(' ').append(cumulative).append('\n');
+                    }
+                    out.append(name).append("_sum").append(labels).append(' ').append(histogram.sum()).append('\n');
+                    out.append(name).append("_count").append(labels).append(' ').append(histogram.count()).append('\n');
+                } else {
+                    out.append(name).append(labels).append(' ').append(valueOf(metric)).append('\n');
+                }
+            });
+        });
+        return out.toString();
+    }
+
+    /**
+     * @return one-line summary of all metrics, histograms are reduced to count, median, and 99th percentile.
+     */
+    public String summary() {
+        var joiner = new StringJoiner(", ");
+        families.forEach((name, family) -> family.metrics().forEach((labels, metric) -> {
+            if (metric instanceof Histogram histogram) {
+                if (histogram.count() > 0) {
+                    joiner.add("%s%s n=%d p50<=%ss p99<=%ss".formatted(name, labels, histogram.count(),
+                            histogram.quantile(0.5), histogram.quantile(0.99)));
+                }
+            } else {
+                joiner.add(name + labels + "=" + valueOf(metric));
+            }
+        }));
+        return joiner.toString();
+    }
+
+    private static String valueOf(Object metric) {
+        if (metric instanceof Counter counter) {
+            return String.valueOf(counter.value());
+        } else if (metric instanceof LongSupplier supplier) {
+            return String.valueOf(supplier.getAsLong());
+        } else {
+            return String.valueOf(((DoubleSupplier) metric).getAsDouble());
+        }
+    }
+
+    private static String withLabel(String labels, String name, String value) {
+        var label = "%s=\"%s\"".formatted(name, value);
+        return labels.isEmpty() ? "{" + label + "}" : labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+
+    private void serve(int port) throws IOException {
+        var server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> {
+            try (exchange) {
+                var body = scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        // Scrapes are rare and cheap, the server's own dispatcher thread handles them
+        server.setExecutor(null);
+        server.start();
+    }
+}
@@ -0,0 +1,94 @@
+package i5.bml.transpiler.bot.metrics;
+
+import i5.bml.transpiler.bot.tracing.Trace;
+import i5.bml.transpiler.bot.tracing.Tracer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Latency and failures of requests to an external service (e.g., Rasa, OpenAI, or an OpenAPI), see
+ * {@link MetricsRegistry#requests(String, String)}.
+ */
+public class RequestMetrics {
+
+    @FunctionalInterface
+    public interface Request<T, E extends Exception> {
+        T execute() throws E;
+    }
+
+    @FunctionalInterface
+    public interface VoidRequest<E extends Exception> {
+        void execute() throws E;
+    }
+
+    private final String spanName;
+
+    private final Histogram duration;
+
+    private final Counter failures;
+
+    RequestMetrics(String spanName, Histogram duration, Counter failures) {
+        this.spanName = spanName;
+        this.duration = duration;
+        this.failures = failures;
+    }
+
+    /**
+     * Executes the request and records its duration (also as span of the traced event, if any), the request counts
+     * as failed if it throws.
+     */
+    public <T, E extends Exception> T time(Request<T, E> request) throws E {
+        var start = System.nanoTime();
+        try (var span = Tracer.startSpan(spanName)) {
+            try {
+                return request.execute();
+            } catch (Exception e) {
+                failures.increment();
+                span.error();
+                throw e;
+            }
+        } finally {
+            duration.observeSince(start);
+        }
+    }
+
+    /**
+     * Like {@link #time(Request)}, for requests without result.
+     */
+    public <E extends Exception> void run(VoidRequest<E> request) throws E {
+        time(() -> {
+            request.execute();
+            return null;
+        });
+    }
+
+    /**
+     * Like {@link #time(Request)}, for requests that complete asynchronously. Since the request does not run on behalf
+     * of the current thread, its span is added to the given trace once the request has completed.
+     */
+    public <T> CompletableFuture<T> timeAsync(Trace trace, Supplier<CompletableFuture<T>> request) {
+        var start = System.nanoTime();
+        CompletableFuture<T> response;
+        try {
+            response = request.get();
+        } catch (Exception e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+
+        return response.whenComplete((r, e) -> {
+            duration.observeSince(start);
+            if (e != null) {
+                failures.increment();
+            }
+            trace.recordSpan(spanName, start, System.nanoTime(), e != null);
+        });
+    }
+
+    /**
+     * Counts a request as failed that did not throw (e.g., because of an error status code).
+     */
+    public void failed() {
+        failures.increment();
+    }
+}
@@ -6,11 +6,30 @@ public class Session {
 
     private final Object chatId;
 
+    private final MessageEventType messageEventType;
+
     public Session(Object chatId, MessageEventType messageEventType) {
         this.chatId = chatId;
+        this.messageEventType = messageEventType;
     }
 
     public Object chatId() {
         return chatId;
     }
+
+    /**
+     * @return the event type that started the session, it determines the dialogues of the session.
+     */
+    public MessageEventType messageEventType() {
+        return messageEventType;
+    }
+
+    /**
+     * @return index of the current state of each dialogue, used to persist the session (see {@link SessionJournal}).
+     */
+    public int[] dialogueStates() {
+        return new int[0];
+    }
+
+    public void restoreDialogueStates(int[] dialogueStates) {}
 }
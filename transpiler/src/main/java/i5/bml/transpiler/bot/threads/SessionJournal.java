@@ -0,0 +1,349 @@
+package i5.bml.transpiler.bot.threads;
+
+import i5.bml.transpiler.bot.config.BotConfig;
+import i5.bml.transpiler.bot.events.messenger.MessageEventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Persists sessions and the current states of their dialogues, so that a restart of the bot does not reset ongoing
+ * conversations. Every change of a session is appended to a log, once the log has grown by
+ * <code>sessions.snapshotEvery</code> records, the log is moved aside and starts over, and the latest record of every
+ * session is written to a snapshot in the background (handlers do not wait for it). Hence, recovery on start-up reads
+ * at most one record per session plus the records since the last snapshot.
+ * <p>
+ * Records are flushed, but not synced, i.e., they survive crashes of the bot, not necessarily crashes of the machine.
+ * Dialogue states are identified by their position in the automaton, after changing the dialogues of a bot, restored
+ * conversations may end up in different states.
+ * <p>
+ * Configured on start-up with <code>sessions.journal</code> (directory, default <code>{@value DEFAULT_DIRECTORY}</code>,
+ * or <code>{@value DEFAULT_DIRECTORY}/&lt;instance&gt;</code> for an instance of a cluster (see
+ * <code>cluster.instance</code>), since instances must not share a journal; <code>off</code> disables persistence)
+ * and <code>sessions.snapshotEvery</code> (default {@value DEFAULT_SNAPSHOT_EVERY}), see
+ * {@link BotConfig#option(String, String)}.
+ */
+public class SessionJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionJournal.class);
+
+    private static final String DEFAULT_DIRECTORY = "sessions";
+
+    private static final int DEFAULT_SNAPSHOT_EVERY = 10_000;
+
+    private static final String LOG_FILE = "sessions.log";
+
+    /**
+     * Log that has been moved aside, until the snapshot that covers it has been written
+     */
+    private static final String COMPACTING_LOG_FILE = "sessions.log.compacting";
+
+    private static final String SNAPSHOT_FILE = "sessions.snapshot";
+
+    private static final String PUT = "P";
+
+    private static final String REMOVE = "R";
+
+    private final Path directory;
+
+    private final SessionStore sessionStore;
+
+    private final int snapshotEvery;
+
+    /**
+     * Latest record of every persisted session, by chat ID, i.e., the content of the next snapshot
+     */
+    private final Map<Object, String> latestRecords = new LinkedHashMap<>();
+
+    /**
+     * Writes snapshots, at most one at a time
+     */
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, "session-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private BufferedWriter log;
+
+    private int recordsSinceSnapshot;
+
+    private boolean compacting;
+
+    public SessionJournal(Path directory, SessionStore sessionStore, int snapshotEvery) {
+        this.directory = directory;
+        this.sessionStore = sessionStore;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    /**
+     * Instances of a cluster (e.g., several containers on one volume) often share their working directory,
+     * hence, each of them journals into a directory named after the instance
+     */
+    private static String defaultDirectory() {
+        var instance = BotConfig.option("cluster.instance", "").trim();
+        return instance.isEmpty() ? DEFAULT_DIRECTORY
+                : DEFAULT_DIRECTORY + "/" + URLEncoder.encode(instance, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a journal that has already restored the sessions into the shared {@link SessionStore}, or null if
+     * persistence is disabled or the journal directory is not usable.
+     */
+    public static SessionJournal configured() {
+        var directoryOption = BotConfig.option("sessions.journal", defaultDirectory()).trim();
+        if (directoryOption.isEmpty() || directoryOption.equalsIgnoreCase("off")) {
+            return null;
+        }
+
+        var snapshotEvery = DEFAULT_SNAPSHOT_EVERY;
+        try {
+            snapshotEvery = Math.max(1, Integer.parseInt(BotConfig.option("sessions.snapshotEvery", String.valueOf(DEFAULT_SNAPSHOT_EVERY)).trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid session snapshot interval: {}", e.getMessage());
+        }
+
+        var journal = new SessionJournal(Path.of(directoryOption), SessionStore.shared(), snapshotEvery);
+        try {
+            journal.recover();
+        } catch (IOException e) {
+            LOGGER.error("Failed to recover sessions from {}, sessions will not be persisted: {}", directoryOption, e.getMessage());
+            LOGGER.debug("Stacktrace:", e);
+            return null;
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "session-journal"));
+        return journal;
+    }
+
+    /**
+     * Reads snapshot and log, restores the sessions into the store, and compacts the journal. From then on, removals
+     * and evictions of the store are recorded.
+     */
+    public synchronized void recover() throws IOException {
+        Files.createDirectories(directory);
+        var start = System.nanoTime();
+        replay(directory.resolve(SNAPSHOT_FILE));
+        replay(directory.resolve(COMPACTING_LOG_FILE));
+        replay(directory.resolve(LOG_FILE));
+        compact();
+
+        sessionStore.onRemoval((chatId, session) -> remove(chatId));
+        sessionStore.onEviction((chatId, session) -> remove(chatId));
+
+        // Copy, the store might evict sessions while we fill it, which removes them from the journal
+        var records = List.copyOf(latestRecords.values());
+        for (var record : records) {
+            var fields = record.split(" ", -1);
+            var chatId = decodeChatId(fields[1]);
+            var session = new Session(chatId, MessageEventType.valueOf(fields[2]));
+            session.restoreDialogueStates(decodeStates(fields[3]));
+            sessionStore.put(chatId, session);
+        }
+
+        LOGGER.info("Restored {} session(s) in {} ms", records.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Records the current state of the session, unless it has been removed from the store in the meantime (otherwise,
+     * a late save would bring it back after a restart).
+     */
+    public synchronized void save(Session session) {
+        if (!sessionStore.isCurrent(session.chatId(), session)) {
+            return;
+        }
+
+        var states = Arrays.stream(session.dialogueStates()).mapToObj(String::valueOf).collect(Collectors.joining(","));
+        var record = String.join(" ", PUT, encodeChatId(session.chatId()), session.messageEventType().name(), states);
+        if (!record.equals(latestRecords.get(session.chatId()))) {
+            latestRecords.put(session.chatId(), record);
+            append(record);
+        }
+    }
+
+    public synchronized void remove(Object chatId) {
+        if (latestRecords.remove(chatId) != null) {
+            append(String.join(" ", REMOVE, encodeChatId(chatId)));
+        }
+    }
+
+    /**
+     * Writes a final snapshot, the next start-up then does not have to replay the log.
+     */
+    public void close() {
+        // Not while holding the lock, a running compaction needs it to finish
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.warn("Background session snapshot did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            try {
+                compact();
+                log.close();
+            } catch (IOException e) {
+                LOGGER.error("Failed to write session snapshot: {}", e.getMessage());
+                LOGGER.debug("Stacktrace:", e);
+            }
+        }
+    }
+
+    private void append(String record) {
+        try {
+            log.write(record);
+            log.newLine();
+            log.flush();
+
+            if (++recordsSinceSnapshot >= snapshotEvery && !compacting) {
+                compactInBackground();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to persist session record: {}", e.getMessage());
+            LOGGER.debug("Stacktrace:", e);
+        }
+    }
+
+    /**
+     * Moves the log aside and starts a new one, the snapshot of the records so far is written by the compactor. Until
+     * it has replaced the old snapshot, recovery replays the old snapshot and both logs.
+     */
+    private void compactInBackground() throws IOException {
+        recordsSinceSnapshot = 0;
+        var compactingLog = directory.resolve(COMPACTING_LOG_FILE);
+        if (Files.exists(compactingLog)) {
+            // A previous snapshot failed, its log is needed until a snapshot covers it (at the latest on close)
+            LOGGER.warn("Session log {} has not been compacted yet, keeping the current log", compactingLog);
+            return;
+        }
+
+        var records = List.copyOf(latestRecords.values());
+        log.close();
+        Files.move(directory.resolve(LOG_FILE), compactingLog, StandardCopyOption.ATOMIC_MOVE);
+        log = openLog();
+
+        compacting = true;
+        compactor.execute(() -> {
+            try {
+                writeSnapshot(records);
+                Files.delete(compactingLog);
+            } catch (IOException e) {
+                LOGGER.error("Failed to write session snapshot: {}", e.getMessage());
+                LOGGER.debug("Stacktrace:", e);
+            } finally {
+                synchronized (this) {
+                    compacting = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * The snapshot replaces the old one atomically before the logs are truncated. If we crash in between, the logs are
+     * replayed on top of the new snapshot, which is harmless, since every record holds the complete session.
+     */
+    private void compact() throws IOException {
+        writeSnapshot(latestRecords.values());
+
+        if (log != null) {
+            log.close();
+        }
+        log = openLog();
+        Files.deleteIfExists(directory.resolve(COMPACTING_LOG_FILE));
+        recordsSinceSnapshot = 0;
+    }
+
+    private void writeSnapshot(Collection<String> records) throws IOException {
+        var tmpSnapshot = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        Files.write(tmpSnapshot, records, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        Files.move(tmpSnapshot, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private BufferedWriter openLog() throws IOException {
+        return Files.newBufferedWriter(directory.resolve(LOG_FILE), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    private void replay(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        var lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (!lines.isEmpty() && !endsWithNewline(file)) {
+            // We crashed while writing the last record, it might be cut off anywhere (e.g., within a number)
+            LOGGER.warn("Skipping incomplete session record '{}' in {}", lines.remove(lines.size() - 1), file);
+        }
+
+        for (var line : lines) {
+            var fields = line.split(" ", -1);
+            try {
+                if (fields.length == 4 && fields[0].equals(PUT)) {
+                    MessageEventType.valueOf(fields[2]);
+                    decodeStates(fields[3]);
+                    latestRecords.put(decodeChatId(fields[1]), line);
+                } else if (fields.length == 2 && fields[0].equals(REMOVE)) {
+                    latestRecords.remove(decodeChatId(fields[1]));
+                } else {
+                    LOGGER.warn("Skipping malformed session record '{}' in {}", line, file);
+                }
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                LOGGER.warn("Skipping invalid session record '{}' in {}: {}", line, file, e.getMessage());
+            }
+        }
+    }
+
+    private static boolean endsWithNewline(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() == 0) {
+                return true;
+            }
+
+            var lastByte = ByteBuffer.allocate(1);
+            channel.read(lastByte, channel.size() - 1);
+            return lastByte.get(0) == '\n';
+        }
+    }
+
+    private static int[] decodeStates(String encodedStates) {
+        return encodedStates.isEmpty() ? new int[0] : Arrays.stream(encodedStates.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    /**
+     * Telegram identifies chats by numbers, Slack by strings, we keep the type to restore equal keys
+     */
+    private static String encodeChatId(Object chatId) {
+        var prefix = chatId instanceof Long ? "L" : "S";
+        return prefix + URLEncoder.encode(chatId.toString(), StandardCharsets.UTF_8);
+    }
+
+    private static Object decodeChatId(String encodedChatId) {
+        var value = URLDecoder.decode(encodedChatId.substring(1), StandardCharsets.UTF_8);
+        return switch (encodedChatId.charAt(0)) {
+            case 'L' -> Long.parseLong(value);
+            case 'S' -> value;
+            default -> throw new IllegalArgumentException("Unknown chat ID type " + encodedChatId.charAt(0));
+        };
+    }
+}
@@ -0,0 +1,281 @@
+package i5.bml.transpiler.bot.threads;
+
+import i5.bml.transpiler.bot.config.BotConfig;
+import i5.bml.transpiler.bot.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Sessions of all messengers, bounded in size and idle time. Sessions of chats that have been idle for longer than the
+ * idle timeout are evicted, and if there are more sessions than allowed, the least recently used ones are evicted.
+ * A chat whose session has been evicted simply starts over with a new session.
+ * <p>
+ * Configured on start-up with <code>sessions.maxSize</code> (default {@value DEFAULT_MAX_SIZE}) and
+ * <code>sessions.idleMinutes</code> (default {@value DEFAULT_IDLE_MINUTES}), see {@link BotConfig#option(String, String)}.
+ */
+public class SessionStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionStore.class);
+
+    private static final int DEFAULT_MAX_SIZE = 10_000;
+
+    private static final int DEFAULT_IDLE_MINUTES = 60;
+
+    private static final SessionStore SHARED = configured();
+
+    private record Entry(Session session, long lastAccess) {}
+
+    /**
+     * Access-ordered, i.e., the first entry is the least recently used one
+     */
+    private final LinkedHashMap<Object, Entry> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final List<BiConsumer<Object, Session>> evictionListeners = new CopyOnWriteArrayList<>();
+
+    private final List<BiConsumer<Object, Session>> removalListeners = new CopyOnWriteArrayList<>();
+
+    private final int maxSize;
+
+    private final long idleTimeoutNanos;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    public SessionStore(int maxSize, Duration idleTimeout) {
+        this.maxSize = maxSize;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+    }
+
+    /**
+     * @return the store shared by all messenger components.
+     */
+    public static SessionStore shared() {
+        return SHARED;
+    }
+
+    private static SessionStore configured() {
+        var maxSize = DEFAULT_MAX_SIZE;
+        var idleMinutes = DEFAULT_IDLE_MINUTES;
+        try {
+            maxSize = Math.max(1, Integer.parseInt(BotConfig.option("sessions.maxSize", String.valueOf(DEFAULT_MAX_SIZE)).trim()));
+            idleMinutes = Math.max(1, Integer.parseInt(BotConfig.option("sessions.idleMinutes", String.valueOf(DEFAULT_IDLE_MINUTES)).trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid session store option: {}", e.getMessage());
+        }
+
+        var store = new SessionStore(maxSize, Duration.ofMinutes(idleMinutes));
+
+        // Sessions that are never accessed again still have to go, we sweep once a minute
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(store::evictExpired, 1, 1, TimeUnit.MINUTES);
+
+        var metrics = MetricsRegistry.shared();
+        metrics.gauge("bml_sessions", "Sessions in the session store", store::size);
+        metrics.counter("bml_session_lookups_total", "Session lookups by result", store::hits, "result", "hit");
+        metrics.counter("bml_session_lookups_total", "Session lookups by result", store::misses, "result", "miss");
+        metrics.counter("bml_session_evictions_total", "Sessions evicted because of size or idle time", store::evictions);
+
+        return store;
+    }
+
+    /**
+     * @return the session of the chat, or null if there is none (or it has expired).
+     */
+    public Session get(Object chatId) {
+        var evicted = new ArrayList<Map.Entry<Object, Session>>();
+        Session session;
+        synchronized (sessions) {
+            session = lookup(chatId, System.nanoTime(), evicted);
+        }
+
+        notifyEvicted(evicted);
+        return session;
+    }
+
+    /**
+     * @return the session of the chat, newly created with <code>sessionFactory</code> if there is none.
+     */
+    public Session computeIfAbsent(Object chatId, Function<Object, Session> sessionFactory) {
+        var evicted = new ArrayList<Map.Entry<Object, Session>>();
+        Session session;
+        synchronized (sessions) {
+            var now = System.nanoTime();
+            session = lookup(chatId, now, evicted);
+            if (session == null) {
+                session = sessionFactory.apply(chatId);
+                insert(chatId, session, now, evicted);
+            }
+        }
+
+        notifyEvicted(evicted);
+        return session;
+    }
+
+    /**
+     * Replaces the session of the chat, e.g., when a conversation is restarted.
+     */
+    public void put(Object chatId, Session session) {
+        var evicted = new ArrayList<Map.Entry<Object, Session>>();
+        synchronized (sessions) {
+            insert(chatId, session, System.nanoTime(), evicted);
+        }
+
+        notifyEvicted(evicted);
+    }
+
+    /**
+     * Removes the session of the chat, e.g., when the bot was removed from it. Not counted as eviction.
+     */
+    public Session remove(Object chatId) {
+        Entry entry;
+        synchronized (sessions) {
+            entry = sessions.remove(chatId);
+        }
+
+        if (entry == null) {
+            return null;
+        }
+
+        for (var listener : removalListeners) {
+            listener.accept(chatId, entry.session());
+        }
+        return entry.session();
+    }
+
+    /**
+     * @return whether <code>session</code> is still the current session of the chat, if so, it counts as recently
+     * used (but not as hit).
+     */
+    public boolean isCurrent(Object chatId, Session session) {
+        synchronized (sessions) {
+            // Access order, a lookup moves the entry to the end anyway, hence, we also refresh its access time
+            var entry = sessions.get(chatId);
+            if (entry == null || entry.session() != session) {
+                return false;
+            }
+
+            sessions.put(chatId, new Entry(session, System.nanoTime()));
+            return true;
+        }
+    }
+
+    /**
+     * @param listener invoked with chat ID and session for every evicted session (not for removed ones).
+     */
+    public void onEviction(BiConsumer<Object, Session> listener) {
+        evictionListeners.add(listener);
+    }
+
+    /**
+     * @param listener invoked with chat ID and session for every session removed by {@link #remove(Object)}.
+     */
+    public void onRemoval(BiConsumer<Object, Session> listener) {
+        removalListeners.add(listener);
+    }
+
+    public void evictExpired() {
+        var evicted = new ArrayList<Map.Entry<Object, Session>>();
+        synchronized (sessions) {
+            var now = System.nanoTime();
+            var iterator = sessions.entrySet().iterator();
+            while (iterator.hasNext()) {
+                var entry = iterator.next();
+                // Access order: once we see a session that has not expired, all following sessions have not either
+                if (now - entry.getValue().lastAccess() < idleTimeoutNanos) {
+                    break;
+                }
+
+                iterator.remove();
+                evicted.add(Map.entry(entry.getKey(), entry.getValue().session()));
+            }
+        }
+
+        notifyEvicted(evicted);
+    }
+
+    public int size() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private Session lookup(Object chatId, long now, List<Map.Entry<Object, Session>> evicted) {
+        var entry = sessions.get(chatId);
+        if (entry != null && now - entry.lastAccess() >= idleTimeoutNanos) {
+            sessions.remove(chatId);
+            evicted.add(Map.entry(chatId, entry.session()));
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        sessions.put(chatId, new Entry(entry.session(), now));
+        return entry.session();
+    }
+
+    private void insert(Object chatId, Session session, long now, List<Map.Entry<Object, Session>> evicted) {
+        sessions.put(chatId, new Entry(session, now));
+        var iterator = sessions.entrySet().iterator();
+        while (sessions.size() > maxSize && iterator.hasNext()) {
+            var eldest = iterator.next();
+            iterator.remove();
+            evicted.add(Map.entry(eldest.getKey(), eldest.getValue().session()));
+        }
+    }
+
+    /**
+     * Listeners are invoked outside the lock, they might be slow (e.g., persist the session)
+     */
+    private void notifyEvicted(List<Map.Entry<Object, Session>> evicted) {
+        for (var entry : evicted) {
+            evictions.increment();
+            LOGGER.debug("Evicted session of chat {}", entry.getKey());
+            for (var listener : evictionListeners) {
+                try {
+                    listener.accept(entry.getKey(), entry.getValue());
+                } catch (Exception e) {
+                    LOGGER.error("Session eviction listener failed: {}", e.getMessage());
+                    LOGGER.debug("Stacktrace:", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SessionStore{size=%d, hits=%d, misses=%d, evictions=%d}".formatted(size(), hits(), misses(), evictions());
+    }
+}
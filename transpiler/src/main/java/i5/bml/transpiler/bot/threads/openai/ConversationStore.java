@@ -0,0 +1,301 @@
+package i5.bml.transpiler.bot.threads.openai;
+
+import com.theokanning.openai.completion.chat.ChatMessage;
+import i5.bml.transpiler.bot.config.BotConfig;
+import i5.bml.transpiler.bot.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Conversations of users with a language model, bounded in size, idle time, and tokens. Every conversation has a token
+ * budget for the messages that are sent with a request (system prompt, summary, and history): once the history exceeds
+ * it, the oldest messages are dropped (sliding window) or folded into a summary. The latest user message is always
+ * kept. Conversations of users that have been idle for longer than the idle timeout are evicted, and if there are more
+ * conversations than allowed, the least recently used ones are evicted. An evicted user simply starts over.
+ * <p>
+ * Tokens are estimated (about four bytes of UTF-8 per token, plus a few tokens per message), the budget should leave
+ * some room below the context size of the model.
+ * <p>
+ * Configured on start-up with <code>openai.conversations.maxSize</code> (default {@value DEFAULT_MAX_SIZE}),
+ * <code>openai.conversations.idleMinutes</code> (default {@value DEFAULT_IDLE_MINUTES}),
+ * <code>openai.conversations.maxTokens</code> (default {@value DEFAULT_MAX_TOKENS}), and
+ * <code>openai.conversations.truncation</code> (<code>window</code> or <code>summary</code>, default
+ * <code>window</code>), see {@link BotConfig#option(String, String)}.
+ */
+public class ConversationStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConversationStore.class);
+
+    private static final int DEFAULT_MAX_SIZE = 10_000;
+
+    private static final int DEFAULT_IDLE_MINUTES = 60;
+
+    private static final int DEFAULT_MAX_TOKENS = 3000;
+
+    /**
+     * Role, separators, and the like, per message
+     */
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private static final String USER = "user";
+
+    private static final String ASSISTANT = "assistant";
+
+    private static final String SYSTEM = "system";
+
+    public enum Truncation {
+        /**
+         * Oldest messages are dropped
+         */
+        WINDOW,
+        /**
+         * Oldest messages are folded into a summary, which is sent along as system message. The history is truncated
+         * to half of the budget, such that summaries are only requested every few messages.
+         */
+        SUMMARY
+    }
+
+    /**
+     * Folds messages into the summary of a conversation.
+     */
+    @FunctionalInterface
+    public interface Summarizer {
+        /**
+         * @param previousSummary summary of even older messages, null if there is none.
+         * @return the new summary, or null if summarizing failed (the messages are dropped then).
+         */
+        String summarize(String previousSummary, List<ChatMessage> messages);
+    }
+
+    private static class Conversation {
+
+        private final Deque<ChatMessage> messages = new ArrayDeque<>();
+
+        private String summary;
+
+        /**
+         * Estimated tokens of <code>messages</code>
+         */
+        private int tokens;
+    }
+
+    private record Entry(Conversation conversation, long lastAccess) {}
+
+    /**
+     * Access-ordered, i.e., the first entry is the least recently used one
+     */
+    private final LinkedHashMap<String, Entry> conversations = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int maxSize;
+
+    private final long idleTimeoutNanos;
+
+    private final int maxTokens;
+
+    private final Truncation truncation;
+
+    private final Summarizer summarizer;
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder truncatedMessages = new LongAdder();
+
+    public ConversationStore(int maxSize, Duration idleTimeout, int maxTokens, Truncation truncation, Summarizer summarizer) {
+        this.maxSize = maxSize;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.maxTokens = maxTokens;
+        this.truncation = truncation;
+        this.summarizer = summarizer;
+    }
+
+    /**
+     * @param summarizer only used if the configured truncation is {@link Truncation#SUMMARY}.
+     */
+    public static ConversationStore configured(Summarizer summarizer) {
+        var maxSize = DEFAULT_MAX_SIZE;
+        var idleMinutes = DEFAULT_IDLE_MINUTES;
+        var maxTokens = DEFAULT_MAX_TOKENS;
+        var truncation = Truncation.WINDOW;
+        try {
+            maxSize = Math.max(1, Integer.parseInt(BotConfig.option("openai.conversations.maxSize", String.valueOf(DEFAULT_MAX_SIZE)).trim()));
+            idleMinutes = Math.max(1, Integer.parseInt(BotConfig.option("openai.conversations.idleMinutes", String.valueOf(DEFAULT_IDLE_MINUTES)).trim()));
+            maxTokens = Math.max(1, Integer.parseInt(BotConfig.option("openai.conversations.maxTokens", String.valueOf(DEFAULT_MAX_TOKENS)).trim()));
+            truncation = Truncation.valueOf(BotConfig.option("openai.conversations.truncation", "window").trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid OpenAI conversation option: {}", e.getMessage());
+        }
+
+        var store = new ConversationStore(maxSize, Duration.ofMinutes(idleMinutes), maxTokens, truncation, summarizer);
+
+        var metrics = MetricsRegistry.shared();
+        metrics.gauge("bml_openai_conversations", "Conversations in the OpenAI conversation store", store::size);
+        metrics.counter("bml_openai_conversation_evictions_total", "OpenAI conversations evicted because of size or idle time", store::evictions);
+        metrics.counter("bml_openai_truncated_messages_total", "Messages dropped or summarized to stay within the token budget", store::truncatedMessages);
+
+        return store;
+    }
+
+    /**
+     * Estimated tokens of a message, see {@link ConversationStore}.
+     */
+    static int estimateTokens(ChatMessage message) {
+        var content = message.getContent() == null ? "" : message.getContent();
+        return (content.getBytes(StandardCharsets.UTF_8).length + 3) / 4 + MESSAGE_OVERHEAD_TOKENS;
+    }
+
+    /**
+     * Adds the message to the conversation of the user (started if there is none), and truncates the history to the
+     * token budget.
+     *
+     * @param prompt system prompt that starts the conversation, empty if there is none.
+     * @return the messages to send to the model, i.e., system prompt, summary, and history up to the new message.
+     */
+    public List<ChatMessage> addUserMessage(String user, String prompt, String text) {
+        var conversation = conversation(user, true);
+        synchronized (conversation) {
+            append(conversation, new ChatMessage(USER, text));
+            truncate(conversation, prompt);
+            return messages(conversation, prompt);
+        }
+    }
+
+    /**
+     * Adds the answer of the model to the conversation of the user, unless it has been evicted in the meantime.
+     */
+    public void addAssistantMessage(String user, String text) {
+        var conversation = conversation(user, false);
+        if (conversation == null) {
+            return;
+        }
+
+        synchronized (conversation) {
+            append(conversation, new ChatMessage(ASSISTANT, text));
+        }
+    }
+
+    /**
+     * @return the history of the user with its summary (if any), but without system prompt, empty if there is none.
+     */
+    public List<ChatMessage> history(String user) {
+        var conversation = conversation(user, false);
+        if (conversation == null) {
+            return List.of();
+        }
+
+        synchronized (conversation) {
+            return messages(conversation, "");
+        }
+    }
+
+    public void remove(String user) {
+        synchronized (conversations) {
+            conversations.remove(user);
+        }
+    }
+
+    public int maxTokens() {
+        return maxTokens;
+    }
+
+    public int size() {
+        synchronized (conversations) {
+            return conversations.size();
+        }
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public long truncatedMessages() {
+        return truncatedMessages.sum();
+    }
+
+    private Conversation conversation(String user, boolean create) {
+        synchronized (conversations) {
+            var now = System.nanoTime();
+
+            // Access order: once we see a conversation that has not expired, all following ones have not either
+            var iterator = conversations.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (now - iterator.next().getValue().lastAccess() < idleTimeoutNanos) {
+                    break;
+                }
+                iterator.remove();
+                evictions.increment();
+            }
+
+            var entry = conversations.get(user);
+            if (entry == null && !create) {
+                return null;
+            }
+
+            var conversation = entry == null ? new Conversation() : entry.conversation();
+            conversations.put(user, new Entry(conversation, now));
+
+            iterator = conversations.entrySet().iterator();
+            while (conversations.size() > maxSize && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                evictions.increment();
+            }
+            return conversation;
+        }
+    }
+
+    private static void append(Conversation conversation, ChatMessage message) {
+        conversation.messages.addLast(message);
+        conversation.tokens += estimateTokens(message);
+    }
+
+    private void truncate(Conversation conversation, String prompt) {
+        var budget = maxTokens - fixedTokens(conversation, prompt);
+        if (conversation.tokens <= budget) {
+            return;
+        }
+
+        var target = truncation == Truncation.SUMMARY ? budget / 2 : budget;
+        var truncated = new ArrayList<ChatMessage>();
+        // The latest message stays, and the history never starts with an answer to a dropped message
+        while (conversation.messages.size() > 1
+                && (conversation.tokens > target || conversation.messages.getFirst().getRole().equals(ASSISTANT))) {
+            var message = conversation.messages.removeFirst();
+            conversation.tokens -= estimateTokens(message);
+            truncated.add(message);
+        }
+        truncatedMessages.add(truncated.size());
+
+        if (truncation == Truncation.SUMMARY && !truncated.isEmpty()) {
+            var summary = summarizer.summarize(conversation.summary, truncated);
+            if (summary != null) {
+                conversation.summary = summary;
+            }
+        }
+    }
+
+    private static int fixedTokens(Conversation conversation, String prompt) {
+        var tokens = prompt.isEmpty() ? 0 : estimateTokens(new ChatMessage(SYSTEM, prompt));
+        return conversation.summary == null ? tokens : tokens + estimateTokens(summaryMessage(conversation.summary));
+    }
+
+    private static ChatMessage summaryMessage(String summary) {
+        return new ChatMessage(SYSTEM, "Summary of the conversation so far: " + summary);
+    }
+
+    private static List<ChatMessage> messages(Conversation conversation, String prompt) {
+        var messages = new ArrayList<ChatMessage>(conversation.messages.size() + 2);
+        if (!prompt.isEmpty()) {
+            messages.add(new ChatMessage(SYSTEM, prompt));
+        }
+        if (conversation.summary != null) {
+            messages.add(summaryMessage(conversation.summary));
+        }
+        messages.addAll(conversation.messages);
+        return messages;
+    }
+}
@@ -1,26 +1,56 @@
 package i5.bml.transpiler.bot.threads.openai;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.theokanning.openai.OpenAiApi;
 import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
 import com.theokanning.openai.completion.chat.ChatMessage;
 import com.theokanning.openai.service.OpenAiService;
+import i5.bml.transpiler.bot.config.BotConfig;
 import i5.bml.transpiler.bot.events.messenger.MessageEvent;
+import i5.bml.transpiler.bot.events.messenger.MessageStream;
+import i5.bml.transpiler.bot.http.CircuitBreaker;
+import i5.bml.transpiler.bot.http.HttpClients;
+import i5.bml.transpiler.bot.http.HttpSettings;
+import i5.bml.transpiler.bot.metrics.Histogram;
+import i5.bml.transpiler.bot.metrics.MetricsRegistry;
+import i5.bml.transpiler.bot.metrics.RequestMetrics;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-
-// TODO: Thread-safety?
+import java.util.stream.Collectors;
 
+/**
+ * Chat completions of OpenAI, for the conversation of every user, see {@link ConversationStore}.
+ * <p>
+ * Completions that are sent right away are streamed into the message (see {@link MessageStream}), unless
+ * <code>openai.stream</code> is <code>false</code>. While OpenAI fails or is slow (see {@link CircuitBreaker}), users
+ * get <code>openai.fallbackReply</code> instead, unless it is empty. See {@link BotConfig#option(String, String)}.
+ */
 public class OpenAIComponent {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OpenAIComponent.class);
 
+    private static final String COMPLETIONS_URL = "https://api.openai.com/v1/chat/completions";
+
+    private static final ObjectMapper MAPPER = OpenAiService.defaultObjectMapper();
+
+    private static final int DEFAULT_SLOW_COMPLETION_SECONDS = 30;
+
+    private record StreamedCompletion(String text, long timeToFirstTokenNanos) {}
+
+    private final OkHttpClient client;
+
     private final OpenAiService service;
 
     private final String model;
@@ -29,10 +59,38 @@ public class OpenAIComponent {
 
     private final String prompt;
 
-    private final Map<String, List<ChatMessage>> activeConversations = new HashMap<>();
+    private final ConversationStore activeConversations = ConversationStore.configured(this::summarize);
+
+    private final RequestMetrics completionRequests = MetricsRegistry.shared().requests("openai", "chat_completion");
+
+    private final RequestMetrics summaryRequests = MetricsRegistry.shared().requests("openai", "summary");
+
+    private final Histogram timeToFirstTokenHistogram = MetricsRegistry.shared().histogram("bml_openai_time_to_first_token_seconds",
+            "Time until the first text of a streamed completion arrived");
+
+    private final boolean streaming = Boolean.parseBoolean(BotConfig.option("openai.stream", "true").trim());
+
+    /**
+     * Streamed completions count as slow by their time to first token, since long answers take long anyway
+     */
+    private final CircuitBreaker completionBreaker = CircuitBreaker.configured("openai", Duration.ofSeconds(DEFAULT_SLOW_COMPLETION_SECONDS));
+
+    private final String fallbackReply = BotConfig.option("openai.fallbackReply", "Sorry, I can't answer right now. Please try again later.");
+
+    /**
+     * Uses the timeout of completions, see {@link HttpSettings}.
+     */
+    public OpenAIComponent(String apiKey, String model, int tokens, String prompt) {
+        this(apiKey, model, tokens, HttpSettings.current().timeout(HttpSettings.CallType.COMPLETION), prompt);
+    }
 
     public OpenAIComponent(String apiKey, String model, int tokens, Duration timeout, String prompt) {
-        service = new OpenAiService(apiKey, timeout);
+        // The client of the library (i.e., with its authentication), but on the shared connection pool
+        client = HttpClients.configure(OpenAiService.defaultClient(apiKey, timeout).newBuilder(), HttpSettings.CallType.COMPLETION)
+                .readTimeout(timeout)
+                .callTimeout(timeout)
+                .build();
+        service = new OpenAiService(OpenAiService.defaultRetrofit(client, OpenAiService.defaultObjectMapper()).create(OpenAiApi.class));
         LOGGER.info("Using {} timeout", timeout);
         this.model = model;
         this.tokens = tokens;
@@ -49,18 +107,92 @@ public class OpenAIComponent {
     }
 
     public String invokeModel(MessageEvent messageEvent) {
-        var messages = activeConversations.get(messageEvent.username());
-        if (messages == null) {
-            messages = new ArrayList<>();
-            if (!prompt.isEmpty()) {
-                messages.add(new ChatMessage("system", prompt));
+        var messages = activeConversations.addUserMessage(messageEvent.username(), prompt, messageEvent.text());
+        var completionRequest = completionRequest(messageEvent, messages, false);
+        LOGGER.debug(completionRequest.toString());
+
+        ChatCompletionResult result;
+        try {
+            result = completionBreaker.call(() -> completionRequests.time(() -> service.createChatCompletion(completionRequest)));
+        } catch (RuntimeException e) {
+            return fallbackReply(e);
+        }
+        LOGGER.debug(result.toString());
+
+        String responseContent = result.getChoices().get(0).getMessage().getContent();
+        activeConversations.addAssistantMessage(messageEvent.username(), responseContent);
+
+        return responseContent;
+    }
+
+    /**
+     * Streams the completion into the message, i.e., the user sees the answer while it is generated. The answer is
+     * only added to the conversation once it is complete.
+     *
+     * @return the complete answer.
+     */
+    public String invokeModel(MessageEvent messageEvent, MessageStream stream) {
+        if (!streaming) {
+            stream.append(invokeModel(messageEvent));
+            stream.complete();
+            return stream.text();
+        }
+
+        var messages = activeConversations.addUserMessage(messageEvent.username(), prompt, messageEvent.text());
+        var completionRequest = completionRequest(messageEvent, messages, true);
+        LOGGER.debug(completionRequest.toString());
+
+        StreamedCompletion completion;
+        var start = System.nanoTime();
+        try {
+            var permit = completionBreaker.tryAcquire();
+            if (permit == null) {
+                throw new CircuitBreaker.OpenException("openai");
+            }
+
+            try {
+                completion = completionRequests.time(() -> streamCompletion(completionRequest, stream));
+            } catch (IOException | RuntimeException e) {
+                permit.record(System.nanoTime() - start, true);
+                throw e;
             }
-            messages.add(new ChatMessage("user", messageEvent.text()));
-            activeConversations.put(messageEvent.username(), messages);
+            permit.record(completion.timeToFirstTokenNanos(), false);
+        } catch (IOException | RuntimeException e) {
+            var reply = fallbackReply(e);
+            // After the part of the answer that the user might already see
+            stream.append(stream.text().isEmpty() ? reply : "\n\n" + reply);
+            stream.complete();
+            return reply;
+        }
+
+        stream.complete();
+        activeConversations.addAssistantMessage(messageEvent.username(), completion.text());
+
+        return completion.text();
+    }
+
+    /**
+     * @return the fallback reply, if there is one.
+     * @throws RuntimeException if there is no fallback reply, i.e., the handler fails like before.
+     */
+    private String fallbackReply(Exception e) {
+        if (fallbackReply.isEmpty()) {
+            if (e instanceof IOException ioException) {
+                throw new UncheckedIOException("Failed to stream completion: " + e.getMessage(), ioException);
+            }
+            throw (RuntimeException) e;
+        }
+
+        if (e instanceof CircuitBreaker.OpenException) {
+            LOGGER.debug("Using fallback reply: {}", e.getMessage());
         } else {
-            messages.add(new ChatMessage("user", messageEvent.text()));
+            LOGGER.error("OpenAI completion failed, using fallback reply: {}", e.getMessage());
+            LOGGER.debug("Stacktrace:", e);
         }
+        return fallbackReply;
+    }
 
+    private ChatCompletionRequest completionRequest(MessageEvent messageEvent, List<ChatMessage> messages, boolean stream) {
         var completionRequestBuilder = ChatCompletionRequest.builder()
                 .model(model)
                 .messages(messages)
@@ -69,16 +201,90 @@ public class OpenAIComponent {
         if (tokens != -1) {
             completionRequestBuilder.maxTokens(tokens);
         }
+        if (stream) {
+            completionRequestBuilder.stream(true);
+        }
 
-        var completionRequest = completionRequestBuilder.build();
-        LOGGER.debug(completionRequest.toString());
+        return completionRequestBuilder.build();
+    }
 
-        var result = service.createChatCompletion(completionRequest);
-        LOGGER.debug(result.toString());
+    /**
+     * The library does not support streaming, hence, we read the server-sent events ourselves: every event is a
+     * <code>data:</code> line with a chunk of the completion, whose choice has the next part of the message as delta,
+     * and the last one is <code>data: [DONE]</code>.
+     */
+    private StreamedCompletion streamCompletion(ChatCompletionRequest completionRequest, MessageStream stream) throws IOException {
+        var start = System.nanoTime();
+        var request = new Request.Builder()
+                .url(COMPLETIONS_URL)
+                .post(RequestBody.create(MAPPER.writeValueAsString(completionRequest), MediaType.parse("application/json")))
+                .build();
 
-        String responseContent = result.getChoices().get(0).getMessage().getContent();
-        messages.add(new ChatMessage("assistant", responseContent));
+        try (var response = client.newCall(request).execute()) {
+            //noinspection ConstantConditions -> Responses of `execute()` always have a body
+            var body = response.body();
+            if (!response.isSuccessful()) {
+                throw new IOException("OpenAI API responded with %d: %s".formatted(response.code(), body.string()));
+            }
 
-        return responseContent;
+            var answer = new StringBuilder();
+            var timeToFirstToken = -1L;
+            var source = body.source();
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+
+                var data = line.substring("data:".length()).strip();
+                if (data.equals("[DONE]")) {
+                    break;
+                }
+
+                var delta = MAPPER.readTree(data).path("choices").path(0).path("delta").path("content").asText("");
+                if (!delta.isEmpty()) {
+                    if (answer.isEmpty()) {
+                        timeToFirstToken = System.nanoTime() - start;
+                        timeToFirstTokenHistogram.observe(timeToFirstToken / 1e9);
+                    }
+                    answer.append(delta);
+                    stream.append(delta);
+                }
+            }
+
+            LOGGER.debug(answer.toString());
+            return new StreamedCompletion(answer.toString(), timeToFirstToken < 0 ? System.nanoTime() - start : timeToFirstToken);
+        }
+    }
+
+    /**
+     * Summary of truncated messages, at most a quarter of the token budget of a conversation
+     */
+    private String summarize(String previousSummary, List<ChatMessage> messages) {
+        var transcript = messages.stream()
+                .map(m -> m.getRole() + ": " + m.getContent())
+                .collect(Collectors.joining("\n"));
+        if (previousSummary != null) {
+            transcript = "Summary of earlier messages: " + previousSummary + "\n\n" + transcript;
+        }
+
+        var summaryRequest = ChatCompletionRequest.builder()
+                .model(model)
+                .messages(List.of(
+                        new ChatMessage("system", "Summarize the following conversation between a user and an assistant "
+                                + "in a few sentences. Keep names, facts, and decisions that later messages might refer to."),
+                        new ChatMessage("user", transcript)))
+                .maxTokens(activeConversations.maxTokens() / 4)
+                .n(1)
+                .build();
+
+        try {
+            var result = completionBreaker.call(() -> summaryRequests.time(() -> service.createChatCompletion(summaryRequest)));
+            return result.getChoices().get(0).getMessage().getContent();
+        } catch (Exception e) {
+            LOGGER.error("Failed to summarize conversation, dropping {} messages instead: {}", messages.size(), e.getMessage());
+            LOGGER.debug("Stacktrace:", e);
+            return null;
+        }
     }
 }
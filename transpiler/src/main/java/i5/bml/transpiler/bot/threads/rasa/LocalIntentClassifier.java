@@ -0,0 +1,331 @@
+package i5.bml.transpiler.bot.threads.rasa;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Classifies messages in-process, using the same training data as Rasa, such that common messages (e.g., greetings
+ * and commands) do not need a request to Rasa. Only answers when it is confident, otherwise Rasa has to decide:
+ * <ul>
+ *     <li>Messages that equal a training example (ignoring case, punctuation, and whitespace) get its intent and
+ *     entity, unless the example occurs for several intents.</li>
+ *     <li>Other messages are classified by a multinomial naive Bayes model over their words. Its result is only used
+ *     if all words occur in the training data, the probability of the intent reaches the threshold, and the intent
+ *     has no entities (which the model cannot extract).</li>
+ * </ul>
+ * Messages that match a regex or lookup table of the training data are left to Rasa as well, unless they equal an
+ * example with entity, since Rasa would extract an entity from them.
+ * <p>
+ * Without confidence requirements, it also stands in for Rasa, see {@link #rank(String)},
+ * {@link #extractEntities(String)}, and {@link LocalRasaServer}.
+ */
+public class LocalIntentClassifier {
+
+    private static final String NO_ENTITY = "{no_entity_found}";
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}/]+");
+
+    /**
+     * Annotated entity, e.g., <code>[3](value)</code> or <code>[Mensa Vita]{"entity": "name"}</code>
+     */
+    private static final Pattern ENTITY_ANNOTATION = Pattern.compile("\\[([^]]+)](\\([^)]*\\)|\\{[^}]*})");
+
+    private static final Pattern ENTITY_NAME = Pattern.compile("\"entity\"\\s*:\\s*\"([^\"]+)\"");
+
+    public enum Method {EXACT, MODEL}
+
+    public record Classification(NluCache.NluResult result, Method method) {}
+
+    private record Example(String intent, String entity) {}
+
+    private record EntityPattern(String entity, Pattern pattern) {}
+
+    /**
+     * Normalized example text to its example, null if the text occurs for several intents
+     */
+    private final Map<String, Example> exactMatches = new HashMap<>();
+
+    private final Map<String, Map<String, Integer>> tokenCounts = new HashMap<>();
+
+    private final Map<String, Integer> tokenTotals = new HashMap<>();
+
+    private final Map<String, Integer> exampleCounts = new HashMap<>();
+
+    private final Set<String> vocabulary = new HashSet<>();
+
+    private final Set<String> intentsWithEntities = new HashSet<>();
+
+    private final List<EntityPattern> entityPatterns = new ArrayList<>();
+
+    /**
+     * Values of annotated entities, only used for extraction since Rasa does not match them literally
+     */
+    private final List<EntityPattern> annotatedEntities = new ArrayList<>();
+
+    private final double threshold;
+
+    private int exampleTotal;
+
+    /**
+     * @param threshold minimal probability of an intent classified by the model, above 1 only exact matches are used.
+     */
+    private LocalIntentClassifier(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param trainingData Rasa NLU training data (YAML), only intents, regexes, and lookup tables are considered.
+     */
+    public static LocalIntentClassifier fromTrainingData(String trainingData, double threshold) {
+        var classifier = new LocalIntentClassifier(threshold);
+
+        String intent = null;
+        String patternItem = null;
+        String patternName = null;
+        var inExamples = false;
+        for (var line : trainingData.lines().toList()) {
+            var trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+
+            if (!Character.isWhitespace(line.charAt(0)) && !trimmed.startsWith("-")) {
+                // Top-level key, e.g., `nlu:` or `responses:`
+                intent = null;
+                patternItem = null;
+                patternName = null;
+                inExamples = false;
+            } else if (trimmed.matches("-\\s*(intent|regex|lookup|synonym)\\s*:.*")) {
+                var key = trimmed.substring(1, trimmed.indexOf(':')).strip();
+                var value = unquote(trimmed.substring(trimmed.indexOf(':') + 1));
+                intent = key.equals("intent") ? value : null;
+                patternItem = key.equals("regex") || key.equals("lookup") ? key : null;
+                patternName = value;
+                inExamples = false;
+            } else if (trimmed.startsWith("examples:")) {
+                inExamples = true;
+            } else if (inExamples && trimmed.startsWith("- ")) {
+                var example = unquote(trimmed.substring(2));
+                if (intent != null) {
+                    classifier.addExample(intent, example);
+                } else if ("regex".equals(patternItem)) {
+                    addEntityPattern(classifier.entityPatterns, patternName, example);
+                } else if ("lookup".equals(patternItem)) {
+                    addEntityPattern(classifier.entityPatterns, patternName, lookupRegex(example));
+                }
+            } else {
+                inExamples = false;
+            }
+        }
+
+        return classifier;
+    }
+
+    private static String unquote(String value) {
+        value = value.strip();
+        if (value.length() >= 2 && (value.startsWith("\"") && value.endsWith("\"") || value.startsWith("'") && value.endsWith("'"))) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private void addExample(String intent, String annotatedText) {
+        // Strip entity annotations, the first entity is the one that the bot gets to see
+        String entity = null;
+        var text = new StringBuilder();
+        var matcher = ENTITY_ANNOTATION.matcher(annotatedText);
+        while (matcher.find()) {
+            if (entity == null) {
+                entity = matcher.group(1);
+            }
+            addEntityPattern(annotatedEntities, entityName(matcher.group(2)), lookupRegex(matcher.group(1)));
+            matcher.appendReplacement(text, matcher.group(1).replace("\\", "\\\\").replace("$", "\\$"));
+        }
+        matcher.appendTail(text);
+
+        if (entity != null) {
+            intentsWithEntities.add(intent);
+        }
+
+        var tokens = tokenize(text.toString());
+        if (tokens.isEmpty()) {
+            return;
+        }
+
+        var normalized = String.join(" ", tokens);
+        var example = new Example(intent, entity);
+        if (!exactMatches.containsKey(normalized)) {
+            exactMatches.put(normalized, example);
+        } else if (exactMatches.get(normalized) != null && !exactMatches.get(normalized).intent().equals(intent)) {
+            // Ambiguous, we have to remember that though
+            exactMatches.put(normalized, null);
+        }
+
+        var counts = tokenCounts.computeIfAbsent(intent, k -> new HashMap<>());
+        for (var token : tokens) {
+            counts.merge(token, 1, Integer::sum);
+            vocabulary.add(token);
+        }
+        tokenTotals.merge(intent, tokens.size(), Integer::sum);
+        exampleCounts.merge(intent, 1, Integer::sum);
+        exampleTotal++;
+    }
+
+    /**
+     * @param annotation e.g., <code>(name)</code>, <code>(name:synonym)</code>, or <code>{"entity": "name"}</code>
+     */
+    private static String entityName(String annotation) {
+        if (annotation.startsWith("(")) {
+            var name = annotation.substring(1, annotation.length() - 1);
+            return name.contains(":") ? name.substring(0, name.indexOf(':')) : name;
+        }
+
+        var matcher = ENTITY_NAME.matcher(annotation);
+        return matcher.find() ? matcher.group(1) : "";
+    }
+
+    private static String lookupRegex(String value) {
+        return "(?i)\\b" + Pattern.quote(value) + "\\b";
+    }
+
+    private static void addEntityPattern(List<EntityPattern> patterns, String entity, String regex) {
+        if (patterns.stream().anyMatch(p -> p.entity().equals(entity) && p.pattern().pattern().equals(regex))) {
+            return;
+        }
+
+        try {
+            patterns.add(new EntityPattern(entity, Pattern.compile(regex)));
+        } catch (PatternSyntaxException ignored) {
+            // Rasa regexes are Python regexes, we skip the few that Java does not understand. Entities of such a
+            // pattern are missed in messages that we classify ourselves.
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        return Arrays.stream(TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT)))
+                .filter(t -> !t.isEmpty())
+                .toList();
+    }
+
+    /**
+     * @return the classification, or null if the message has to be classified by Rasa.
+     */
+    public Classification classify(String text) {
+        var tokens = tokenize(text);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+
+        var normalized = String.join(" ", tokens);
+        if (exactMatches.containsKey(normalized)) {
+            var example = exactMatches.get(normalized);
+            if (example == null) {
+                return null;
+            }
+
+            if (example.entity() == null) {
+                return matchesEntityPattern(text) ? null : new Classification(new NluCache.NluResult(example.intent(), NO_ENTITY), Method.EXACT);
+            }
+
+            // Entity as the user wrote it, the example only equals the message up to case and punctuation
+            var start = text.toLowerCase(Locale.ROOT).indexOf(example.entity().toLowerCase(Locale.ROOT));
+            var entity = start < 0 ? example.entity() : text.substring(start, start + example.entity().length());
+            return new Classification(new NluCache.NluResult(example.intent(), entity), Method.EXACT);
+        }
+
+        if (threshold > 1 || tokenCounts.size() < 2 || !vocabulary.containsAll(tokens) || matchesEntityPattern(text)) {
+            return null;
+        }
+
+        var best = Collections.max(probabilities(tokens).entrySet(), Map.Entry.comparingByValue());
+        if (best.getValue() < threshold || intentsWithEntities.contains(best.getKey())) {
+            return null;
+        }
+
+        return new Classification(new NluCache.NluResult(best.getKey(), NO_ENTITY), Method.MODEL);
+    }
+
+    /**
+     * Naive Bayes with Laplace smoothing, in log space, normalized into probabilities afterwards
+     */
+    private Map<String, Double> probabilities(List<String> tokens) {
+        var logProbabilities = new HashMap<String, Double>();
+        for (var entry : tokenCounts.entrySet()) {
+            var intent = entry.getKey();
+            var denominator = tokenTotals.get(intent) + vocabulary.size();
+            var logProbability = Math.log((double) exampleCounts.get(intent) / exampleTotal);
+            for (var token : tokens) {
+                logProbability += Math.log((entry.getValue().getOrDefault(token, 0) + 1d) / denominator);
+            }
+            logProbabilities.put(intent, logProbability);
+        }
+
+        var max = Collections.max(logProbabilities.values());
+        var normalizer = logProbabilities.values().stream().mapToDouble(p -> Math.exp(p - max)).sum();
+        var probabilities = new HashMap<String, Double>();
+        logProbabilities.forEach((intent, p) -> probabilities.put(intent, Math.exp(p - max) / normalizer));
+        return probabilities;
+    }
+
+    /**
+     * Ranks the intents like Rasa does, i.e., regardless of the threshold: an unambiguous exact match gets confidence
+     * 1, otherwise the model decides based on the words that occur in the training data.
+     *
+     * @return intents with their confidence, most likely first, empty if no word of the message is known.
+     */
+    public List<Intent> rank(String text) {
+        var tokens = tokenize(text);
+        var example = exactMatches.get(String.join(" ", tokens));
+        if (example != null) {
+            return List.of(new Intent(1, example.intent()));
+        }
+
+        var knownTokens = tokens.stream().filter(vocabulary::contains).toList();
+        if (knownTokens.isEmpty()) {
+            return List.of();
+        }
+
+        return probabilities(knownTokens).entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .map(e -> new Intent(e.getValue(), e.getKey()))
+                .toList();
+    }
+
+    /**
+     * Entities matched by regexes and lookup tables of the training data, and values of annotated entities. Overlapping
+     * matches are dropped in favor of the earlier (or, at the same position, longer) one.
+     *
+     * @return entities in order of occurrence.
+     */
+    public List<Entity> extractEntities(String text) {
+        var matches = new ArrayList<Entity>();
+        for (var patterns : List.of(entityPatterns, annotatedEntities)) {
+            for (var pattern : patterns) {
+                var matcher = pattern.pattern().matcher(text);
+                while (matcher.find()) {
+                    if (matcher.end() > matcher.start()) {
+                        matches.add(new Entity(matcher.start(), matcher.end(), matcher.group(), pattern.entity(), 1));
+                    }
+                }
+            }
+        }
+
+        matches.sort(Comparator.comparingInt(Entity::start).thenComparing(Comparator.comparingInt(Entity::end).reversed()));
+        var entities = new ArrayList<Entity>();
+        for (var match : matches) {
+            if (entities.isEmpty() || match.start() >= entities.get(entities.size() - 1).end()) {
+                entities.add(match);
+            }
+        }
+        return entities;
+    }
+
+    private boolean matchesEntityPattern(String text) {
+        return entityPatterns.stream().anyMatch(p -> p.pattern().matcher(text).find());
+    }
+
+    public int exampleCount() {
+        return exampleTotal;
+    }
+}
@@ -0,0 +1,266 @@
+package i5.bml.transpiler.bot.threads.rasa;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import i5.bml.transpiler.bot.config.BotConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stands in for a Rasa server, such that bots can be tested without Rasa and the whole pipeline can be load-tested on
+ * one machine. Serves the endpoints that {@link RasaComponent} uses: <code>POST /model/train</code> "trains" a
+ * {@link LocalIntentClassifier} on the training data (in milliseconds instead of minutes), <code>PUT /model</code>
+ * loads one of the trained models, <code>GET /status</code> tells which one is loaded, and
+ * <code>POST /model/parse</code> classifies a message with it. Models are only kept in memory, i.e., after a restart,
+ * the bot retrains.
+ * <p>
+ * Parse requests can be slowed down and failed on purpose, to see how the bot copes with a slow or failing Rasa:
+ * configured on start-up with <code>rasa.standIn.latencyMillis</code> and <code>rasa.standIn.jitterMillis</code>
+ * (every parse takes the latency plus a random share of the jitter, default 0 each) and
+ * <code>rasa.standIn.errorRatePercent</code> (share of parse requests that fail with 500, default 0), see
+ * {@link BotConfig#option(String, String)}.
+ * <p>
+ * The bot starts it in place of Rasa, on the port of the Rasa URL, with <code>rasa.standIn.enabled</code>. It also
+ * runs on its own, e.g., for several bot instances: <code>java -cp bot.jar &lt;package&gt;.threads.rasa.LocalRasaServer
+ * [port]</code> (default {@value DEFAULT_PORT}, like Rasa).
+ */
+public class LocalRasaServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalRasaServer.class);
+
+    private static final int DEFAULT_PORT = 5005;
+
+    /**
+     * Intent of messages without a known word, like the intent of Rasa's fallback classifier
+     */
+    private static final String FALLBACK_INTENT = "nlu_fallback";
+
+    private static final DateTimeFormatter MODEL_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Gson gson = new Gson();
+
+    private final Duration latency;
+
+    private final Duration jitter;
+
+    private final int errorRatePercent;
+
+    private final Map<String, LocalIntentClassifier> models = new ConcurrentHashMap<>();
+
+    private final AtomicInteger trainedModels = new AtomicInteger();
+
+    private volatile String loadedModelName;
+
+    private volatile LocalIntentClassifier loadedModel;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    /**
+     * @param errorRatePercent share of parse requests that fail, in percent.
+     */
+    public LocalRasaServer(Duration latency, Duration jitter, int errorRatePercent) {
+        this.latency = latency;
+        this.jitter = jitter;
+        this.errorRatePercent = errorRatePercent;
+    }
+
+    public static LocalRasaServer configured() {
+        return new LocalRasaServer(Duration.ofMillis(intOption("rasa.standIn.latencyMillis")),
+                Duration.ofMillis(intOption("rasa.standIn.jitterMillis")), Math.min(100, intOption("rasa.standIn.errorRatePercent")));
+    }
+
+    private static int intOption(String name) {
+        try {
+            return Math.max(0, Integer.parseInt(BotConfig.option(name, "0").trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid Rasa stand-in option {}: {}", name, e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Starts a configured stand-in on the port of the Rasa URL, if <code>rasa.standIn.enabled</code> is set.
+     */
+    static void startIfEnabled(String rasaUrl) {
+        if (!Boolean.parseBoolean(BotConfig.option("rasa.standIn.enabled", "false").trim())) {
+            return;
+        }
+
+        var port = URI.create(rasaUrl).getPort();
+        try {
+            configured().start(port < 0 ? 80 : port);
+        } catch (IOException e) {
+            LOGGER.error("Failed to start Rasa stand-in on port {}: {}", port, e.getMessage());
+            LOGGER.debug("Stacktrace:", e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        configured().start(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT);
+    }
+
+    /**
+     * @param port 0 for any free port.
+     * @return the port that the stand-in listens on.
+     */
+    public synchronized int start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/status", exchange -> handle(exchange, "GET", this::status));
+        server.createContext("/model/train", exchange -> handle(exchange, "POST", this::train));
+        server.createContext("/model/parse", exchange -> handle(exchange, "POST", this::parse));
+        server.createContext("/model", exchange -> handle(exchange, "PUT", this::load));
+        // Parse requests wait for the injected latency, they must not wait for each other
+        executor = Executors.newCachedThreadPool(r -> {
+            var thread = new Thread(r, "rasa-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+
+        LOGGER.info("Rasa stand-in listening on port {} (latency {} ms, jitter {} ms, error rate {}%)",
+                server.getAddress().getPort(), latency.toMillis(), jitter.toMillis(), errorRatePercent);
+        return server.getAddress().getPort();
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange, String body) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+        try (exchange) {
+            // Contexts match by prefix, e.g., /model also gets /model/unknown
+            if (!exchange.getRequestMethod().equals(method) || !exchange.getHttpContext().getPath().equals(exchange.getRequestURI().getPath())) {
+                respondWithError(exchange, 404, "NotFound", "Not supported by the Rasa stand-in: %s %s"
+                        .formatted(exchange.getRequestMethod(), exchange.getRequestURI().getPath()));
+                return;
+            }
+
+            try {
+                handler.handle(exchange, new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            } catch (JsonParseException | IllegalStateException e) {
+                respondWithError(exchange, 400, "BadRequest", "Invalid request body: " + e.getMessage());
+            } catch (RuntimeException e) {
+                LOGGER.error("Rasa stand-in failed to handle {}: {}", exchange.getRequestURI(), e.getMessage());
+                LOGGER.debug("Stacktrace:", e);
+                respondWithError(exchange, 500, "ServerError", e.getMessage());
+            }
+        }
+    }
+
+    private void status(HttpExchange exchange, String body) throws IOException {
+        var modelName = loadedModelName;
+        respond(exchange, 200, gson.toJson(new RasaStatusResponseSchema(modelName, modelName, 0)));
+    }
+
+    private void train(HttpExchange exchange, String trainingData) throws IOException {
+        var modelName = "%s-%d.tar.gz".formatted(LocalDateTime.now().format(MODEL_NAME_FORMAT), trainedModels.incrementAndGet());
+        var model = LocalIntentClassifier.fromTrainingData(trainingData, 0);
+        models.put(modelName, model);
+        LOGGER.info("Rasa stand-in trained model {} on {} examples", modelName, model.exampleCount());
+
+        exchange.getResponseHeaders().set("filename", modelName);
+        respond(exchange, 200, "");
+    }
+
+    private void load(HttpExchange exchange, String body) throws IOException {
+        var modelFile = stringField(body, "model_file");
+        var modelName = modelFile.substring(modelFile.lastIndexOf('/') + 1);
+        var model = models.get(modelName);
+        if (model == null) {
+            respondWithError(exchange, 400, "BadRequest", "Model %s is not known, it has to be trained first".formatted(modelFile));
+            return;
+        }
+
+        loadedModel = model;
+        loadedModelName = modelName;
+        respond(exchange, 204, "");
+    }
+
+    private void parse(HttpExchange exchange, String body) throws IOException {
+        var text = stringField(body, "text");
+
+        var random = ThreadLocalRandom.current();
+        var delayMillis = latency.toMillis() + (jitter.isZero() ? 0 : random.nextLong(jitter.toMillis() + 1));
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        if (random.nextInt(100) < errorRatePercent) {
+            respondWithError(exchange, 500, "ServerError", "Injected error of the Rasa stand-in");
+            return;
+        }
+
+        var model = loadedModel;
+        if (model == null) {
+            respondWithError(exchange, 409, "Conflict", "No model loaded, load one with PUT /model");
+            return;
+        }
+
+        var ranking = model.rank(text);
+        var intent = ranking.isEmpty() ? new Intent(0, FALLBACK_INTENT) : ranking.get(0);
+        var response = new RasaParseResponseSchema(model.extractEntities(text).toArray(Entity[]::new), intent,
+                ranking.toArray(Intent[]::new), text);
+        respond(exchange, 200, gson.toJson(response));
+    }
+
+    private String stringField(String body, String name) {
+        var json = gson.fromJson(body, JsonObject.class);
+        if (json == null || !json.has(name) || !json.get(name).isJsonPrimitive()) {
+            throw new IllegalStateException("Expected a JSON object with " + name);
+        }
+        return json.get(name).getAsString();
+    }
+
+    private void respondWithError(HttpExchange exchange, int code, String reason, String message) throws IOException {
+        var error = new RasaErrorResponseSchema("stand-in", "failure", message, reason, null, null, code);
+        respond(exchange, code, gson.toJson(error));
+    }
+
+    /**
+     * @param body JSON, empty if there is none.
+     */
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        if (body.isEmpty()) {
+            exchange.sendResponseHeaders(code, -1);
+            return;
+        }
+
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
@@ -0,0 +1,157 @@
+package i5.bml.transpiler.bot.threads.rasa;
+
+import i5.bml.transpiler.bot.config.BotConfig;
+import i5.bml.transpiler.bot.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Recent NLU results, such that frequent messages (e.g., "hi" or "thanks") are only parsed once per model. Keyed by
+ * model and normalized text, i.e., results of a model are never returned once another model has been loaded. Bounded
+ * in size (least recently used results are evicted) and in age (results expire after the TTL, regardless of use).
+ * <p>
+ * Configured on start-up with <code>nlu.cache.maxSize</code> (default {@value DEFAULT_MAX_SIZE}, 0 turns the cache off)
+ * and <code>nlu.cache.ttlMinutes</code> (default {@value DEFAULT_TTL_MINUTES}), see
+ * {@link BotConfig#option(String, String)}.
+ */
+public class NluCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NluCache.class);
+
+    private static final int DEFAULT_MAX_SIZE = 10_000;
+
+    private static final int DEFAULT_TTL_MINUTES = 60;
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    public record Key(String model, String text) {}
+
+    public record NluResult(String intent, String entity) {}
+
+    private record Entry(NluResult result, long cachedAt) {}
+
+    /**
+     * Access-ordered, i.e., the first entry is the least recently used one
+     */
+    private final LinkedHashMap<Key, Entry> results = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public NluCache(int maxSize, Duration ttl) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public static NluCache configured() {
+        var maxSize = DEFAULT_MAX_SIZE;
+        var ttlMinutes = DEFAULT_TTL_MINUTES;
+        try {
+            maxSize = Math.max(0, Integer.parseInt(BotConfig.option("nlu.cache.maxSize", String.valueOf(DEFAULT_MAX_SIZE)).trim()));
+            ttlMinutes = Math.max(1, Integer.parseInt(BotConfig.option("nlu.cache.ttlMinutes", String.valueOf(DEFAULT_TTL_MINUTES)).trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid NLU cache option: {}", e.getMessage());
+        }
+
+        var cache = new NluCache(maxSize, Duration.ofMinutes(ttlMinutes));
+
+        var metrics = MetricsRegistry.shared();
+        metrics.gauge("bml_nlu_cache_entries", "NLU results in the NLU cache", cache::size);
+        metrics.counter("bml_nlu_cache_lookups_total", "NLU cache lookups by result", cache::hits, "result", "hit");
+        metrics.counter("bml_nlu_cache_lookups_total", "NLU cache lookups by result", cache::misses, "result", "miss");
+        metrics.gauge("bml_nlu_cache_hit_ratio", "Fraction of NLU cache lookups that were hits", cache::hitRate);
+
+        return cache;
+    }
+
+    /**
+     * Texts that only differ in surrounding or repeated whitespace share their result. Case is kept, entity values are
+     * taken from the text.
+     */
+    public static Key key(String model, String text) {
+        return new Key(model, WHITESPACE.matcher(text.strip()).replaceAll(" "));
+    }
+
+    /**
+     * @return the cached result, or null if there is none (or it has expired).
+     */
+    public NluResult get(Key key) {
+        if (maxSize == 0) {
+            return null;
+        }
+
+        synchronized (results) {
+            var entry = results.get(key);
+            if (entry != null && System.nanoTime() - entry.cachedAt() >= ttlNanos) {
+                results.remove(key);
+                entry = null;
+            }
+
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+
+            hits.increment();
+            return entry.result();
+        }
+    }
+
+    public void put(Key key, NluResult result) {
+        if (maxSize == 0) {
+            return;
+        }
+
+        synchronized (results) {
+            results.put(key, new Entry(result, System.nanoTime()));
+            var iterator = results.entrySet().iterator();
+            while (results.size() > maxSize && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all results, e.g., when another model has been loaded. Their keys would not be used anymore anyway, this
+     * frees the memory right away.
+     */
+    public void clear() {
+        synchronized (results) {
+            results.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (results) {
+            return results.size();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return fraction of lookups that were hits, NaN if there were no lookups yet.
+     */
+    public double hitRate() {
+        var hits = hits();
+        var lookups = hits + misses();
+        return lookups == 0 ? Double.NaN : (double) hits / lookups;
+    }
+}
@@ -2,74 +2,223 @@ package i5.bml.transpiler.bot.threads.rasa;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import i5.bml.transpiler.bot.config.BotConfig;
 import i5.bml.transpiler.bot.events.messenger.MessageEvent;
+import i5.bml.transpiler.bot.http.CircuitBreaker;
+import i5.bml.transpiler.bot.http.HttpClients;
+import i5.bml.transpiler.bot.http.HttpSettings;
+import i5.bml.transpiler.bot.metrics.Counter;
+import i5.bml.transpiler.bot.metrics.MetricsRegistry;
+import i5.bml.transpiler.bot.metrics.RequestMetrics;
 import i5.bml.transpiler.bot.utils.PersistentStorage;
+import i5.bml.transpiler.bot.utils.SingleFlight;
 import okhttp3.*;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.concurrent.TimeUnit;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
 
 public class RasaComponent {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RasaComponent.class);
 
+    private static final double DEFAULT_LOCAL_THRESHOLD = 0.95;
+
+    private static final int DEFAULT_SLOW_PARSE_MILLIS = 2000;
+
     private final String url;
 
     private final String trainingFilePath;
 
-    private final OkHttpClient okHttpClient;
+    /**
+     * Parsing a message has to be quick, while training a model takes minutes
+     */
+    private final OkHttpClient parseClient = HttpClients.forCalls(HttpSettings.CallType.NLU);
+
+    private final OkHttpClient modelClient = HttpClients.forCalls(HttpSettings.CallType.TRAINING);
+
+    private final RequestMetrics parseRequests = MetricsRegistry.shared().requests("rasa", "parse");
+
+    private final NluCache nluCache = NluCache.configured();
+
+    /**
+     * Parse requests in flight, identical messages that arrive at the same time (e.g., after a broadcast) share one
+     */
+    private final SingleFlight<NluCache.Key, NluCache.NluResult> parseFlights = new SingleFlight<>();
+
+    /**
+     * Parse requests fail fast while Rasa fails or is slow, see {@link #applyFallback(MessageEvent, Throwable)}
+     */
+    private final CircuitBreaker parseBreaker = CircuitBreaker.configured("rasa", Duration.ofMillis(DEFAULT_SLOW_PARSE_MILLIS));
+
+    /**
+     * Intent of messages that Rasa could not parse (<code>nlu.fallbackIntent</code>), empty if they are not handled
+     */
+    private final String fallbackIntent = BotConfig.option("nlu.fallbackIntent", "nlu_fallback").trim();
+
+    /**
+     * Answers messages that it is confident about without Rasa, null if turned off (<code>nlu.local.enabled</code>)
+     */
+    private volatile LocalIntentClassifier localClassifier;
+
+    private final Counter exactClassifications = MetricsRegistry.shared().counter("bml_nlu_local_classifications_total",
+            "Messages classified in-process instead of by Rasa", "method", "exact");
+
+    private final Counter modelClassifications = MetricsRegistry.shared().counter("bml_nlu_local_classifications_total",
+            "Messages classified in-process instead of by Rasa", "method", "model");
+
+    /**
+     * Name of the model that Rasa currently serves (as far as we know), part of the key of cached NLU results
+     */
+    private volatile String modelName;
+
+    private volatile boolean ready;
 
     public RasaComponent(String url, String trainingFilePath) {
         this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
         this.trainingFilePath = trainingFilePath;
-        okHttpClient = new OkHttpClient.Builder()
-                .writeTimeout(10, TimeUnit.MINUTES)
-                .readTimeout(10, TimeUnit.MINUTES)
-                .connectTimeout(10, TimeUnit.MINUTES)
-                .callTimeout(10, TimeUnit.MINUTES)
-                .build();
+        MetricsRegistry.shared().counter("bml_nlu_coalesced_requests_total",
+                "NLU requests that shared the result of an identical request in flight", parseFlights::coalesced);
+        MetricsRegistry.shared().gauge("bml_nlu_ready", "1 once Rasa serves a model of the current training data",
+                () -> ready ? 1 : 0);
     }
 
+    /**
+     * Makes sure that Rasa serves a model of the current training data. The training data is fingerprinted, a stored
+     * model is reused as long as it was trained on data with the same fingerprint, i.e., we only retrain (which takes
+     * minutes) when the training data actually changed.
+     * <p>
+     * With <code>rasa.standIn.enabled</code>, a {@link LocalRasaServer} is started in place of Rasa first.
+     */
     public void init() {
-        // Check if bot has already been started and model name was saved
+        LocalRasaServer.startIfEnabled(url);
+
+        var start = System.nanoTime();
+        String trainingData = null;
+        try {
+            trainingData = Files.readString(new File(trainingFilePath).toPath());
+        } catch (IOException e) {
+            LOGGER.error("Failed to read training file {}: {}", trainingFilePath, e.getMessage());
+        }
+
+        localClassifier = trainingData == null ? null : buildLocalClassifier(trainingData);
+
         var settings = PersistentStorage.getBotSettings();
-        if (settings.rasaModelName() != null) {
-            var rasaModelName = settings.rasaModelName();
-            var currentlyLoadedModel = getLoadedModel();
-            if (!rasaModelName.equals(currentlyLoadedModel)) {
-                LOGGER.info("Currently loaded model is {}, now loading desired model {}...", currentlyLoadedModel, rasaModelName);
-                loadModel(rasaModelName);
-            } else {
-                LOGGER.info("Desired model is already loaded");
+        var fingerprint = trainingData == null ? null : fingerprint(trainingData);
+        var storedModel = settings.rasaModelName();
+        if (storedModel != null && (trainingData == null || fingerprint.equals(settings.rasaTrainingDataFingerprint()))) {
+            if (trainingData == null) {
+                LOGGER.warn("Can't tell whether model {} matches the training data, using it anyway", storedModel);
             }
-        } else {
-            var rasaModelName = trainModel();
 
-            // Training failed -> we can't load the model, hence, just return
-            if (rasaModelName == null) {
+            if (reuseModel(storedModel)) {
+                markReady(storedModel, "reused", start);
                 return;
             }
+        } else if (storedModel != null) {
+            LOGGER.info("Training data changed since model {} was trained, retraining", storedModel);
+        }
 
-            settings.rasaModelName(rasaModelName);
-            PersistentStorage.writeBotSettings(settings);
+        if (trainingData == null) {
+            throw new IllegalStateException("Can't train Rasa model without training file " + trainingFilePath);
+        }
+
+        var rasaModelName = trainModel(trainingData);
+
+        // Training failed -> we can't load the model, hence, just return
+        if (rasaModelName == null) {
+            return;
+        }
+
+        settings.rasaModelName(rasaModelName);
+        settings.rasaTrainingDataFingerprint(fingerprint);
+        PersistentStorage.writeBotSettings(settings);
+        loadModel(rasaModelName);
+        markReady(rasaModelName, "trained", start);
+    }
+
+    /**
+     * @return false if Rasa does not know the model (anymore), e.g., because its model directory was wiped.
+     */
+    private boolean reuseModel(String rasaModelName) {
+        var currentlyLoadedModel = getLoadedModel();
+        if (rasaModelName.equals(currentlyLoadedModel)) {
+            LOGGER.info("Desired model is already loaded");
+            modelName = rasaModelName;
+            return true;
+        }
+
+        LOGGER.info("Currently loaded model is {}, now loading desired model {}...", currentlyLoadedModel, rasaModelName);
+        try {
             loadModel(rasaModelName);
+            return true;
+        } catch (IllegalStateException e) {
+            LOGGER.warn("Failed to load stored model {}, retraining: {}", rasaModelName, e.getMessage());
+            return false;
         }
     }
 
-    private String trainModel() {
-        var ymlContent = "";
+    private void markReady(String rasaModelName, String how, long startNanos) {
+        ready = true;
+        LOGGER.info("Rasa is ready with model {} ({} in {} s)", rasaModelName, how,
+                "%.1f".formatted((System.nanoTime() - startNanos) / 1e9));
+    }
+
+    /**
+     * @return whether Rasa serves a model of the current training data.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Line endings do not count, e.g., a checkout on Windows does not require retraining.
+     */
+    static String fingerprint(String trainingData) {
         try {
-            ymlContent = Files.readString(new File(trainingFilePath).toPath());
-        } catch (Exception e) {
-            LOGGER.error("Failed to read training file {}", trainingFilePath);
-            throw new RuntimeException(e);
+            var digest = MessageDigest.getInstance("SHA-256").digest(trainingData.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Configured with <code>nlu.local.enabled</code> (default true) and <code>nlu.local.threshold</code> (default
+     * {@value DEFAULT_LOCAL_THRESHOLD}, probability that the statistical model needs to answer, above 1 only exact
+     * matches of training examples are answered), see {@link BotConfig#option(String, String)}.
+     */
+    private LocalIntentClassifier buildLocalClassifier(String trainingData) {
+        if (!Boolean.parseBoolean(BotConfig.option("nlu.local.enabled", "true").trim())) {
+            return null;
         }
 
+        var threshold = DEFAULT_LOCAL_THRESHOLD;
+        try {
+            threshold = Double.parseDouble(BotConfig.option("nlu.local.threshold", String.valueOf(DEFAULT_LOCAL_THRESHOLD)).trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid local NLU option: {}", e.getMessage());
+        }
+
+        var classifier = LocalIntentClassifier.fromTrainingData(trainingData, threshold);
+        LOGGER.info("Classifying confident messages in-process, learned from {} training examples", classifier.exampleCount());
+        return classifier;
+    }
+
+    private String trainModel(String ymlContent) {
         var request = new Request.Builder()
                 .url(url + "/model/train")
                 .post(RequestBody.create(ymlContent, MediaType.parse("application/yml")))
@@ -104,13 +253,80 @@ public class RasaComponent {
         handleResponse(request, code200Response -> {
             throw new IllegalStateException("Rasa loading model failed, it seems that the model name %s is not known".formatted(rasaModelName));
         }, r -> LOGGER.info("Model loading done!"), "Rasa loading model failed: ");
+
+        // Results of the previous model must not be used anymore
+        modelName = rasaModelName;
+        nluCache.clear();
     }
 
-    public void invokeModel(MessageEvent messageEvent) {
+    /**
+     * Parses the text of the message event and sets its intent and entity. The request is sent asynchronously, i.e., no
+     * thread waits for Rasa while it computes. Results are cached per model, see {@link NluCache}, and identical
+     * messages that are parsed at the same time share a single request. Messages that the local classifier is confident
+     * about are not sent to Rasa at all, see {@link LocalIntentClassifier}.
+     *
+     * @return completes once intent and entity are set, or exceptionally if Rasa could not parse the message.
+     */
+    public CompletableFuture<Void> invokeModelAsync(MessageEvent messageEvent) {
         if (messageEvent.text().isEmpty()) {
-            return;
+            return CompletableFuture.completedFuture(null);
+        }
+
+        var classifier = localClassifier;
+        var classification = classifier == null ? null : classifier.classify(messageEvent.text());
+        if (classification != null) {
+            (classification.method() == LocalIntentClassifier.Method.EXACT ? exactClassifications : modelClassifications).increment();
+            messageEvent.trace().root().attribute("bml.nlu", "local");
+            apply(classification.result(), messageEvent);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        var key = NluCache.key(modelName, messageEvent.text());
+        var cached = nluCache.get(key);
+        if (cached != null) {
+            apply(cached, messageEvent);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return parseFlights.execute(key, () -> parseBreaker.callAsync(() -> parse(messageEvent)).thenApply(result -> {
+            // The model might have been switched in the meantime
+            if (result != null && Objects.equals(key.model(), modelName)) {
+                nluCache.put(key, result);
+            }
+            return result;
+        })).handle((result, e) -> {
+            if (e == null) {
+                apply(result, messageEvent);
+            } else {
+                applyFallback(messageEvent, e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Messages that Rasa could not parse (e.g., since it is down) get the fallback intent, i.e., the dialogue answers
+     * them with its default state instead of not at all. Without fallback intent, the handler is not dispatched.
+     */
+    private void applyFallback(MessageEvent messageEvent, Throwable e) {
+        if (fallbackIntent.isEmpty()) {
+            throw e instanceof CompletionException completionException ? completionException : new CompletionException(e);
         }
 
+        var cause = ExceptionUtils.getRootCause(e);
+        if (cause instanceof CircuitBreaker.OpenException) {
+            LOGGER.debug("Using fallback intent {}: {}", fallbackIntent, cause.getMessage());
+        } else {
+            LOGGER.error("Rasa parsing message '{}' failed, using fallback intent {}: {}", messageEvent.text(), fallbackIntent, cause.getMessage());
+            LOGGER.debug("Stacktrace:", e);
+        }
+
+        messageEvent.trace().root().attribute("bml.nlu", "fallback");
+        messageEvent.entity("{no_entity_found}");
+        messageEvent.intent(fallbackIntent);
+    }
+
+    private CompletableFuture<NluCache.NluResult> parse(MessageEvent messageEvent) {
         var content = new JsonObject();
         content.addProperty("text", messageEvent.text());
         var request = new Request.Builder()
@@ -118,25 +334,56 @@ public class RasaComponent {
                 .post(RequestBody.create(content.toString(), MediaType.parse("application/json")))
                 .build();
 
-        handleResponse(request, code200Response -> {
-            if (code200Response.body() == null) {
-                throw new IllegalStateException("Rasa parsing message failed because response body is null");
-            }
+        var errorMessage = "Rasa parsing message '%s' failed: ".formatted(messageEvent.text());
+        return parseRequests.timeAsync(messageEvent.trace(), () -> {
+            var parsed = new CompletableFuture<NluCache.NluResult>();
+            parseClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    parsed.completeExceptionally(new IllegalStateException(errorMessage, e));
+                }
 
-            try {
-                var responseSchema = new Gson().fromJson(code200Response.body().string(), RasaParseResponseSchema.class);
-                if (responseSchema.entities().length > 0) {
-                    messageEvent.entity(responseSchema.entities()[0].value());
-                } else {
-                    messageEvent.entity("{no_entity_found}");
+                @Override
+                public void onResponse(Call call, Response response) {
+                    try (response) {
+                        var result = new NluCache.NluResult[1];
+                        handleResponse(response, code200Response -> result[0] = handleParseResponse(code200Response), code204Response -> {
+                        });
+                        parsed.complete(result[0]);
+                    } catch (IOException e) {
+                        parsed.completeExceptionally(new IllegalStateException(errorMessage, e));
+                    } catch (Exception e) {
+                        parsed.completeExceptionally(e);
+                    }
                 }
-                messageEvent.intent(responseSchema.intent().name());
-                LOGGER.debug("Rasa response:\n{}", responseSchema);
-            } catch (IOException e) {
-                throw new IllegalStateException("Rasa parsing message failed while retrieving response body", e);
-            }
-        }, code204Response -> {
-        }, "Rasa parsing message %s failed: ".formatted(messageEvent));
+            });
+            return parsed;
+        });
+    }
+
+    private NluCache.NluResult handleParseResponse(Response code200Response) {
+        if (code200Response.body() == null) {
+            throw new IllegalStateException("Rasa parsing message failed because response body is null");
+        }
+
+        try {
+            var responseSchema = new Gson().fromJson(code200Response.body().string(), RasaParseResponseSchema.class);
+            LOGGER.debug("Rasa response:\n{}", responseSchema);
+            var entity = responseSchema.entities().length > 0 ? responseSchema.entities()[0].value() : "{no_entity_found}";
+            return new NluCache.NluResult(responseSchema.intent().name(), entity);
+        } catch (IOException e) {
+            throw new IllegalStateException("Rasa parsing message failed while retrieving response body", e);
+        }
+    }
+
+    private static void apply(NluCache.NluResult result, MessageEvent messageEvent) {
+        // A 204 response carries no result, the event stays as it is
+        if (result == null) {
+            return;
+        }
+
+        messageEvent.entity(result.entity());
+        messageEvent.intent(result.intent());
     }
 
     private String getLoadedModel() {
@@ -165,22 +412,26 @@ public class RasaComponent {
     }
 
     private void handleResponse(Request request, Consumer<Response> code200, Consumer<Response> code204, String errorMessage) {
-        try (var response = okHttpClient.newCall(request).execute()) {
-            switch (response.code()) {
-                case 200 -> code200.accept(response);
-                case 204 -> code204.accept(response);
-                case 400, 401, 403, 409, 500 -> {
-                    if (response.body() == null) {
-                        throw new IllegalStateException("Parsing Rasa response body failed because response body is null");
-                    }
-                    RasaErrorResponseSchema responseSchema = new Gson().fromJson(response.body().string(), RasaErrorResponseSchema.class);
-                    throw new IllegalStateException("Rasa request failed:\n%s".formatted(responseSchema));
-                }
-                default ->
-                        throw new IllegalStateException("Unexpected code %s with response:\n%s".formatted(response.code(), response));
-            }
+        try (var response = modelClient.newCall(request).execute()) {
+            handleResponse(response, code200, code204);
         } catch (IOException e) {
             throw new IllegalStateException(errorMessage, e);
         }
     }
+
+    private void handleResponse(Response response, Consumer<Response> code200, Consumer<Response> code204) throws IOException {
+        switch (response.code()) {
+            case 200 -> code200.accept(response);
+            case 204 -> code204.accept(response);
+            case 400, 401, 403, 409, 500 -> {
+                if (response.body() == null) {
+                    throw new IllegalStateException("Parsing Rasa response body failed because response body is null");
+                }
+                RasaErrorResponseSchema responseSchema = new Gson().fromJson(response.body().string(), RasaErrorResponseSchema.class);
+                throw new IllegalStateException("Rasa request failed:\n%s".formatted(responseSchema));
+            }
+            default ->
+                    throw new IllegalStateException("Unexpected code %s with response:\n%s".formatted(response.code(), response));
+        }
+    }
 }
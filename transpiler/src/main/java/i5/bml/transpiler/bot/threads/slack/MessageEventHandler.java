@@ -25,12 +25,12 @@ public class MessageEventHandler extends AbstractSlackHandler implements BoltEve
         }
 
         var slackEvent = new MessageEvent(EventSource.SLACK, event.getEventTime());
-        var session = slackBotThread.activeSessions().get(event.getEvent().getChannel());
-        if (session == null) {
-            session = new Session(event.getEvent().getChannel(), MessageEventType.USER_STARTED_CHAT);
-            slackBotThread.activeSessions().put(event.getEvent().getChannel(), session);
+        // Checking and creating the session in one step, Bolt might call us concurrently for the same channel
+        var session = slackBotThread.activeSessions().computeIfAbsent(event.getEvent().getChannel(), channel -> {
             slackEvent.messageEventType(MessageEventType.USER_STARTED_CHAT);
-        } else {
+            return new Session(channel, MessageEventType.USER_STARTED_CHAT);
+        });
+        if (slackEvent.messageEventType() == null) {
             slackEvent.messageEventType(MessageEventType.USER_SENT_MESSAGE);
         }
 
@@ -1,27 +1,47 @@
 package i5.bml.transpiler.bot.threads.slack;
 
+import com.google.gson.JsonParser;
+import com.slack.api.Slack;
 import com.slack.api.bolt.App;
+import com.slack.api.bolt.AppConfig;
+import com.slack.api.bolt.middleware.MiddlewareChain;
+import com.slack.api.bolt.request.Request;
+import com.slack.api.bolt.request.RequestHeaders;
+import com.slack.api.bolt.request.RequestType;
+import com.slack.api.bolt.request.builtin.EventRequest;
+import com.slack.api.bolt.request.builtin.SlashCommandRequest;
+import com.slack.api.bolt.response.Response;
 import com.slack.api.bolt.socket_mode.SocketModeApp;
 import com.slack.api.methods.SlackApiException;
 import com.slack.api.model.event.ChannelLeftEvent;
 import com.slack.api.model.event.MemberJoinedChannelEvent;
 import com.slack.api.model.event.MemberLeftChannelEvent;
 import com.slack.api.socket_mode.SocketModeClient;
-import i5.bml.transpiler.bot.events.Event;
-import i5.bml.transpiler.bot.threads.Session;
+import com.slack.api.util.http.SlackHttpClient;
+import i5.bml.transpiler.bot.cluster.Cluster;
+import i5.bml.transpiler.bot.events.EventQueue;
+import i5.bml.transpiler.bot.http.HttpClients;
+import i5.bml.transpiler.bot.http.HttpSettings;
+import i5.bml.transpiler.bot.threads.SessionStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.PriorityBlockingQueue;
 
 public class SlackBotThread implements Runnable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SlackBotThread.class);
 
-    private final PriorityBlockingQueue<Event> eventQueue;
+    private static final String FORWARD_CHANNEL = "slack";
+
+    /**
+     * Marks requests that another instance forwarded to us, we handle them regardless of who owns their channel
+     */
+    private static final String FORWARDED_HEADER = "x-bml-forwarded";
+
+    private final EventQueue eventQueue;
 
     private String botId;
     
@@ -31,9 +51,11 @@ public class SlackBotThread implements Runnable {
 
     private SocketModeClient client;
 
-    private final Map<String, Session> activeSessions = new HashMap<>();
+    private App app;
+
+    private final SessionStore activeSessions = SessionStore.shared();
 
-    public SlackBotThread(PriorityBlockingQueue<Event> eventQueue, String botToken, String appToken) {
+    public SlackBotThread(EventQueue eventQueue, String botToken, String appToken) {
         this.eventQueue = eventQueue;
         this.botToken = botToken;
         this.appToken = appToken;
@@ -41,7 +63,10 @@ public class SlackBotThread implements Runnable {
 
     @Override
     public void run() {
-        var app = new App();
+        // Web API calls of Slack go through the shared connection pool and host limits
+        var config = AppConfig.builder().build();
+        config.setSlack(Slack.getInstance(new SlackHttpClient(HttpClients.forCalls(HttpSettings.CallType.API))));
+        app = new App(config);
         try {
             var authTestResponse = app.getClient().authTest(r -> r.token(botToken));
             botId = authTestResponse.getBotId();
@@ -69,6 +94,10 @@ public class SlackBotThread implements Runnable {
         // Register command handler
         app.command("/sayhello", new SayHelloCommandHandler(this));
 
+        // In a partitioned bot, requests concerning channels that another instance owns are handled by that instance
+        app.use(this::forwardForeignRequest);
+        Cluster.current().onForwarded(FORWARD_CHANNEL, this::runForwardedRequest);
+
         try {
             var socketModeApp = new SocketModeApp(appToken, app);
             socketModeApp.startAsync();
@@ -81,11 +110,57 @@ public class SlackBotThread implements Runnable {
         }
     }
 
+    private Response forwardForeignRequest(Request<?> request, Response response, MiddlewareChain chain) throws Exception {
+        if (request.getHeaders().getFirstValue(FORWARDED_HEADER) == null) {
+            var channel = channelOf(request);
+            if (channel != null && Cluster.current().forwardIfForeign(channel, FORWARD_CHANNEL,
+                    () -> request.getRequestType().name() + "\n" + request.getRequestBodyAsString())) {
+                return Response.ok();
+            }
+        }
+
+        return chain.next(request);
+    }
+
+    private static String channelOf(Request<?> request) {
+        if (request instanceof SlashCommandRequest slashCommandRequest) {
+            return slashCommandRequest.getPayload().getChannelId();
+        } else if (request instanceof EventRequest) {
+            var event = JsonParser.parseString(request.getRequestBodyAsString()).getAsJsonObject().getAsJsonObject("event");
+            var channel = event == null ? null : event.get("channel");
+            // Some events (e.g., channel_created) contain the whole channel object, they do not belong to a chat
+            return channel != null && channel.isJsonPrimitive() ? channel.getAsString() : null;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Runs a request that another instance received as if we had received it ourselves
+     */
+    private void runForwardedRequest(String message) {
+        var separator = message.indexOf('\n');
+        var body = message.substring(separator + 1);
+        var headers = new RequestHeaders(Map.of(FORWARDED_HEADER, List.of("true")));
+        Request<?> request = switch (RequestType.valueOf(message.substring(0, separator))) {
+            case Event -> new EventRequest(body, headers);
+            case Command -> new SlashCommandRequest(body, headers);
+            default -> throw new IllegalArgumentException("Unexpected forwarded request " + message.substring(0, separator));
+        };
+        request.setSocketMode(true);
+
+        try {
+            app.run(request);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public String botId() {
         return botId;
     }
 
-    public PriorityBlockingQueue<Event> eventQueue() {
+    public EventQueue eventQueue() {
         return eventQueue;
     }
 
@@ -97,7 +172,7 @@ public class SlackBotThread implements Runnable {
         return client;
     }
 
-    public Map<String, Session> activeSessions() {
+    public SessionStore activeSessions() {
         return activeSessions;
     }
 }
@@ -1,25 +1,25 @@
 package i5.bml.transpiler.bot.threads.telegram;
 
-import i5.bml.transpiler.bot.events.Event;
+import i5.bml.transpiler.bot.config.BotConfig;
+import i5.bml.transpiler.bot.events.EventQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
-import java.util.concurrent.PriorityBlockingQueue;
 
 public class TelegramBotThread implements Runnable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TelegramBotThread.class);
 
-    private final PriorityBlockingQueue<Event> eventQueue;
+    private final EventQueue eventQueue;
 
     private final String botName;
 
     private final String botToken;
 
-    public TelegramBotThread(PriorityBlockingQueue<Event> eventQueue, String botName, String botToken) {
+    public TelegramBotThread(EventQueue eventQueue, String botName, String botToken) {
         this.eventQueue = eventQueue;
         this.botName = botName;
         this.botToken = botToken;
@@ -28,8 +28,16 @@ public class TelegramBotThread implements Runnable {
     @Override
     public void run() {
         try {
-            TelegramBotsApi telegramBotsApi = new TelegramBotsApi(DefaultBotSession.class);
             var telegramBot = new TelegramComponent(eventQueue, botName, botToken);
+
+            // Telegram allows only one instance to poll for updates, the other instances of a partitioned bot
+            // (-Dbml.telegram.poll=false) receive the updates of their chats from that instance
+            if (!Boolean.parseBoolean(BotConfig.option("telegram.poll", "true"))) {
+                LOGGER.info("Not polling for Telegram updates, handling forwarded updates only");
+                return;
+            }
+
+            TelegramBotsApi telegramBotsApi = new TelegramBotsApi(DefaultBotSession.class);
             telegramBotsApi.registerBot(telegramBot);
             LOGGER.info("Successfully initialized Telegram bot with name {}", botName);
         } catch (TelegramApiException e) {
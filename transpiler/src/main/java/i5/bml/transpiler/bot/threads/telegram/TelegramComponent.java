@@ -1,36 +1,52 @@
 package i5.bml.transpiler.bot.threads.telegram;
 
-import i5.bml.transpiler.bot.events.Event;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import i5.bml.transpiler.bot.cluster.Cluster;
+import i5.bml.transpiler.bot.events.EventQueue;
 import i5.bml.transpiler.bot.events.EventSource;
 import i5.bml.transpiler.bot.events.messenger.MessageEvent;
 import i5.bml.transpiler.bot.events.messenger.MessageEventType;
 import i5.bml.transpiler.bot.threads.Session;
+import i5.bml.transpiler.bot.threads.SessionStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.PriorityBlockingQueue;
 
 public class TelegramComponent extends TelegramLongPollingBot {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TelegramComponent.class);
 
-    private final PriorityBlockingQueue<Event> eventQueue;
+    private static final String FORWARD_CHANNEL = "telegram";
+
+    /**
+     * Updates are forwarded to other instances as JSON, just like the Telegram API sends them
+     */
+    private static final ObjectMapper UPDATE_MAPPER = new ObjectMapper();
+
+    private final EventQueue eventQueue;
 
     private final String botName;
 
     private final String botToken;
 
-    private final Map<Long, Session> activeSessions = new HashMap<>();
+    private final SessionStore activeSessions = SessionStore.shared();
 
-    public TelegramComponent(PriorityBlockingQueue<Event> eventQueue, String botName, String botToken) {
+    public TelegramComponent(EventQueue eventQueue, String botName, String botToken) {
         this.eventQueue = eventQueue;
         this.botName = botName;
         this.botToken = botToken;
+
+        Cluster.current().onForwarded(FORWARD_CHANNEL, json -> {
+            try {
+                handleUpdate(UPDATE_MAPPER.readValue(json, Update.class));
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException(e);
+            }
+        });
     }
 
     @Override
@@ -45,6 +61,16 @@ public class TelegramComponent extends TelegramLongPollingBot {
 
     @Override
     public void onUpdateReceived(Update update) {
+        // In a partitioned bot, updates of chats that another instance owns are handled by that instance
+        var chatId = chatIdOf(update);
+        if (chatId != null && Cluster.current().forwardIfForeign(chatId, FORWARD_CHANNEL, () -> toJson(update))) {
+            return;
+        }
+
+        handleUpdate(update);
+    }
+
+    private void handleUpdate(Update update) {
         try {
             MessageEvent telegramEvent = new MessageEvent(EventSource.TELEGRAM, update.getMessage().getDate());
             if (filterUpdates(telegramEvent, update)) {
@@ -55,6 +81,24 @@ public class TelegramComponent extends TelegramLongPollingBot {
         }
     }
 
+    private static Long chatIdOf(Update update) {
+        if (update.getMyChatMember() != null) {
+            return update.getMyChatMember().getChat().getId();
+        } else if (update.getMessage() != null) {
+            return update.getMessage().getChatId();
+        } else {
+            return null;
+        }
+    }
+
+    private static String toJson(Update update) {
+        try {
+            return UPDATE_MAPPER.writeValueAsString(update);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
     private boolean filterUpdates(MessageEvent telegramEvent, Update update) {
         if (update.getMyChatMember() != null && update.getMyChatMember().getChat().isGroupChat()) {
             long chatId = update.getMyChatMember().getChat().getId();
@@ -127,14 +171,7 @@ public class TelegramComponent extends TelegramLongPollingBot {
                     return false;
                 }
 
-                var activeSession = activeSessions.get(chatId);
-                if (activeSession == null) {
-                    activeSession = new Session(chatId, telegramEvent.messageEventType());
-                    activeSessions.put(chatId, activeSession);
-                    telegramEvent.session(activeSession);
-                } else {
-                    telegramEvent.session(activeSession);
-                }
+                telegramEvent.session(activeSessions.computeIfAbsent(chatId, id -> new Session(id, telegramEvent.messageEventType())));
                 telegramEvent.username(update.getMessage().getFrom().getUserName());
             } else {
                 return false;
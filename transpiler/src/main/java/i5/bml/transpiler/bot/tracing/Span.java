@@ -0,0 +1,124 @@
+package i5.bml.transpiler.bot.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A timed step of a {@link Trace}, e.g., waiting in the event queue, an NLU request, or sending a reply. Spans that
+ * are started with {@link Tracer#startSpan} or {@link Trace#startSpan} are active on the current thread until they
+ * are closed, i.e., they become the parent of spans started in between.
+ */
+public class Span implements AutoCloseable {
+
+    /**
+     * Returned whenever an event is not traced, ignores everything
+     */
+    static final Span NOOP = new Span(null, null, null, "", 0);
+
+    private final Trace trace;
+
+    private final String spanId;
+
+    private final String parentSpanId;
+
+    private final String name;
+
+    private final long startNanos;
+
+    private long endNanos;
+
+    /**
+     * Alternating names and values
+     */
+    private final List<String> attributes = new ArrayList<>();
+
+    private boolean error;
+
+    /**
+     * Active span of the thread before this span was activated, restored on {@link #close()}
+     */
+    private Span previous;
+
+    private boolean active;
+
+    Span(Trace trace, String spanId, String parentSpanId, String name, long startNanos) {
+        this.trace = trace;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.startNanos = startNanos;
+    }
+
+    public Span attribute(String name, Object value) {
+        if (this != NOOP) {
+            attributes.add(name);
+            attributes.add(String.valueOf(value));
+        }
+        return this;
+    }
+
+    public void error() {
+        error = true;
+    }
+
+    public boolean isRecording() {
+        return this != NOOP;
+    }
+
+    void activate(Span previous) {
+        this.previous = previous;
+        this.active = true;
+    }
+
+    void end(long endNanos) {
+        this.endNanos = endNanos;
+    }
+
+    @Override
+    public void close() {
+        if (this == NOOP) {
+            return;
+        }
+
+        end(System.nanoTime());
+        if (active) {
+            Tracer.restore(previous);
+        }
+        trace.add(this);
+    }
+
+    Trace trace() {
+        return trace;
+    }
+
+    String spanId() {
+        return spanId;
+    }
+
+    String parentSpanId() {
+        return parentSpanId;
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * @return start in terms of {@link System#nanoTime()}.
+     */
+    public long startNanos() {
+        return startNanos;
+    }
+
+    long endNanos() {
+        return endNanos;
+    }
+
+    List<String> attributes() {
+        return attributes;
+    }
+
+    boolean hasError() {
+        return error;
+    }
+}
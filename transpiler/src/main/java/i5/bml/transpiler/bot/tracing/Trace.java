@@ -0,0 +1,114 @@
+package i5.bml.transpiler.bot.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All spans of a single event, from its arrival until its handler has finished. The root span covers the whole event,
+ * the trace is exported once {@link #finish()} ends it, if it has been sampled or turned out to be slow.
+ */
+public class Trace {
+
+    /**
+     * Trace of events that are not traced, ignores everything
+     */
+    public static final Trace NONE = new Trace(null, null, "", false);
+
+    private final Tracer tracer;
+
+    private final String traceId;
+
+    private final Span root;
+
+    private final boolean sampled;
+
+    private final List<Span> spans = new ArrayList<>();
+
+    private boolean finished;
+
+    Trace(Tracer tracer, String traceId, String name, boolean sampled) {
+        this.tracer = tracer;
+        this.traceId = traceId;
+        this.root = tracer == null ? Span.NOOP : new Span(this, Tracer.newId(8), null, name, System.nanoTime());
+        this.sampled = sampled;
+    }
+
+    public Span root() {
+        return root;
+    }
+
+    /**
+     * Starts a child of the root span and activates it on the current thread, see {@link Tracer#startSpan}.
+     */
+    public Span startSpan(String name) {
+        if (this == NONE) {
+            return Span.NOOP;
+        }
+
+        var span = new Span(this, Tracer.newId(8), root.spanId(), name, System.nanoTime());
+        Tracer.activate(span);
+        return span;
+    }
+
+    /**
+     * Adds a child of the root span whose start and end are already known, e.g., the time spent in the event queue.
+     *
+     * @param startNanos start in terms of {@link System#nanoTime()}.
+     * @param endNanos   end in terms of {@link System#nanoTime()}.
+     */
+    public void recordSpan(String name, long startNanos, long endNanos) {
+        recordSpan(name, startNanos, endNanos, false);
+    }
+
+    /**
+     * Like {@link #recordSpan(String, long, long)}, e.g., for asynchronous requests that may have failed.
+     */
+    public void recordSpan(String name, long startNanos, long endNanos, boolean error) {
+        if (this == NONE) {
+            return;
+        }
+
+        var span = new Span(this, Tracer.newId(8), root.spanId(), name, startNanos);
+        span.end(endNanos);
+        if (error) {
+            span.error();
+        }
+        add(span);
+    }
+
+    /**
+     * Ends the root span and exports the trace, spans that end afterwards are lost.
+     */
+    public void finish() {
+        if (this == NONE) {
+            return;
+        }
+
+        root.end(System.nanoTime());
+        List<Span> finishedSpans;
+        synchronized (spans) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            spans.add(root);
+            finishedSpans = List.copyOf(spans);
+        }
+
+        if (sampled || root.endNanos() - root.startNanos() >= tracer.slowNanos()) {
+            tracer.export(this, finishedSpans);
+        }
+    }
+
+    void add(Span span) {
+        synchronized (spans) {
+            if (!finished) {
+                spans.add(span);
+            }
+        }
+    }
+
+    String traceId() {
+        return traceId;
+    }
+}
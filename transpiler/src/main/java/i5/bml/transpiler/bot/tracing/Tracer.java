@@ -0,0 +1,238 @@
+package i5.bml.transpiler.bot.tracing;
+
+import i5.bml.transpiler.bot.config.BotConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Traces events through the bot: time in the event queue, waiting for earlier events of the same chat, the handler,
+ * NLU and API requests, and replies. Finished traces are appended to a file, one trace per line in the OTLP/JSON
+ * format of OpenTelemetry (i.e., what the OpenTelemetry file exporter writes), such that common tools can read them.
+ * <p>
+ * Off by default. Configured on start-up with <code>tracing.sampleRate</code> (fraction of events to trace, e.g.,
+ * <code>0.01</code>), <code>tracing.slowMillis</code> (events that take at least that long are exported regardless of
+ * sampling, i.e., the tail latency is always visible), and <code>tracing.file</code> (default
+ * <code>{@value DEFAULT_FILE}</code>), see {@link BotConfig#option(String, String)}.
+ */
+public class Tracer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Tracer.class);
+
+    private static final String DEFAULT_FILE = "traces.jsonl";
+
+    private static final int MAX_PENDING_TRACES = 10_000;
+
+    private static final ThreadLocal<Span> ACTIVE_SPAN = new ThreadLocal<>();
+
+    private static final Tracer CURRENT = configured();
+
+    private final double sampleRate;
+
+    private final long slowNanos;
+
+    /**
+     * Converts {@link System#nanoTime()} into nanoseconds since the epoch
+     */
+    private final long epochOffsetNanos = System.currentTimeMillis() * 1_000_000 - System.nanoTime();
+
+    /**
+     * Lines that the writer thread has yet to append, exporting must never block an event handler
+     */
+    private final BlockingQueue<String> pendingTraces = new LinkedBlockingQueue<>(MAX_PENDING_TRACES);
+
+    private final LongAdder droppedTraces = new LongAdder();
+
+    /**
+     * @param sampleRate fraction of traces that are exported, in <code>[0, 1]</code>.
+     * @param slowMillis traces that take at least that long are exported regardless of sampling, 0 turns this off.
+     */
+    public Tracer(double sampleRate, long slowMillis) {
+        this.sampleRate = sampleRate;
+        this.slowNanos = slowMillis > 0 ? slowMillis * 1_000_000 : Long.MAX_VALUE;
+    }
+
+    public static Tracer current() {
+        return CURRENT;
+    }
+
+    private static Tracer configured() {
+        var sampleRate = 0d;
+        var slowMillis = 0L;
+        try {
+            sampleRate = Math.min(1, Math.max(0, Double.parseDouble(BotConfig.option("tracing.sampleRate", "0").trim())));
+            slowMillis = Math.max(0, Long.parseLong(BotConfig.option("tracing.slowMillis", "0").trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid tracing option: {}", e.getMessage());
+        }
+
+        var tracer = new Tracer(sampleRate, slowMillis);
+        if (tracer.isEnabled()) {
+            var file = Path.of(BotConfig.option("tracing.file", DEFAULT_FILE));
+            var writer = new Thread(() -> tracer.write(file), "tracing");
+            writer.setDaemon(true);
+            writer.start();
+            LOGGER.info("Tracing {}% of events{} to {}", sampleRate * 100,
+                    slowMillis > 0 ? " and events slower than %d ms".formatted(slowMillis) : "", file);
+        }
+
+        return tracer;
+    }
+
+    public boolean isEnabled() {
+        return sampleRate > 0 || slowNanos != Long.MAX_VALUE;
+    }
+
+    /**
+     * Starts a trace whose root span starts now, i.e., on arrival of an event.
+     *
+     * @return {@link Trace#NONE} if tracing is off.
+     */
+    public Trace startTrace(String name) {
+        if (!isEnabled()) {
+            return Trace.NONE;
+        }
+
+        var sampled = sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+        return new Trace(this, newId(16), name, sampled);
+    }
+
+    /**
+     * Starts a child of the span that is active on the current thread and activates it until it is closed. Code that
+     * runs on behalf of an event (e.g., NLU requests) uses this without having to know the event.
+     *
+     * @return a span that ignores everything if no traced event is handled on the current thread.
+     */
+    public static Span startSpan(String name) {
+        var parent = ACTIVE_SPAN.get();
+        if (parent == null) {
+            return Span.NOOP;
+        }
+
+        var span = new Span(parent.trace(), newId(8), parent.spanId(), name, System.nanoTime());
+        activate(span);
+        return span;
+    }
+
+    static void activate(Span span) {
+        span.activate(ACTIVE_SPAN.get());
+        ACTIVE_SPAN.set(span);
+    }
+
+    static void restore(Span previous) {
+        if (previous == null) {
+            ACTIVE_SPAN.remove();
+        } else {
+            ACTIVE_SPAN.set(previous);
+        }
+    }
+
+    long slowNanos() {
+        return slowNanos;
+    }
+
+    public long droppedTraces() {
+        return droppedTraces.sum();
+    }
+
+    static String newId(int bytes) {
+        var id = new byte[bytes];
+        ThreadLocalRandom.current().nextBytes(id);
+        return HexFormat.of().formatHex(id);
+    }
+
+    void export(Trace trace, List<Span> spans) {
+        if (!pendingTraces.offer(toJson(trace, spans))) {
+            droppedTraces.increment();
+        }
+    }
+
+    /**
+     * @return a single OTLP/JSON <code>TracesData</code> object, without line breaks.
+     */
+    String toJson(Trace trace, List<Span> spans) {
+        var spanObjects = new ArrayList<String>(spans.size());
+        for (var span : spans) {
+            var json = new StringBuilder("{\"traceId\":\"").append(trace.traceId())
+                    .append("\",\"spanId\":\"").append(span.spanId()).append('"');
+            if (span.parentSpanId() != null) {
+                json.append(",\"parentSpanId\":\"").append(span.parentSpanId()).append('"');
+            }
+            json.append(",\"name\":").append(quote(span.name()))
+                    .append(",\"kind\":1")
+                    .append(",\"startTimeUnixNano\":\"").append(span.startNanos() + epochOffsetNanos)
+                    .append("\",\"endTimeUnixNano\":\"").append(span.endNanos() + epochOffsetNanos).append('"');
+
+            var attributes = span.attributes();
+            json.append(",\"attributes\":[");
+            for (int i = 0; i < attributes.size(); i += 2) {
+                json.append(i == 0 ? "" : ",").append("{\"key\":").append(quote(attributes.get(i)))
+                        .append(",\"value\":{\"stringValue\":").append(quote(attributes.get(i + 1))).append("}}");
+            }
+            json.append(']');
+
+            // Status codes: 1 = ok, 2 = error
+            json.append(",\"status\":{\"code\":").append(span.hasError() ? 2 : 1).append("}}");
+            spanObjects.add(json.toString());
+        }
+
+        return "{\"resourceSpans\":[{\"resource\":{\"attributes\":[{\"key\":\"service.name\",\"value\":{\"stringValue\":\"bml-bot\"}}]},"
+                + "\"scopeSpans\":[{\"scope\":{\"name\":\"bml\"},\"spans\":[" + String.join(",", spanObjects) + "]}]}]}";
+    }
+
+    private static String quote(String value) {
+        var quoted = new StringBuilder("\"");
+        for (var c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append("\\u%04x".formatted((int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Appends pending traces to the file, flushes whenever there are no more pending traces
+     */
+    private void write(Path file) {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND)) {
+            //noinspection InfiniteLoopStatement -> The writer lives as long as the bot
+            while (true) {
+                out.write(pendingTraces.take());
+                out.newLine();
+                if (pendingTraces.isEmpty()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to write traces to {}: {}", file, e.getMessage());
+            LOGGER.debug("Stacktrace:", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
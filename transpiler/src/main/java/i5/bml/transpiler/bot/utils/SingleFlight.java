@@ -0,0 +1,61 @@
+package i5.bml.transpiler.bot.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical calls: while a call for a key is in flight, further calls for the same key do not
+ * start another one but share its result (or failure). Once the call has completed, the next call for the key starts
+ * a new one, i.e., results are not cached.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param call started if there is no call for the key in flight, it should complete its future only once its
+     *             result is visible to callers that do not go through this (e.g., once it has been cached).
+     * @return the result of the call in flight for the key.
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        var flight = new CompletableFuture<V>();
+        var existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+
+        CompletableFuture<V> result;
+        try {
+            result = call.get();
+        } catch (Exception e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+
+        result.whenComplete((r, e) -> {
+            // Removed before completion, callers that see the result must not join this flight anymore
+            inFlight.remove(key, flight);
+            if (e != null) {
+                flight.completeExceptionally(e);
+            } else {
+                flight.complete(r);
+            }
+        });
+        return flight;
+    }
+
+    /**
+     * @return number of calls that shared the result of a call in flight instead of starting one.
+     */
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+}
@@ -86,6 +86,17 @@ public class GeneratorRegistry {
         registerFunctionGenerator(DialogueJumpToFunctionGenerator.class);
     }
 
+    /**
+     * Re-creates the generators for all types currently known to the {@link TypeRegistry}. Some types (e.g., OpenAPI
+     * components) are only registered during semantic analysis, so a compiler that outlives a single compilation
+     * (e.g., in daemon mode) has to refresh the generators before it generates code for a new program.
+     */
+    public static void refresh() {
+        registeredGenerators.clear();
+        registeredFunctionGenerators.clear();
+        init();
+    }
+
     private static void registerTypeGenerator(Class<?> generatorClass) {
         var annotation = generatorClass.getAnnotation(CodeGenerator.class);
         TypeRegistry.getRegisteredTypes().entrySet().stream()
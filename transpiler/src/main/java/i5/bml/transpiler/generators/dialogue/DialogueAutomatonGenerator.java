@@ -79,19 +79,6 @@ public class DialogueAutomatonGenerator {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DialogueAutomatonGenerator.class);
 
-    /**
-     * This variable comes into play when there are several dialogues defined, e.g.:
-     * <pre>
-     *     Dialogue a() { ... }
-     *     Dialogue b() { ... }
-     * </pre>
-     * In this case we do not want to copy the <b>whole</b> dialogue package from the bot template again.
-     * Instead, we can just copy the templates {@link DialogueAutomatonTemplate}.
-     * <p>
-     * This variable tracks exactly that.
-     */
-    private static boolean copiedDialoguePackage = false;
-
     /**
      * The field is used to name anonymous states in the generated automaton code.
      * We need it to be a field since it is present in two methods of this class.
@@ -144,9 +131,9 @@ public class DialogueAutomatonGenerator {
      */
     public void init(BMLParser.DialogueHeadContext ctx) {
         // Copy required implementation for dialogues
-        if (!copiedDialoguePackage) {
+        if (!javaTreeGenerator.copiedDialoguePackage()) {
             IOUtil.copyDirAndRenameImports("dialogue", javaTreeGenerator);
-            copiedDialoguePackage = true;
+            javaTreeGenerator.copiedDialoguePackage(true);
         } else {
             // TODO: Only copy DialogueAutomatonTemplate, not whole package
         }
@@ -10,7 +10,6 @@ import com.github.javaparser.ast.stmt.Statement;
 import com.github.javaparser.ast.stmt.SwitchEntry;
 import generatedParser.BMLParser;
 import i5.bml.parser.types.dialogue.BMLDialogue;
-import i5.bml.transpiler.bot.components.ComponentRegistry;
 import i5.bml.transpiler.bot.dialogue.DialogueAutomaton;
 import i5.bml.transpiler.bot.dialogue.DialogueFactory;
 import i5.bml.transpiler.bot.threads.Session;
@@ -38,6 +37,8 @@ public class DialogueGenerator extends Generator {
      * <li> A `dialogues` field to store different dialogues for a session (e.g., different events use different dialogues)
      * <li> We instantiate `dialogues` by calling the {@link DialogueFactory} that returns us a dialogue instance
      *      depending on the message event type
+     * <li> `dialogueStates` and `restoreDialogueStates` expose the current states of the dialogues, so that they
+     *      survive restarts of the bot
      * <li> Lastly, we add a `toString` method for debug purposes
      * </ul><p>
      *
@@ -53,6 +54,16 @@ public class DialogueGenerator extends Generator {
             var assignExpr = StaticJavaParser.parseExpression("dialogues = DialogueFactory.createDialogue(messageEventType)");
             clazz.getConstructors().get(0).getBody().addStatement(assignExpr);
 
+            clazz.getMethodsByName("dialogueStates").get(0)
+                    .setBody(StaticJavaParser.parseBlock("{ return dialogues.stream().mapToInt(DialogueAutomaton::currentStateIndex).toArray(); }"));
+            clazz.getMethodsByName("restoreDialogueStates").get(0)
+                    .setBody(StaticJavaParser.parseBlock("""
+                            {
+                                for (int i = 0; i < Math.min(dialogues.size(), dialogueStates.length); i++) {
+                                    dialogues.get(i).restoreState(dialogueStates[i]);
+                                }
+                            }"""));
+
             // Add imports for `DialogueAutomaton`, `DialogueFactory`, and `List`
             //noinspection OptionalGetWithoutIsPresent -> We can assume pressence
             var compilationUnit = clazz.findCompilationUnit().get();
@@ -105,13 +116,9 @@ public class DialogueGenerator extends Generator {
             }
         });
 
-        // Add import for `ComponentRegistry`
-        //noinspection OptionalGetWithoutIsPresent -> We can assume pressence
-        var compilationUnit = visitor.currentClass().findCompilationUnit().get();
-        compilationUnit.addImport(Utils.renameImport(ComponentRegistry.class, visitor.outputPackage()), false, false);
-
-        var invokeModel = "ComponentRegistry.rasa().invokeModel(ctx.event())";
+        // Dialogues step on the intent of the event
+        visitor.handlerNeedsNlu(true);
         var step = "ctx.event().session().dialogues().forEach(d -> d.step(ctx))";
-        return new BlockStmt().addStatement(StaticJavaParser.parseExpression(invokeModel)).addStatement(StaticJavaParser.parseExpression(step));
+        return new BlockStmt().addStatement(StaticJavaParser.parseExpression(step));
     }
 }
@@ -1,6 +1,7 @@
 package i5.bml.transpiler.generators.functions;
 
 import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.expr.Expression;
 import com.github.javaparser.ast.expr.MethodCallExpr;
 import com.github.javaparser.ast.expr.NameExpr;
@@ -10,7 +11,9 @@ import i5.bml.parser.types.functions.BMLFunctionType;
 import i5.bml.transpiler.bot.events.messenger.MessageHelper;
 import i5.bml.transpiler.generators.CodeGenerator;
 import i5.bml.transpiler.generators.Generator;
+import i5.bml.transpiler.generators.GeneratorRegistry;
 import i5.bml.transpiler.generators.java.JavaTreeGenerator;
+import i5.bml.transpiler.generators.types.components.StreamsText;
 import i5.bml.transpiler.utils.Utils;
 
 @CodeGenerator(typeClass = BMLSendFunction.class)
@@ -22,24 +25,36 @@ public class SendFunctionGenerator extends Generator {
         var receiver = functionType.getOptionalParameters().stream()
                 .filter(p -> p.getName().equals("receiver"))
                 .findAny();
-        var methodCallExpr = new MethodCallExpr(new NameExpr("MessageHelper"), "replyToMessenger");
+        Expression receiverExpr;
         if (receiver.isPresent() && receiver.get().exprCtx() != null) {
-            methodCallExpr.addArgument((Expression) visitor.visit(receiver.get().exprCtx()));
+            receiverExpr = (Expression) visitor.visit(receiver.get().exprCtx());
         } else {
-            methodCallExpr.addArgument(new NameExpr("ctx"));
+            receiverExpr = new NameExpr("ctx");
         }
 
         var text = functionType.getRequiredParameters().stream()
                 .filter(p -> p.getName().equals("text"))
                 .findAny();
         //noinspection OptionalGetWithoutIsPresent -> We can assume that it is present
-        methodCallExpr.addArgument((Expression) visitor.visit(text.get().exprCtx()));
+        var textCtx = text.get().exprCtx();
+
+        Node sendExpr;
+        if (textCtx.expr != null && textCtx.functionCall() != null
+                && GeneratorRegistry.generatorForType(textCtx.expr.type) instanceof StreamsText streamingGenerator) {
+            // Deliver the text while it is generated, e.g., `send(text=openAI.process(context=ctx))`
+            var stream = new MethodCallExpr(new NameExpr("MessageHelper"), "streamToMessenger", new NodeList<>(receiverExpr));
+            sendExpr = streamingGenerator.generateStreamingFunctionCall((Expression) visitor.visit(textCtx.expr),
+                    textCtx.functionCall(), stream, visitor);
+        } else {
+            sendExpr = new MethodCallExpr(new NameExpr("MessageHelper"), "replyToMessenger",
+                    new NodeList<>(receiverExpr, (Expression) visitor.visit(textCtx)));
+        }
 
         // Add import for `MessageHelper`
         //noinspection OptionalGetWithoutIsPresent -> We can assume that it is present
         var compilationUnit = visitor.currentClass().findCompilationUnit().get();
         compilationUnit.addImport(Utils.renameImport(MessageHelper.class, visitor.outputPackage()), false, false);
 
-        return methodCallExpr;
+        return sendExpr;
     }
 }
@@ -29,8 +29,11 @@ import org.antlr.symtab.VariableSymbol;
 import org.stringtemplate.v4.ST;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -52,6 +55,32 @@ public class JavaTreeGenerator extends BMLBaseVisitor<Node> {
 
     private boolean wrapAssignmentInTryStmt = false;
 
+    /**
+     * Set by generators whose code relies on intent or entity of the handled message event (e.g., dialogues), such
+     * that the event is understood before its handler is dispatched.
+     */
+    private boolean handlerNeedsNlu = false;
+
+    /**
+     * This variable comes into play when there are several dialogues defined, e.g.:
+     * <pre>
+     *     Dialogue a() { ... }
+     *     Dialogue b() { ... }
+     * </pre>
+     * In this case we do not want to copy the <b>whole</b> dialogue package from the bot template again.
+     * Instead, we can just copy the templates {@link DialogueAutomatonTemplate}.
+     * <p>
+     * This variable tracks exactly that. It lives here and not in {@link DialogueAutomatonGenerator}, since it has to be
+     * reset for every compilation when the compiler is kept alive (e.g., in daemon mode).
+     */
+    private boolean copiedDialoguePackage = false;
+
+    /**
+     * Work that generators moved off the visitor (e.g., OpenAPI client code generation), has to be done before the
+     * generated project is compiled.
+     */
+    private final List<CompletableFuture<Void>> backgroundTasks = new ArrayList<>();
+
     public JavaTreeGenerator(String botOutputPath, String outputPackage, ST gradleFile) {
         this.botOutputPath = botOutputPath;
         this.outputPackage = outputPackage;
@@ -90,6 +119,30 @@ public class JavaTreeGenerator extends BMLBaseVisitor<Node> {
         this.wrapAssignmentInTryStmt = wrapAssignmentInTryStmt;
     }
 
+    public boolean handlerNeedsNlu() {
+        return handlerNeedsNlu;
+    }
+
+    public void handlerNeedsNlu(boolean handlerNeedsNlu) {
+        this.handlerNeedsNlu = handlerNeedsNlu;
+    }
+
+    public boolean copiedDialoguePackage() {
+        return copiedDialoguePackage;
+    }
+
+    public void copiedDialoguePackage(boolean copiedDialoguePackage) {
+        this.copiedDialoguePackage = copiedDialoguePackage;
+    }
+
+    public void addBackgroundTask(CompletableFuture<Void> backgroundTask) {
+        backgroundTasks.add(backgroundTask);
+    }
+
+    public void awaitBackgroundTasks() {
+        CompletableFuture.allOf(backgroundTasks.toArray(CompletableFuture[]::new)).join();
+    }
+
     @Override
     public Node visitBotDeclaration(BMLParser.BotDeclarationContext ctx) {
         pushScope(ctx.scope);
@@ -106,8 +159,11 @@ public class JavaTreeGenerator extends BMLBaseVisitor<Node> {
                 for (var pair : ctx.params.elementExpressionPair()) {
                     var type = BMLTypeResolver.resolveBMLTypeToJavaType(pair.expr.type);
                     var name = pair.name.getText().toUpperCase();
-                    clazz.addFieldWithInitializer(type, name, (Expression) visit(pair.expr),
-                            Modifier.Keyword.PUBLIC, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
+                    var value = (Expression) visit(pair.expr);
+                    // Some settings have a default in the template (e.g., THREADS)
+                    clazz.getFieldByName(name).ifPresentOrElse(f -> f.getVariable(0).setInitializer(value),
+                            () -> clazz.addFieldWithInitializer(type, name, value,
+                                    Modifier.Keyword.PUBLIC, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL));
                 }
             }
         });
@@ -1,9 +1,9 @@
 package i5.bml.transpiler.generators.java;
 
 import i5.bml.parser.utils.Measurements;
+import i5.bml.transpiler.generators.GeneratorRegistry;
 import i5.bml.transpiler.utils.IOUtil;
 import org.antlr.v4.runtime.tree.ParseTree;
-import org.apache.commons.io.FileUtils;
 import org.gradle.tooling.GradleConnectionException;
 import org.gradle.tooling.GradleConnector;
 import org.gradle.tooling.ProjectConnection;
@@ -14,9 +14,11 @@ import org.stringtemplate.v4.ST;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.Set;
 import java.util.function.Predicate;
 
 public class ProjectGenerator {
@@ -29,38 +31,95 @@ public class ProjectGenerator {
 
     private final boolean cachingEnabled;
 
+    /**
+     * When set, we generate into a staging directory and only re-emit files that changed compared to the previous
+     * compilation. Unchanged files keep their timestamps, hence, Gradle only recompiles what actually changed.
+     * We also keep the Gradle project around after building a JAR. Used when recompiling on changes (watch mode).
+     */
+    private final boolean incremental;
+
     public ProjectGenerator(String outputDir, String outputPackage, String outputFormat, boolean cachingEnabled) {
+        this(outputDir, outputPackage, outputFormat, cachingEnabled, false);
+    }
+
+    public ProjectGenerator(String outputDir, String outputPackage, String outputFormat, boolean cachingEnabled,
+                            boolean incremental) {
         this.outputDir = outputDir;
         this.outputPackage = outputPackage;
         this.outputFormat = outputFormat;
         this.cachingEnabled = cachingEnabled;
+        this.incremental = incremental;
     }
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ProjectGenerator.class);
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     public void invokeCodeGeneration(ParseTree tree, long start) throws IOException {
         // Prepare output directory
         outputPackage = outputPackage.replace("\\.", "/");
 
-        IOUtil.deleteDirectory(new File(outputDir + "/src"));
-        if (!cachingEnabled) {
-            IOUtil.deleteDirectory(new File(outputDir + "/.gradle"));
-            IOUtil.deleteDirectory(new File(outputDir + "/gradle"));
+        if (incremental) {
+            // Watch mode is long-running, a failed compilation must not leave its staging directory behind
+            var generationDir = Files.createTempDirectory("bml-staging").toFile().getAbsolutePath();
+            try {
+                generateProject(tree, generationDir);
+                Measurements.measure("Re-emitting changed files", () -> emitChangedFiles(generationDir));
+            } catch (UncheckedIOException e) {
+                // The output directory is not up-to-date, i.e., the compilation failed
+                throw new IOException(e.getMessage(), e.getCause());
+            } finally {
+                IOUtil.deleteDirectory(new File(generationDir));
+            }
+        } else {
+            IOUtil.deleteDirectory(new File(outputDir + "/src"));
+            if (!cachingEnabled) {
+                IOUtil.deleteDirectory(new File(outputDir + "/.gradle"));
+                IOUtil.deleteDirectory(new File(outputDir + "/gradle"));
+            }
+            generateProject(tree, outputDir);
+        }
+
+        var end = System.nanoTime();
+
+        var bmlCodeCompilationTime = end - start;
+        LOGGER.info("Compiling BML code took {}", Measurements.calculateUnit(bmlCodeCompilationTime));
+
+        start = System.nanoTime();
+        if (outputFormat.equals("jar")) {
+            Measurements.measure("Compiling & packaging generated Java code to JAR", this::outputJar);
+        }
+
+        // We keep the project for the next (incremental) compilation
+        if (outputFormat.equals("jar") && !incremental) {
+            IOUtil.deleteDirectory(new File(outputDir + "/src"));
+            IOUtil.deleteDirectory(new File(outputDir + "/build"));
+            IOUtil.deleteDirectory(new File(outputDir + "/build.gradle"));
+
+            if (!cachingEnabled) {
+                IOUtil.deleteDirectory(new File(outputDir + "/.gradle"));
+                IOUtil.deleteDirectory(new File(outputDir + "/gradle"));
+            }
         }
 
+        end = System.nanoTime();
+        LOGGER.info("Total time taken {}", Measurements.calculateUnit(bmlCodeCompilationTime + (end - start)));
+    }
+
+    /**
+     * Generates the project (bot code, build file, etc.) into the given directory.
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void generateProject(ParseTree tree, String generationDir) throws IOException {
         // Create "project" folders (use mkdirs() to implicitly create parents)
-        new File(outputDir + "/src/main/java/").mkdirs();
-        new File(outputDir + "/src/main/resources/").mkdirs();
-        new File(outputDir + "/src/test/java/").mkdirs();
-        new File(outputDir + "/src/test/resources/").mkdirs();
+        new File(generationDir + "/src/main/java/").mkdirs();
+        new File(generationDir + "/src/main/resources/").mkdirs();
+        new File(generationDir + "/src/test/java/").mkdirs();
+        new File(generationDir + "/src/test/resources/").mkdirs();
 
         // Copy files (bot code template) that will be copied regardless of what components are present, hence dirFilter
-        var destDir = new File(outputDir + "/src/main/java/" + outputPackage);
+        var destDir = new File(generationDir + "/src/main/java/" + outputPackage);
         var componentNames = new String[]{"dialogue", "threads/openai", "threads/rasa", "threads/slack", "threads/telegram"};
         Predicate<String> dirFilter = srcFile -> Arrays.stream(componentNames).anyMatch(srcFile::startsWith);
         Measurements.measure("Copying bot template files", () -> IOUtil.copyFiles("bot", destDir, outputPackage, dirFilter));
-        FileUtils.copyInputStreamToFile(IOUtil.getResourceAsStream("swagger-codegen-cli-3.0.36.jar"), new File(outputDir + "/swagger-codegen-cli-3.0.36.jar"));
 
         // Replace templates in build.gradle template
         var gradleTemplate = IOUtil.getResourceAsString("build_template");
@@ -74,51 +133,65 @@ public class ProjectGenerator {
         gradleFile.add("hasOpenAPIComponent", false);
         gradleFile.add("hasRasaComponent", false);
         gradleFile.add("hasOpenAIComponent", false);
+        // Set libraries, see removeUnreachableTemplateClasses
+        TemplateTreeShaker.allLibraries().forEach(flag -> gradleFile.add(flag, false));
+
+        // Types of the current program (e.g., OpenAPI components) have been registered during semantic analysis
+        GeneratorRegistry.refresh();
 
         // Emit code into output directory
-        Measurements.measure("Code generation", () -> new JavaTreeGenerator(outputDir + "/src/main/java/", outputPackage, gradleFile).visit(tree));
+        var javaTreeGenerator = new JavaTreeGenerator(generationDir + "/src/main/java/", outputPackage, gradleFile);
+        Measurements.measure("Code generation", () -> javaTreeGenerator.visit(tree));
+
+        // OpenAPI clients are generated in the background while we generate the rest of the bot
+        Measurements.measure("Waiting for background code generation", javaTreeGenerator::awaitBackgroundTasks);
+
+        // Only ship the parts of the template that the bot reaches, and only the libraries those parts use
+        var usedLibraries = Measurements.measure("Removing unreachable template classes", () -> removeUnreachableTemplateClasses(destDir));
+        usedLibraries.forEach(flag -> gradleFile.add(flag, true));
 
         // Write back gradle file after templating, we do this AFTER the JavaTreeGenerator
         // since it might switch some settings, before rendering
-        Files.write(new File(outputDir + "/build.gradle").toPath(), gradleFile.render().getBytes());
+        Files.write(new File(generationDir + "/build.gradle").toPath(), gradleFile.render().getBytes());
 
         // Copy gitignore
         if (!outputFormat.equals("jar")) {
             var gitignoreStream = IOUtil.getResourceAsStream("gitignore_template");
-            Files.copy(gitignoreStream, new File(outputDir + "/.gitignore").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.copy(gitignoreStream, new File(generationDir + "/.gitignore").toPath(), StandardCopyOption.REPLACE_EXISTING);
             gitignoreStream.close();
         }
 
         // Copy SLF4J SimpleLogger config
         var simpleLoggerStream = IOUtil.getResourceAsStream("simplelogger.properties");
-        Files.copy(simpleLoggerStream, new File(outputDir + "/src/main/resources/simplelogger.properties").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(simpleLoggerStream, new File(generationDir + "/src/main/resources/simplelogger.properties").toPath(), StandardCopyOption.REPLACE_EXISTING);
         simpleLoggerStream.close();
+    }
 
-        var end = System.nanoTime();
-
-        var bmlCodeCompilationTime = end - start;
-        LOGGER.info("Compiling BML code took {}", Measurements.calculateUnit(bmlCodeCompilationTime));
-
-        start = System.nanoTime();
-        if (outputFormat.equals("jar")) {
-            Measurements.measure("Compiling & packaging generated Java code to JAR", this::outputJar);
-
-            IOUtil.deleteDirectory(new File(outputDir + "/src"));
-            IOUtil.deleteDirectory(new File(outputDir + "/build"));
-            IOUtil.deleteDirectory(new File(outputDir + "/build.gradle"));
+    private Set<String> removeUnreachableTemplateClasses(File botDir) {
+        try {
+            return TemplateTreeShaker.shake(botDir, "BotMain");
+        } catch (IOException e) {
+            // The bot is still complete at this point, we just have to declare every library the template might use
+            LOGGER.error("Failed to remove unreachable template classes from {}: {}", botDir, e.getMessage());
+            LOGGER.debug("Stacktrace:", e);
+            return TemplateTreeShaker.allLibraries();
+        }
+    }
 
-            if (!cachingEnabled) {
-                IOUtil.deleteDirectory(new File(outputDir + "/.gradle"));
-                IOUtil.deleteDirectory(new File(outputDir + "/gradle"));
+    private void emitChangedFiles(String generationDir) {
+        try {
+            var changedFiles = IOUtil.syncDirectory(new File(generationDir + "/src"), new File(outputDir + "/src"));
+            for (var fileName : new String[]{"build.gradle", ".gitignore"}) {
+                var generatedFile = new File(generationDir, fileName);
+                if (generatedFile.exists() && IOUtil.copyIfChanged(generatedFile, new File(outputDir, fileName))) {
+                    ++changedFiles;
+                }
             }
 
-            IOUtil.deleteDirectory(new File(outputDir + "/.swagger-codegen"));
-            FileUtils.forceDelete(new File(outputDir + "/swagger-codegen-cli-3.0.36.jar"));
-            IOUtil.forceDeleteIfFileExists(outputDir + "/.swagger-codegen-ignore");
+            LOGGER.info("Re-emitted {} changed file(s)", changedFiles);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to re-emit generated files to %s".formatted(outputDir), e);
         }
-
-        end = System.nanoTime();
-        LOGGER.info("Total time taken {}", Measurements.calculateUnit(bmlCodeCompilationTime + (end - start)));
     }
 
     private void outputJar() {
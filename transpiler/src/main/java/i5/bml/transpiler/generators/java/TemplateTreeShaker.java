@@ -0,0 +1,130 @@
+package i5.bml.transpiler.generators.java;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.expr.Name;
+import com.github.javaparser.ast.expr.SimpleName;
+import i5.bml.transpiler.utils.IOUtil;
+import i5.bml.transpiler.utils.PrinterUtil;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Removes bot template classes that the generated bot never reaches, starting from its main class. Large parts of the
+ * template (e.g., event types, helpers, and users of messengers the program does not use) are only needed by certain
+ * programs, shipping them anyway means larger JARs and more classes to load on start-up.
+ * <p>
+ * A class is considered reachable if its name is mentioned (e.g., as type, in an expression, or as import) by a
+ * reachable class. We only look at names, hence, the analysis over-approximates (e.g., two classes of the same
+ * name are kept if either is mentioned), but never removes a class the bot needs.
+ */
+class TemplateTreeShaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TemplateTreeShaker.class);
+
+    /**
+     * Libraries the bot template uses directly, by package, and the <code>build_template</code> flag that declares them
+     */
+    private static final Map<String, String> LIBRARY_FLAGS = Map.of(
+            "com.google.gson", "usesGson",
+            "io.gsonfire", "usesGsonFire",
+            "org.apache.commons.io", "usesCommonsIO",
+            "org.apache.commons.lang3", "usesCommonsLang"
+    );
+
+    /**
+     * Generated OpenAPI clients are self-contained and are not part of the template, we leave them untouched
+     */
+    private static final String OPENAPI_DIR = "openapi";
+
+    private TemplateTreeShaker() {}
+
+    /**
+     * @param botDir    source directory of the bot (i.e., the directory of its output package).
+     * @param mainClass name of the class containing the entry point of the bot.
+     * @return <code>build_template</code> flags of the libraries that the remaining classes import.
+     */
+    static Set<String> shake(File botDir, String mainClass) throws IOException {
+        var sourceFiles = new HashMap<File, CompilationUnit>();
+        var filesByClassName = new HashMap<String, List<File>>();
+        for (var file : FileUtils.listFiles(botDir, new String[]{"java"}, true)) {
+            sourceFiles.put(file, PrinterUtil.parse(file));
+            var className = file.getName().substring(0, file.getName().length() - ".java".length());
+            filesByClassName.computeIfAbsent(className, k -> new ArrayList<>()).add(file);
+        }
+
+        if (!filesByClassName.containsKey(mainClass)) {
+            throw new IOException("Main class %s does not exist in %s".formatted(mainClass, botDir));
+        }
+
+        // Breadth-first search over mentioned class names
+        var reachable = new HashSet<File>();
+        var queue = new ArrayDeque<>(filesByClassName.get(mainClass));
+        reachable.addAll(queue);
+        while (!queue.isEmpty()) {
+            for (var name : mentionedNames(sourceFiles.get(queue.poll()))) {
+                for (var file : filesByClassName.getOrDefault(name, List.of())) {
+                    if (reachable.add(file)) {
+                        queue.add(file);
+                    }
+                }
+            }
+        }
+
+        var openAPIDir = new File(botDir, OPENAPI_DIR).toPath();
+        var removedFiles = 0;
+        for (var file : sourceFiles.keySet()) {
+            if (!reachable.contains(file) && !file.toPath().startsWith(openAPIDir)) {
+                FileUtils.forceDelete(file);
+                ++removedFiles;
+            }
+        }
+        deleteEmptyDirectories(botDir);
+        LOGGER.info("Removed {} unreachable template class(es)", removedFiles);
+
+        var usedLibraries = new HashSet<String>();
+        for (var entry : sourceFiles.entrySet()) {
+            if (!entry.getKey().exists()) {
+                continue;
+            }
+
+            for (var importDeclaration : entry.getValue().getImports()) {
+                var importName = importDeclaration.getNameAsString();
+                LIBRARY_FLAGS.forEach((packageName, flag) -> {
+                    if (importName.startsWith(packageName + ".")) {
+                        usedLibraries.add(flag);
+                    }
+                });
+            }
+        }
+
+        return usedLibraries;
+    }
+
+    /**
+     * @return <code>build_template</code> flags of all libraries the bot template might use.
+     */
+    static Set<String> allLibraries() {
+        return new HashSet<>(LIBRARY_FLAGS.values());
+    }
+
+    private static Set<String> mentionedNames(CompilationUnit compilationUnit) {
+        var names = new HashSet<String>();
+        compilationUnit.findAll(SimpleName.class).forEach(n -> names.add(n.getIdentifier()));
+        compilationUnit.findAll(Name.class).forEach(n -> names.add(n.getIdentifier()));
+        return names;
+    }
+
+    private static void deleteEmptyDirectories(File dir) {
+        for (var child : Objects.requireNonNullElse(dir.listFiles(File::isDirectory), new File[0])) {
+            deleteEmptyDirectories(child);
+            if (Objects.requireNonNullElse(child.list(), new String[0]).length == 0) {
+                IOUtil.deleteDirectory(child);
+            }
+        }
+    }
+}
@@ -3,10 +3,12 @@ package i5.bml.transpiler.generators.types.annotations;
 import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.Modifier;
 import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import com.github.javaparser.ast.expr.*;
-import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.*;
 import generatedParser.BMLParser;
 import i5.bml.parser.types.annotations.BMLMessengerAnnotation;
+import i5.bml.transpiler.bot.components.ComponentRegistry;
 import i5.bml.transpiler.bot.events.MessageEventHandlerMethod;
 import i5.bml.transpiler.bot.events.messenger.MessageEventContext;
 import i5.bml.transpiler.bot.events.messenger.MessageEventHandler;
@@ -17,10 +19,14 @@ import i5.bml.transpiler.generators.java.JavaTreeGenerator;
 import i5.bml.transpiler.utils.PrinterUtil;
 import i5.bml.transpiler.utils.Utils;
 import org.antlr.symtab.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @CodeGenerator(typeClass = BMLMessengerAnnotation.class)
 public class MessageAnnotationGenerator extends Generator {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageAnnotationGenerator.class);
+
     public MessageAnnotationGenerator(Type bmlMessengerAnnotation) {}
 
     @Override
@@ -30,6 +36,13 @@ public class MessageAnnotationGenerator extends Generator {
             var functionName = functionContext.head.functionName.getText();
             var methods = clazz.getMethodsByName(functionName);
             var eventName = Utils.pascalCaseToSnakeCase(annotationContext.name.getText());
+
+            // Several functions may handle the same event type, the last one wins (like it always did)
+            if (removeCase(dispatchSwitch(clazz), eventName)) {
+                LOGGER.warn("Several functions handle {}, only {} is used", annotationContext.name.getText(), functionName);
+                removeCase(understandSwitch(clazz), eventName);
+            }
+
             if (methods.isEmpty()) {
                 var handlerMethod = clazz.addMethod(functionName, Modifier.Keyword.PUBLIC, Modifier.Keyword.STATIC);
                 handlerMethod.addAnnotation(new NormalAnnotationExpr(new Name(MessageEventHandlerMethod.class.getSimpleName()),
@@ -37,24 +50,77 @@ public class MessageAnnotationGenerator extends Generator {
                 handlerMethod.addParameter(MessageEventContext.class.getSimpleName(), "ctx");
 
                 visitor.classStack().push(clazz);
+                visitor.handlerNeedsNlu(false);
                 var body = (BlockStmt) visitor.visitFunctionDefinition(functionContext);
                 var usesIntentOrEntity = body.findFirst(MethodCallExpr.class, m -> m.getNameAsString().equals("intent") || m.getNameAsString().equals("entity"));
-                if (usesIntentOrEntity.isPresent()) {
+                if (usesIntentOrEntity.isPresent() || visitor.handlerNeedsNlu()) {
                     // TODO: Throw error if NLU not present
-                    var invokeModel = "ComponentRegistry.rasa().invokeModel(ctx.event())";
-                    body.addStatement(0, StaticJavaParser.parseExpression(invokeModel));
+                    addUnderstandCase(clazz, eventName, visitor);
                 }
+                visitor.handlerNeedsNlu(false);
                 handlerMethod.setBody(body);
                 visitor.classStack().pop();
             } else {
                 methods.get(0).addAnnotation(new NormalAnnotationExpr(new Name(MessageEventHandlerMethod.class.getSimpleName()),
                         new NodeList<>(new MemberValuePair("messageEventType", new FieldAccessExpr(new NameExpr(MessageEventType.class.getSimpleName()), eventName)))));
+
+                // The handler needs NLU for this event type if it needs it for the event types it already handles
+                var understoodEventNames = understandSwitch(clazz).getEntries().stream()
+                        .flatMap(e -> e.getLabels().stream())
+                        .map(Expression::toString)
+                        .toList();
+                var needsNlu = dispatchSwitch(clazz).getEntries().stream()
+                        .filter(e -> e.findFirst(MethodCallExpr.class, m -> m.getNameAsString().equals(functionName)).isPresent())
+                        .flatMap(e -> e.getLabels().stream())
+                        .anyMatch(l -> understoodEventNames.contains(l.toString()));
+                if (needsNlu) {
+                    addUnderstandCase(clazz, eventName, visitor);
+                }
             }
 
+            // Add case to `dispatch`, i.e., `case eventName: functionName(ctx); return true;`
+            var switchStmt = dispatchSwitch(clazz);
+            var handlerCall = new MethodCallExpr(functionName, new NameExpr("ctx"));
+            var switchEntry = new SwitchEntry(new NodeList<>(new NameExpr(eventName)), SwitchEntry.Type.STATEMENT_GROUP,
+                    new NodeList<>(new ExpressionStmt(handlerCall), new ReturnStmt(new BooleanLiteralExpr(true))));
+            switchStmt.getEntries().add(switchStmt.getEntries().size() - 1, switchEntry);
+
             // Add import for `MessageEventHandlerMethod`
             //noinspection OptionalGetWithoutIsPresent -> We can assume that it is present
             var compilationUnit = clazz.findCompilationUnit().get();
             compilationUnit.addImport(Utils.renameImport(MessageEventHandlerMethod.class, visitor.outputPackage()), false, false);
         });
     }
+
+    /**
+     * Adds case to `understand`, i.e., `case eventName: return ComponentRegistry.rasa().invokeModelAsync(event);`
+     */
+    private static void addUnderstandCase(ClassOrInterfaceDeclaration clazz, String eventName, JavaTreeGenerator visitor) {
+        var switchStmt = understandSwitch(clazz);
+        var invokeModel = StaticJavaParser.parseExpression("ComponentRegistry.rasa().invokeModelAsync(event)");
+        var switchEntry = new SwitchEntry(new NodeList<>(new NameExpr(eventName)), SwitchEntry.Type.STATEMENT_GROUP,
+                new NodeList<>(new ReturnStmt(invokeModel)));
+        switchStmt.getEntries().add(switchStmt.getEntries().size() - 1, switchEntry);
+
+        //noinspection OptionalGetWithoutIsPresent -> We can assume that it is present
+        var compilationUnit = clazz.findCompilationUnit().get();
+        compilationUnit.addImport(Utils.renameImport(ComponentRegistry.class, visitor.outputPackage()), false, false);
+    }
+
+    /**
+     * @return whether the switch had a case for the event.
+     */
+    private static boolean removeCase(SwitchStmt switchStmt, String eventName) {
+        return switchStmt.getEntries().removeIf(e -> e.getLabels().stream().anyMatch(l -> l.toString().equals(eventName)));
+    }
+
+    private static SwitchStmt dispatchSwitch(ClassOrInterfaceDeclaration clazz) {
+        //noinspection OptionalGetWithoutIsPresent -> We can assume that it is present
+        return clazz.getMethodsByName("dispatch").get(0).findFirst(SwitchStmt.class).get();
+    }
+
+    private static SwitchStmt understandSwitch(ClassOrInterfaceDeclaration clazz) {
+        //noinspection OptionalGetWithoutIsPresent -> We can assume that it is present
+        return clazz.getMethodsByName("understand").get(0).findFirst(SwitchStmt.class).get();
+    }
 }
@@ -4,6 +4,7 @@ import com.github.javaparser.ast.Modifier;
 import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.expr.*;
 import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import generatedParser.BMLParser;
 import i5.bml.parser.types.annotations.BMLRoutineAnnotation;
 import i5.bml.transpiler.bot.events.RoutineEventHandlerMethod;
@@ -13,6 +14,7 @@ import i5.bml.transpiler.generators.CodeGenerator;
 import i5.bml.transpiler.generators.Generator;
 import i5.bml.transpiler.generators.java.JavaTreeGenerator;
 import i5.bml.transpiler.utils.PrinterUtil;
+import i5.bml.transpiler.utils.Utils;
 import org.antlr.symtab.Type;
 
 import java.util.concurrent.TimeUnit;
@@ -43,10 +45,21 @@ public class RoutineAnnotationGenerator extends Generator {
             handlerMethod.setBody((BlockStmt) visitor.visitFunctionDefinition(functionContext));
             visitor.classStack().pop();
 
-            // Add imports for `TimeUnit`
+            // Schedule the routine with a direct call, i.e., `schedule(..., "name", () -> name(new RoutineEventContext()), period, timeUnit)`
+            var routineName = functionContext.head.functionName.getText();
+            var routine = new LambdaExpr(new NodeList<>(), new MethodCallExpr(routineName,
+                    new ObjectCreationExpr(null, new ClassOrInterfaceType(null, RoutineEventContext.class.getSimpleName()), new NodeList<>())));
+            var scheduleCall = new MethodCallExpr("schedule", new NameExpr("scheduler"), new NameExpr("eventQueue"),
+                    new StringLiteralExpr(routineName), routine, new LongLiteralExpr(bmlRoutineAnnotation.getPeriod()),
+                    new FieldAccessExpr(new NameExpr("TimeUnit"), bmlRoutineAnnotation.getTimeUnit().name()));
+            //noinspection OptionalGetWithoutIsPresent -> We can assume presence
+            clazz.getMethodsByName("registerEventHandler").get(0).getBody().get().addStatement(scheduleCall);
+
+            // Add imports for `TimeUnit` and `RoutineEventHandlerMethod`
             //noinspection OptionalGetWithoutIsPresent -> We can assume presence
             var compilationUnit = clazz.findCompilationUnit().get();
             compilationUnit.addImport(TimeUnit.class);
+            compilationUnit.addImport(Utils.renameImport(RoutineEventHandlerMethod.class, visitor.outputPackage()), false, false);
         });
     }
 }
@@ -1,6 +1,5 @@
 package i5.bml.transpiler.generators.types.components;
 
-import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.Modifier;
 import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
@@ -19,7 +18,7 @@ public interface InitializableComponent {
         var method = clazz.addMethod("init%sComponent".formatted(componentName), Modifier.Keyword.PUBLIC, Modifier.Keyword.STATIC);
         method.addAnnotation(new MarkerAnnotationExpr(new Name(ComponentInitializer.class.getSimpleName())));
         method.addParameter(ExecutorService.class, "threadPool");
-        method.addParameter(StaticJavaParser.parseType("PriorityBlockingQueue<Event>"), "eventQueue");
+        method.addParameter("EventQueue", "eventQueue");
         method.setType("CompletableFuture<Void>");
         var runAsync = new MethodCallExpr(new NameExpr("CompletableFuture"), "runAsync", new NodeList<>(expr, new NameExpr("threadPool")));
         method.setBody(new BlockStmt().addStatement(new ReturnStmt(runAsync)));
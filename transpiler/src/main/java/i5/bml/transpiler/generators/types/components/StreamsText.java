@@ -0,0 +1,18 @@
+package i5.bml.transpiler.generators.types.components;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.expr.Expression;
+import generatedParser.BMLParser;
+import i5.bml.transpiler.generators.java.JavaTreeGenerator;
+
+/**
+ * Components with functions that generate text gradually, e.g., language models. When such a function call is sent
+ * right away, the text is delivered while it is generated.
+ */
+public interface StreamsText {
+
+    /**
+     * @param stream the <code>MessageStream</code> that the generated text is appended to.
+     */
+    Node generateStreamingFunctionCall(Expression object, BMLParser.FunctionCallContext ctx, Expression stream, JavaTreeGenerator visitor);
+}
@@ -3,8 +3,10 @@ package i5.bml.transpiler.generators.types.components.messenger;
 import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.expr.*;
+import com.github.javaparser.ast.stmt.BlockStmt;
 import com.github.javaparser.ast.stmt.ExpressionStmt;
 import com.github.javaparser.ast.stmt.IfStmt;
+import com.github.javaparser.ast.stmt.ReturnStmt;
 import com.github.javaparser.ast.stmt.Statement;
 import i5.bml.transpiler.bot.events.messenger.MessageHelper;
 import i5.bml.transpiler.generators.java.JavaTreeGenerator;
@@ -53,4 +55,32 @@ public interface IsMessengerComponent {
             }
         });
     }
+
+    /**
+     * Adds a branch for users of the messenger to <code>MessageHelper.streamToMessenger(User)</code>, for messengers
+     * that can edit messages.
+     *
+     * @param streamExpr creates the <code>MessageStream</code>, the user is available as pattern variable.
+     */
+    @SuppressWarnings("OptionalGetWithoutIsPresent")
+    default void addStreamBranchToMessageHelper(JavaTreeGenerator visitor, Class<?> messengerUserClass, Expression streamExpr,
+                                                String helperMethod, Class<?>... classesToImport) {
+        PrinterUtil.readAndWriteClass(visitor.botOutputPath(), MessageHelper.class, clazz -> {
+            clazz.addMember(StaticJavaParser.parseMethodDeclaration(helperMethod));
+
+            var cu = clazz.findCompilationUnit().get();
+            for (Class<?> classToImport : classesToImport) {
+                cu.addImport(Utils.renameImport(classToImport, visitor.outputPackage()), false, false);
+            }
+
+            var messengerUserTypeName = messengerUserClass.getSimpleName();
+            var type = StaticJavaParser.parseClassOrInterfaceType(messengerUserTypeName);
+            var patternExpr = new PatternExpr(new NodeList<>(), type, new SimpleName(StringUtils.uncapitalize(messengerUserTypeName)));
+            var instanceofExpr = new InstanceOfExpr(new NameExpr("user"), type, patternExpr);
+
+            // Before the fallback for messengers that cannot edit messages
+            var streamToMessengerBody = clazz.getMethodsBySignature("streamToMessenger", "User").get(0).getBody().get();
+            streamToMessengerBody.addStatement(0, new IfStmt(instanceofExpr, new BlockStmt().addStatement(new ReturnStmt(streamExpr)), null));
+        });
+    }
 }
@@ -27,11 +27,53 @@ public class SlackGenerator extends Generator implements InitializableComponent,
 
     private static final String SEND_SLACK_MESSAGE = """
             private static void sendSlackMessage(SocketModeClient slackClient, String botToken, String channelId, String msg) {
-                try {
-                    slackClient.getSlack().methods().chatPostMessage(r -> r.token(botToken).channel(channelId).text(msg));
-                } catch (IOException | SlackApiException e) {
-                  LOGGER.error("An error occurred while sending the msg '{}' to the chat with id {} using the slack bot: {}", msg, channelId, e.getMessage());
-                }
+                send("slack", () -> {
+                    try {
+                        var response = slackClient.getSlack().methods().chatPostMessage(r -> r.token(botToken).channel(channelId).text(msg));
+                        if (!response.isOk()) {
+                            LOGGER.error("An error occurred while sending the msg '{}' to the chat with id {} using the slack bot: {}", msg, channelId, response.getError());
+                        }
+                        return response.isOk();
+                    } catch (IOException | SlackApiException e) {
+                        LOGGER.error("An error occurred while sending the msg '{}' to the chat with id {} using the slack bot: {}", msg, channelId, e.getMessage());
+                        return false;
+                    }
+                });
+            }""";
+
+    private static final String STREAM_SLACK_MESSAGE = """
+            private static MessageStream streamSlackMessage(SocketModeClient slackClient, String botToken, String channelId) {
+                var target = new MessageStream.Target() {
+                    @Override
+                    public Object post(String text) {
+                        try {
+                            var response = slackClient.getSlack().methods().chatPostMessage(r -> r.token(botToken).channel(channelId).text(text));
+                            if (!response.isOk()) {
+                                LOGGER.error("An error occurred while sending a streamed msg to the chat with id {} using the slack bot: {}", channelId, response.getError());
+                                return null;
+                            }
+                            return response.getTs();
+                        } catch (IOException | SlackApiException e) {
+                            LOGGER.error("An error occurred while sending a streamed msg to the chat with id {} using the slack bot: {}", channelId, e.getMessage());
+                            return null;
+                        }
+                    }
+
+                    @Override
+                    public boolean edit(Object ts, String text, boolean complete) {
+                        try {
+                            var response = slackClient.getSlack().methods().chatUpdate(r -> r.token(botToken).channel(channelId).ts((String) ts).text(text));
+                            if (!response.isOk()) {
+                                LOGGER.error("An error occurred while editing a streamed msg in the chat with id {} using the slack bot: {}", channelId, response.getError());
+                            }
+                            return response.isOk();
+                        } catch (IOException | SlackApiException e) {
+                            LOGGER.error("An error occurred while editing a streamed msg in the chat with id {} using the slack bot: {}", channelId, e.getMessage());
+                            return false;
+                        }
+                    }
+                };
+                return new MessageStream("slack", target, msg -> sendSlackMessage(slackClient, botToken, channelId, msg));
             }""";
 
     public SlackGenerator(Type slackComponent) {
@@ -52,6 +94,8 @@ public class SlackGenerator extends Generator implements InitializableComponent,
         var expr = StaticJavaParser.parseExpression("sendSlackMessage(slackUser.slackClient(), slackUser.botToken(), slackUser.channelId(), msg)");
         addBranchToMessageHelper(visitor, SlackUser.class, expr, SEND_SLACK_MESSAGE, SocketModeClient.class,
                 SlackApiException.class, IOException.class);
+        var streamExpr = StaticJavaParser.parseExpression("streamSlackMessage(slackUser.slackClient(), slackUser.botToken(), slackUser.channelId())");
+        addStreamBranchToMessageHelper(visitor, SlackUser.class, streamExpr, STREAM_SLACK_MESSAGE);
 
         // Add component initializer method to registry
         var threadInstance = new ObjectCreationExpr(null, StaticJavaParser.parseClassOrInterfaceType(SlackBotThread.class.getSimpleName()),
@@ -17,7 +17,9 @@ import i5.bml.transpiler.generators.types.components.UsesEnvVariable;
 import i5.bml.transpiler.utils.IOUtil;
 import org.antlr.symtab.Type;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 
 @CodeGenerator(typeClass = BMLTelegramComponent.class)
 public class TelegramGenerator extends Generator implements InitializableComponent, IsMessengerComponent, UsesEnvVariable {
@@ -26,15 +28,76 @@ public class TelegramGenerator extends Generator implements InitializableCompone
 
     private static final String SEND_TELEGRAM_MESSAGE = """
             private static void sendTelegramMessage(TelegramComponent telegramComponent, Long chatId, String msg) {
-                try {
-                    var send = new SendMessage();
-                    send.setChatId(chatId);
-                    send.setText(msg);
-                    send.setParseMode("markdown");
-                    telegramComponent.execute(send);
-                } catch (TelegramApiException e) {
-                    LOGGER.error("An error occurred while sending the msg '{}' to the chat with id {} using the telegram bot {}: {}", msg, chatId, telegramComponent.getBotUsername(), e.getMessage());
-                }
+                send("telegram", () -> {
+                    try {
+                        var send = new SendMessage();
+                        send.setChatId(chatId);
+                        send.setText(msg);
+                        send.setParseMode("markdown");
+                        telegramComponent.execute(send);
+                        return true;
+                    } catch (TelegramApiException e) {
+                        LOGGER.error("An error occurred while sending the msg '{}' to the chat with id {} using the telegram bot {}: {}", msg, chatId, telegramComponent.getBotUsername(), e.getMessage());
+                        return false;
+                    }
+                });
+            }""";
+
+    private static final String STREAM_TELEGRAM_MESSAGE = """
+            private static MessageStream streamTelegramMessage(TelegramComponent telegramComponent, Long chatId) {
+                var target = new MessageStream.Target() {
+                    @Override
+                    public Object post(String text) {
+                        try {
+                            var send = new SendMessage();
+                            send.setChatId(chatId);
+                            send.setText(text);
+                            return telegramComponent.execute(send).getMessageId();
+                        } catch (TelegramApiException e) {
+                            LOGGER.error("An error occurred while sending a streamed msg to the chat with id {} using the telegram bot {}: {}", chatId, telegramComponent.getBotUsername(), e.getMessage());
+                            return null;
+                        }
+                    }
+
+                    @Override
+                    public boolean edit(Object messageId, String text, boolean complete) {
+                        var edit = new EditMessageText();
+                        edit.setChatId(chatId);
+                        edit.setMessageId((Integer) messageId);
+                        edit.setText(text);
+                        // Partial text might not be valid Markdown yet, and neither might be the complete one
+                        if (complete) {
+                            edit.setParseMode("markdown");
+                            try {
+                                telegramComponent.execute(edit);
+                                return true;
+                            } catch (TelegramApiException e) {
+                                if (isNotModified(e)) {
+                                    return true;
+                                }
+                                edit.setParseMode(null);
+                            }
+                        }
+
+                        try {
+                            telegramComponent.execute(edit);
+                            return true;
+                        } catch (TelegramApiException e) {
+                            // The message already shows the text, e.g., the complete text has no formatting
+                            if (isNotModified(e)) {
+                                return true;
+                            }
+                            LOGGER.error("An error occurred while editing a streamed msg in the chat with id {} using the telegram bot {}: {}", chatId, telegramComponent.getBotUsername(), e.getMessage());
+                            return false;
+                        }
+                    }
+
+                    private boolean isNotModified(TelegramApiException e) {
+                        return e instanceof TelegramApiRequestException requestException && requestException.getApiResponse() != null
+                                && requestException.getApiResponse().contains("message is not modified");
+                    }
+                };
+                return new MessageStream("telegram", target, msg -> sendTelegramMessage(telegramComponent, chatId, msg));
             }""";
 
     public TelegramGenerator(Type telegramComponent) {
@@ -55,6 +118,9 @@ public class TelegramGenerator extends Generator implements InitializableCompone
         var expr = StaticJavaParser.parseExpression("sendTelegramMessage(telegramUser.telegramComponent(), telegramUser.chatId(), msg)");
         addBranchToMessageHelper(visitor, TelegramUser.class, expr, SEND_TELEGRAM_MESSAGE, TelegramComponent.class,
                 TelegramApiException.class, SendMessage.class);
+        var streamExpr = StaticJavaParser.parseExpression("streamTelegramMessage(telegramUser.telegramComponent(), telegramUser.chatId())");
+        addStreamBranchToMessageHelper(visitor, TelegramUser.class, streamExpr, STREAM_TELEGRAM_MESSAGE, EditMessageText.class,
+                TelegramApiRequestException.class);
 
         // Add component initializer method to registry
         var threadInstance = new ObjectCreationExpr(null, StaticJavaParser.parseClassOrInterfaceType(TelegramBotThread.class.getSimpleName()),
@@ -14,6 +14,7 @@ import i5.bml.transpiler.bot.threads.openai.OpenAIComponent;
 import i5.bml.transpiler.generators.CodeGenerator;
 import i5.bml.transpiler.generators.Generator;
 import i5.bml.transpiler.generators.java.JavaTreeGenerator;
+import i5.bml.transpiler.generators.types.components.StreamsText;
 import i5.bml.transpiler.generators.types.components.UsesEnvVariable;
 import i5.bml.transpiler.utils.IOUtil;
 import i5.bml.transpiler.utils.Utils;
@@ -25,7 +26,7 @@ import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 @CodeGenerator(typeClass = BMLOpenAIComponent.class)
-public class OpenAIGenerator extends Generator implements UsesEnvVariable {
+public class OpenAIGenerator extends Generator implements UsesEnvVariable, StreamsText {
 
     private final BMLOpenAIComponent openAIComponent;
 
@@ -50,16 +51,12 @@ public class OpenAIGenerator extends Generator implements UsesEnvVariable {
         initializerArgs.add(getFromEnv(openAIComponent.key()));
         initializerArgs.add(new StringLiteralExpr(openAIComponent.model()));
         initializerArgs.add(new IntegerLiteralExpr(openAIComponent.tokens().isEmpty() ? "-1" : openAIComponent.tokens()));
+        // Without timeout, the component uses the configurable timeout of completions
         if (openAIComponent.duration() != null) {
             initializerArgs.add(new MethodCallExpr(new NameExpr(Duration.class.getSimpleName()), "of", new NodeList<>(
                     new LongLiteralExpr(openAIComponent.duration()),
                     new FieldAccessExpr(new NameExpr(ChronoUnit.class.getSimpleName()), openAIComponent.timeUnit().name())
             )));
-        } else {
-            initializerArgs.add(new MethodCallExpr(new NameExpr(Duration.class.getSimpleName()), "of", new NodeList<>(
-                    new LongLiteralExpr("10"),
-                    new FieldAccessExpr(new NameExpr(ChronoUnit.class.getSimpleName()), "SECONDS")
-            )));
         }
         initializerArgs.add(new StringLiteralExpr(openAIComponent.prompt()));
         var initializer = new ObjectCreationExpr(null, type, initializerArgs);
@@ -91,4 +88,11 @@ public class OpenAIGenerator extends Generator implements UsesEnvVariable {
         var call = "ComponentRegistry.openAI().invokeModel(ctx.event())";
         return StaticJavaParser.parseExpression(call);
     }
+
+    @Override
+    public Node generateStreamingFunctionCall(Expression object, BMLParser.FunctionCallContext ctx, Expression stream, JavaTreeGenerator visitor) {
+        var call = (MethodCallExpr) generateFunctionCall(object, ctx, visitor);
+        call.addArgument(stream);
+        return call;
+    }
 }
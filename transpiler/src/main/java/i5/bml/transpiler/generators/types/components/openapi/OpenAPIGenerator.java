@@ -1,5 +1,6 @@
 package i5.bml.transpiler.generators.types.components.openapi;
 
+import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.Modifier;
 import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.NodeList;
@@ -12,6 +13,9 @@ import i5.bml.parser.types.TypeRegistry;
 import i5.bml.parser.types.components.openapi.BMLOpenAPIComponent;
 import i5.bml.parser.types.functions.BMLFunctionType;
 import i5.bml.transpiler.bot.components.ComponentRegistry;
+import i5.bml.transpiler.bot.http.HostLimits;
+import i5.bml.transpiler.bot.http.HttpSettings;
+import i5.bml.transpiler.bot.metrics.MetricsRegistry;
 import i5.bml.transpiler.generators.CodeGenerator;
 import i5.bml.transpiler.generators.Generator;
 import i5.bml.transpiler.generators.java.JavaTreeGenerator;
@@ -22,6 +26,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
 
 @CodeGenerator(typeClass = BMLOpenAPIComponent.class)
 public class OpenAPIGenerator extends Generator {
@@ -42,10 +47,9 @@ public class OpenAPIGenerator extends Generator {
         // Make sure that dependencies and included in gradle build file
         visitor.gradleFile().add("hasOpenAPIComponent", true);
 
-        // Generate swagger client code
-        // TODO
-        //OpenAPIUtils.generateOpenAPIClientCode(openAPIComponent.openAPISpec(), visitor.outputPackage(), apiName, visitor.botOutputPath());
-        OpenAPIUtils.generateOpenAPIClientCode(openAPIComponent.url(), visitor.outputPackage(), apiName, visitor.botOutputPath());
+        // Generate swagger client code in the background, we do not depend on it for the rest of the code generation
+        visitor.addBackgroundTask(OpenAPIUtils.generateOpenAPIClientCode(openAPIComponent.openAPISpec(),
+                openAPIComponent.openAPI(), visitor.outputPackage(), apiName, visitor.botOutputPath()));
 
         // Generate fields with getters in `ComponentRegistry`
         openAPIComponent.tagOperationIdPairs().values().stream().map(Pair::getLeft).distinct().forEach(tag -> {
@@ -73,6 +77,38 @@ public class OpenAPIGenerator extends Generator {
             var expr = returnStmt.getExpression().get();
             returnStmt.setExpression(new MethodCallExpr(expr, "get", new NodeList<>()));
         });
+
+        // The clients of all tags share the default client: it gets the timeouts, keep-alive, and host limits of all
+        // HTTP calls of the bot (the generated client uses OkHttp 2, so it cannot share the connection pool of the
+        // other components), and we record latency and failures of all requests to the API
+        var configureClient = StaticJavaParser.parseBlock("""
+                {
+                    var httpClient = %s.getDefaultApiClient().getHttpClient();
+                    var httpSettings = HttpSettings.current();
+                    var timeout = httpSettings.timeout(HttpSettings.CallType.API).toMillis();
+                    httpClient.setConnectTimeout(httpSettings.connectTimeout().toMillis(), TimeUnit.MILLISECONDS);
+                    httpClient.setReadTimeout(timeout, TimeUnit.MILLISECONDS);
+                    httpClient.setWriteTimeout(timeout, TimeUnit.MILLISECONDS);
+                    httpClient.setConnectionPool(new com.squareup.okhttp.ConnectionPool(httpSettings.maxIdleConnections(),
+                            httpSettings.keepAlive().toMillis()));
+                    httpClient.interceptors().add(chain -> {
+                        try (var permit = HostLimits.shared().acquire(chain.request().httpUrl().host())) {
+                            var requests = MetricsRegistry.shared().requests("%s", chain.request().method());
+                            var response = requests.time(() -> chain.proceed(chain.request()));
+                            if (!response.isSuccessful()) {
+                                requests.failed();
+                            }
+                            return response;
+                        }
+                    });
+                }""".formatted(getOpenAPIImport(visitor, "Configuration"), ctx.name.getText()));
+        visitor.currentClass().addStaticInitializer().setStatements(configureClient.getStatements());
+        //noinspection OptionalGetWithoutIsPresent -> We can assume that it is present
+        var compilationUnit = visitor.currentClass().findCompilationUnit().get();
+        compilationUnit.addImport(Utils.renameImport(MetricsRegistry.class, visitor.outputPackage()), false, false);
+        compilationUnit.addImport(Utils.renameImport(HostLimits.class, visitor.outputPackage()), false, false);
+        compilationUnit.addImport(Utils.renameImport(HttpSettings.class, visitor.outputPackage()), false, false);
+        compilationUnit.addImport(TimeUnit.class);
     }
 
     private String getAPIImport(JavaTreeGenerator visitor, String clientClassName) {
@@ -123,7 +159,7 @@ public class OpenAPIGenerator extends Generator {
         compilationUnit.addImport(Utils.renameImport(ComponentRegistry.class, visitor.outputPackage()), false, false);
 
         // Import for `ApiException`
-        var packageName = getOpenAPIImport(visitor);
+        var packageName = getOpenAPIImport(visitor, "ApiException");
         //noinspection OptionalGetWithoutIsPresent -> We can assume that it is present
         visitor.currentClass().findCompilationUnit().get().addImport(packageName, false, false);
 
@@ -133,12 +169,11 @@ public class OpenAPIGenerator extends Generator {
         return methodCallExpr;
     }
 
-    private String getOpenAPIImport(JavaTreeGenerator visitor) {
-        // Add import for %sApi
+    private String getOpenAPIImport(JavaTreeGenerator visitor, String className) {
         if (!visitor.outputPackage().isEmpty()) {
-            return visitor.outputPackage() + ".openapi." + apiName + "." + "ApiException";
+            return visitor.outputPackage() + ".openapi." + apiName + "." + className;
         } else {
-            return "openapi." + apiName + "." + "ApiException";
+            return "openapi." + apiName + "." + className;
         }
     }
 }
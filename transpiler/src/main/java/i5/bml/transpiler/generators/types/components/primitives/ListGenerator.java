@@ -1,25 +1,26 @@
 package i5.bml.transpiler.generators.types.components.primitives;
 
-import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.Modifier;
 import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.FieldDeclaration;
 import com.github.javaparser.ast.expr.*;
 import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.google.gson.reflect.TypeToken;
 import generatedParser.BMLParser;
 import i5.bml.parser.types.components.primitives.BMLList;
 import i5.bml.parser.types.functions.BMLFunctionType;
+import i5.bml.transpiler.bot.cluster.Cluster;
 import i5.bml.transpiler.generators.CodeGenerator;
 import i5.bml.transpiler.generators.Generator;
 import i5.bml.transpiler.generators.GeneratorRegistry;
 import i5.bml.transpiler.generators.java.JavaTreeGenerator;
+import i5.bml.transpiler.utils.Utils;
 import org.antlr.symtab.Type;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.TerminalNode;
 import org.apache.commons.lang3.StringUtils;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -34,21 +35,17 @@ public class ListGenerator extends Generator {
         //noinspection OptionalGetWithoutIsPresent -> We can assume the presence
         var compilationUnit = currentClass.findCompilationUnit().get();
 
-        var args = new NodeList<Expression>();
-        if (ctx.params != null) {
-            args.add((Expression) visitor.visit(ctx.params.elementExpressionPair().get(0).expr));
-        } else {
-            args.add(new ObjectCreationExpr(null, StaticJavaParser.parseClassOrInterfaceType("ArrayList"), new NodeList<>()));
-        }
-
+        // Global components live in the shared state of all instances
         BMLList bmlList = (BMLList) ctx.type;
-        var initializer = new MethodCallExpr(new NameExpr("Collections"), "synchronizedList", args);
+        var initializer = Utils.generateSharedStateAccess("list", ctx.name.getText())
+                .addArgument(Utils.generateTypeOf(bmlList.getName()));
         FieldDeclaration field = currentClass.addFieldWithInitializer(bmlList.getName(), ctx.name.getText(),
                 initializer, Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
 
-        // Add import for list types
+        // Add import for list types and cluster
         compilationUnit.addImport(List.class);
-        compilationUnit.addImport(ArrayList.class);
+        compilationUnit.addImport(TypeToken.class);
+        compilationUnit.addImport(Utils.renameImport(Cluster.class, visitor.outputPackage()), false, false);
 
         // Add getter & setter
         var getter = field.createGetter();
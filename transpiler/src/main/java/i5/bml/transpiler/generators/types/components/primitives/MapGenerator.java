@@ -1,15 +1,16 @@
 package i5.bml.transpiler.generators.types.components.primitives;
 
-import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.Modifier;
 import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.FieldDeclaration;
 import com.github.javaparser.ast.expr.*;
+import com.google.gson.reflect.TypeToken;
 import generatedParser.BMLParser;
 import i5.bml.parser.types.components.primitives.BMLMap;
 import i5.bml.parser.types.functions.BMLFunctionType;
+import i5.bml.transpiler.bot.cluster.Cluster;
 import i5.bml.transpiler.generators.CodeGenerator;
 import i5.bml.transpiler.generators.Generator;
 import i5.bml.transpiler.generators.GeneratorRegistry;
@@ -24,7 +25,6 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -43,31 +43,29 @@ public class MapGenerator extends Generator {
         //noinspection OptionalGetWithoutIsPresent -> We can assume the presence
         var compilationUnit = currentClass.findCompilationUnit().get();
 
-        // Add component itself
-        var args = new NodeList<Expression>();
-        if (ctx.params != null) {
-            args.add((Expression) visitor.visit(ctx.params.elementExpressionPair().get(0).expr));
-        }
-
-        var initializer = new ObjectCreationExpr(null, StaticJavaParser.parseClassOrInterfaceType("ConcurrentHashMap<>"), args);
         BMLMap bmlMapType = (BMLMap) ctx.type;
-
         var keyType = BMLTypeResolver.resolveBMLTypeToJavaType(bmlMapType.getKeyType());
         var valueType = BMLTypeResolver.resolveBMLTypeToJavaType(bmlMapType.getValueType());
         var javaMapType = "Map<%s, %s>".formatted(StringUtils.capitalize(keyType.asString()),
                 StringUtils.capitalize(valueType.asString()));
+
+        // Add component itself, global components live in the shared state of all instances. The field must not be
+        // reassigned, since the map would then no longer be shared.
+        var initializer = Utils.generateSharedStateAccess("map", ctx.name.getText())
+                .addArgument(Utils.generateTypeOf(javaMapType));
         FieldDeclaration field = currentClass.addFieldWithInitializer(javaMapType, ctx.name.getText(), initializer,
-                Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC);
+                Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
 
-        // Add import for concurrent hash map
+        // Add import for map, its type, and cluster
         compilationUnit.addImport(Map.class);
-        compilationUnit.addImport(ConcurrentHashMap.class);
+        compilationUnit.addImport(TypeToken.class);
+        compilationUnit.addImport(Utils.renameImport(Cluster.class, visitor.outputPackage()), false, false);
 
         // Add import for key and value types
         addImportForClass(bmlMapType.getKeyType(), compilationUnit, visitor.outputPackage());
         addImportForClass(bmlMapType.getValueType(), compilationUnit, visitor.outputPackage());
 
-        // Add getter & setter
+        // Add getter
         var getter = field.createGetter();
         getter.addModifier(Modifier.Keyword.STATIC);
     }
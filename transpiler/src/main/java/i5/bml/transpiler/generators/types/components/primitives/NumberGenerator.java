@@ -3,24 +3,26 @@ package i5.bml.transpiler.generators.types.components.primitives;
 import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.Modifier;
 import com.github.javaparser.ast.Node;
-import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.FieldDeclaration;
 import com.github.javaparser.ast.body.Parameter;
 import com.github.javaparser.ast.body.VariableDeclarator;
 import com.github.javaparser.ast.expr.*;
 import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.type.PrimitiveType;
 import com.github.javaparser.ast.type.UnknownType;
 import com.github.javaparser.ast.type.VarType;
 import generatedParser.BMLParser;
 import i5.bml.parser.types.components.primitives.BMLNumber;
+import i5.bml.transpiler.bot.cluster.Cluster;
+import i5.bml.transpiler.bot.cluster.SharedNumber;
 import i5.bml.transpiler.generators.CodeGenerator;
 import i5.bml.transpiler.generators.Generator;
 import i5.bml.transpiler.generators.java.JavaTreeGenerator;
+import i5.bml.transpiler.generators.types.BMLTypeResolver;
+import i5.bml.transpiler.utils.Utils;
 import org.antlr.symtab.Type;
 import org.apache.commons.lang3.StringUtils;
 
-import java.util.concurrent.atomic.AtomicLong;
-
 @CodeGenerator(typeClass = BMLNumber.class)
 public class NumberGenerator extends Generator {
 
@@ -30,14 +32,25 @@ public class NumberGenerator extends Generator {
     public void generateComponent(BMLParser.ComponentContext ctx, JavaTreeGenerator visitor) {
         var currentClass = visitor.currentClass();
 
-        var type = StaticJavaParser.parseClassOrInterfaceType("AtomicLong");
-        var initializer = new ObjectCreationExpr(null, type, new NodeList<>());
+        // Global components live in the shared state of all instances, `value` is the initial value
+        Expression initialValue = new LongLiteralExpr("0L");
+        if (ctx.params != null) {
+            initialValue = (Expression) visitor.visit(ctx.params.elementExpressionPair().get(0).expr);
+            if (!initialValue.isIntegerLiteralExpr()) {
+                initialValue = new CastExpr(PrimitiveType.longType(), new EnclosedExpr(initialValue));
+            }
+        }
+
+        var type = StaticJavaParser.parseClassOrInterfaceType(SharedNumber.class.getSimpleName());
+        var initializer = Utils.generateSharedStateAccess("number", ctx.name.getText()).addArgument(initialValue);
         FieldDeclaration field = currentClass.addFieldWithInitializer(type, ctx.name.getText(),
                 initializer, Modifier.Keyword.PRIVATE, Modifier.Keyword.STATIC, Modifier.Keyword.FINAL);
 
-        // Add import
+        // Add imports
         //noinspection OptionalGetWithoutIsPresent -> We can assume the presence
-        currentClass.findCompilationUnit().get().addImport(AtomicLong.class);
+        var compilationUnit = currentClass.findCompilationUnit().get();
+        compilationUnit.addImport(Utils.renameImport(Cluster.class, visitor.outputPackage()), false, false);
+        compilationUnit.addImport(Utils.renameImport(SharedNumber.class, visitor.outputPackage()), false, false);
 
         // Add getter & setter
         var getter = field.createGetter();
@@ -69,6 +82,14 @@ public class NumberGenerator extends Generator {
         return block;
     }
 
+    @Override
+    public Node generateGlobalNameExpr(BMLParser.AtomContext ctx) {
+        var getCall = new MethodCallExpr("ComponentRegistry.get%s().get".formatted(StringUtils.capitalize(ctx.token.getText())));
+        // Shared numbers are stored as long, narrow them to the type that the rest of the code expects
+        var javaType = BMLTypeResolver.resolveBMLTypeToJavaType(ctx.type).asClassOrInterfaceType().toUnboxedType();
+        return new EnclosedExpr(new CastExpr(javaType, getCall));
+    }
+
     @Override
     public Node generateAddAssignment(BMLParser.AssignmentContext ctx, JavaTreeGenerator visitor) {
         return new AssignExpr(new NameExpr(ctx.name.getText()), (Expression) visitor.visit(ctx.expr), AssignExpr.Operator.PLUS);
@@ -0,0 +1,156 @@
+package i5.bml.transpiler.input;
+
+import generatedParser.BMLBaseListener;
+import generatedParser.BMLParser;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recompiles whenever the BML file or one of the local files it references (e.g., Rasa training data or an OpenAPI
+ * specification given as <code>file:</code> URL) changes. Since we stay in the same process, the warm state of the
+ * compiler (see {@link CompilerDaemon}) is reused, and the {@link i5.bml.transpiler.generators.java.ProjectGenerator}
+ * only re-emits files that actually changed.
+ */
+public class CompilationWatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompilationWatcher.class);
+
+    /**
+     * Editors tend to write a file in several steps (e.g., truncate, write, rename), we wait for things to settle
+     */
+    private static final long DEBOUNCE_MILLIS = 200;
+
+    private final InputParser inputParser;
+
+    private final Path inputFile;
+
+    private final Set<Path> watchedDirectories = new HashSet<>();
+
+    public CompilationWatcher(InputParser inputParser, File inputFile) {
+        this.inputParser = inputParser;
+        this.inputFile = inputFile.toPath().toAbsolutePath().normalize();
+    }
+
+    public void run() throws IOException {
+        try (var watchService = FileSystems.getDefault().newWatchService()) {
+            //noinspection InfiniteLoopStatement
+            while (true) {
+                var watchedFiles = compile();
+                for (var file : watchedFiles) {
+                    var directory = file.getParent();
+                    if (directory != null && watchedDirectories.add(directory)) {
+                        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                    }
+                }
+
+                LOGGER.info("Watching {} file(s) for changes", watchedFiles.size());
+                var changedFile = awaitChange(watchService, watchedFiles);
+                LOGGER.info("{} changed, recompiling", changedFile);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Set<Path> compile() {
+        try {
+            inputParser.compile(System.err);
+        } catch (Exception e) {
+            // A failing compilation must not end the watch mode
+            LOGGER.error("Compilation failed", e);
+        }
+
+        var watchedFiles = new HashSet<Path>();
+        watchedFiles.add(inputFile);
+        if (inputParser.program() != null) {
+            watchedFiles.addAll(referencedFiles(inputParser.program()));
+        }
+
+        return watchedFiles;
+    }
+
+    private Path awaitChange(WatchService watchService, Set<Path> watchedFiles) throws InterruptedException {
+        Path changedFile = null;
+        while (changedFile == null) {
+            changedFile = changedFile(watchService.take(), watchedFiles);
+        }
+
+        // Swallow the remaining events of this change
+        WatchKey key;
+        while ((key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+            changedFile(key, watchedFiles);
+        }
+
+        return changedFile;
+    }
+
+    private Path changedFile(WatchKey key, Set<Path> watchedFiles) {
+        Path changedFile = null;
+        var directory = (Path) key.watchable();
+        for (var event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // We lost events, better safe than sorry
+                changedFile = directory;
+            } else if (watchedFiles.contains(directory.resolve((Path) event.context()))) {
+                changedFile = directory.resolve((Path) event.context());
+            }
+        }
+
+        key.reset();
+        return changedFile;
+    }
+
+    /**
+     * Collects component parameters (e.g., <code>trainingFile</code> or <code>url</code>) that point to local files.
+     */
+    private static Set<Path> referencedFiles(BMLParser.ProgramContext program) {
+        var referencedFiles = new HashSet<Path>();
+        ParseTreeWalker.DEFAULT.walk(new BMLBaseListener() {
+            @Override
+            public void enterElementExpressionPair(BMLParser.ElementExpressionPairContext ctx) {
+                var value = ctx.expr.getText();
+                if (value.length() < 2 || !value.startsWith("\"")) {
+                    return;
+                }
+
+                var path = resolveLocalPath(value.substring(1, value.length() - 1));
+                if (path != null && Files.isRegularFile(path)) {
+                    referencedFiles.add(path.toAbsolutePath().normalize());
+                }
+            }
+        }, program);
+
+        return referencedFiles;
+    }
+
+    private static Path resolveLocalPath(String value) {
+        if (value.startsWith("env:")) {
+            value = System.getenv(value.substring(4));
+            if (value == null) {
+                return null;
+            }
+        }
+
+        try {
+            if (value.startsWith("file:")) {
+                return Path.of(URI.create(value));
+            } else if (value.contains("://")) {
+                return null;
+            } else {
+                return Path.of(value);
+            }
+        } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package i5.bml.transpiler.input;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+
+/**
+ * Keeps the compiler alive between compilations. Starting a fresh JVM for every compilation means that we pay for
+ * class loading, the type and generator registries, the ANTLR DFA cache and JIT warm-up every single time. The daemon
+ * pays for them once and additionally keeps the parsed bot templates and OpenAPI specifications around.
+ * <p>
+ * Protocol (one request per connection, see {@link DaemonClient}):
+ * <pre>
+ *     client: the token of the daemon, then one command line argument per line, terminated by an empty line
+ *     daemon: diagnostics, one per line, terminated by a line `exit [code]`
+ * </pre>
+ * Requests are processed one after another, since code generation relies on static state (e.g., the type registry).
+ * <p>
+ * Compile requests delete and write files with the permissions of the daemon, hence, the daemon only accepts requests
+ * with its token. The token is random and written to a file that only the owner of the daemon can read, see
+ * {@link #tokenFile(int)}.
+ */
+public class CompilerDaemon {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompilerDaemon.class);
+
+    public static final int DEFAULT_PORT = 42070;
+
+    static final String EXIT_PREFIX = "exit ";
+
+    /**
+     * Clients that do not send their request in time must not block the daemon
+     */
+    private static final int READ_TIMEOUT_MILLIS = 10_000;
+
+    private final int port;
+
+    private byte[] token;
+
+    public CompilerDaemon(int port) {
+        this.port = port;
+    }
+
+    /**
+     * @return file that holds the token of the daemon on the given port.
+     */
+    static Path tokenFile(int port) {
+        return Path.of(System.getProperty("user.home"), ".bml", "daemon-%d.token".formatted(port));
+    }
+
+    public void run() {
+        // We only accept requests from the local machine
+        try (var serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            token = writeToken();
+            LOGGER.info("Compiler daemon listening on {}:{}", serverSocket.getInetAddress().getHostAddress(), port);
+
+            //noinspection InfiniteLoopStatement
+            while (true) {
+                try (var socket = serverSocket.accept()) {
+                    handleRequest(socket);
+                } catch (IOException e) {
+                    LOGGER.error("Failed to handle compile request: {}", e.getMessage());
+                    LOGGER.debug("Stacktrace:", e);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to start compiler daemon on port {}: {}", port, e.getMessage());
+            LOGGER.debug("Stacktrace:", e);
+        }
+    }
+
+    /**
+     * Writes a new random token to the {@link #tokenFile(int)}, readable by the owner only.
+     */
+    private byte[] writeToken() throws IOException {
+        var bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        var newToken = HexFormat.of().formatHex(bytes);
+
+        var file = tokenFile(port);
+        Files.createDirectories(file.getParent());
+        // Created with restricted permissions, such that no one can read the token in between
+        Files.deleteIfExists(file);
+        try {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system (e.g., Windows), where the user's home directory is private anyway
+            Files.createFile(file);
+        } catch (FileAlreadyExistsException e) {
+            throw new IOException("Token file %s was created concurrently, is another daemon starting?".formatted(file), e);
+        }
+        Files.writeString(file, newToken, StandardCharsets.UTF_8);
+        file.toFile().deleteOnExit();
+
+        return newToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void handleRequest(Socket socket) throws IOException {
+        socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+        var reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        var out = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+
+        var clientToken = reader.readLine();
+        if (clientToken == null || !MessageDigest.isEqual(token, clientToken.getBytes(StandardCharsets.UTF_8))) {
+            LOGGER.warn("Rejected compile request without valid token");
+            out.println("ERROR: Invalid daemon token, see %s".formatted(tokenFile(port)));
+            out.println(EXIT_PREFIX + 1);
+            return;
+        }
+
+        var args = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            args.add(line);
+        }
+
+        LOGGER.info("Received compile request {}", args);
+
+        var start = System.nanoTime();
+        boolean success;
+        try {
+            success = new InputParser().parse(args.toArray(String[]::new), out);
+        } catch (Exception e) {
+            // A failing compilation must not take down the daemon
+            LOGGER.error("Compilation failed", e);
+            out.printf("ERROR: Compilation failed: %s%n", e.getMessage());
+            success = false;
+        }
+
+        LOGGER.info("Compile request took {} ms", (System.nanoTime() - start) / 1_000_000);
+        out.println(EXIT_PREFIX + (success ? 0 : 1));
+    }
+}
@@ -0,0 +1,59 @@
+package i5.bml.transpiler.input;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Sends compile requests to a running {@link CompilerDaemon}.
+ */
+public class DaemonClient {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DaemonClient.class);
+
+    private DaemonClient() {}
+
+    /**
+     * @param port        port the daemon is listening on.
+     * @param args        command line arguments of the compile request, paths should be absolute.
+     * @param diagnostics stream that receives the diagnostics reported by the daemon.
+     * @return the exit code reported by the daemon, or -1 if the daemon could not be reached.
+     */
+    public static int submit(int port, String[] args, PrintStream diagnostics) {
+        try (var socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            // Proves that we are allowed to use the daemon, i.e., that we can read its token file
+            var token = Files.readString(CompilerDaemon.tokenFile(port), StandardCharsets.UTF_8).trim();
+            var out = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+            out.println(token);
+            for (var arg : args) {
+                out.println(arg);
+            }
+            out.println();
+
+            var reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(CompilerDaemon.EXIT_PREFIX)) {
+                    return Integer.parseInt(line.substring(CompilerDaemon.EXIT_PREFIX.length()));
+                }
+
+                diagnostics.println(line);
+            }
+
+            LOGGER.error("Compiler daemon closed the connection unexpectedly");
+        } catch (IOException e) {
+            LOGGER.error("Could not reach compiler daemon on port {}: {}", port, e.getMessage());
+            LOGGER.debug("Stacktrace:", e);
+        }
+
+        return -1;
+    }
+}
@@ -1,5 +1,6 @@
 package i5.bml.transpiler.input;
 
+import generatedParser.BMLParser;
 import i5.bml.parser.Parser;
 import i5.bml.parser.errors.SyntaxErrorListener;
 import i5.bml.parser.utils.Measurements;
@@ -14,7 +15,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 public class InputParser {
 
@@ -30,6 +35,16 @@ public class InputParser {
 
     private boolean cachingEnabled;
 
+    private boolean daemonMode;
+
+    private boolean connectToDaemon;
+
+    private int daemonPort;
+
+    private boolean watchMode;
+
+    private BMLParser.ProgramContext program;
+
     public void parse(String[] args) throws IOException {
         // Parse options
         var options = initOptions();
@@ -40,7 +55,50 @@ public class InputParser {
             return;
         }
 
+        if (daemonMode) {
+            new CompilerDaemon(daemonPort).run();
+        } else if (connectToDaemon) {
+            // Scripts and editors rely on the exit code to tell whether the compilation failed
+            System.exit(DaemonClient.submit(daemonPort, daemonArguments(), System.err));
+        } else if (watchMode) {
+            new CompilationWatcher(this, new File(inputFilePath)).run();
+        } else {
+            compile(System.err);
+        }
+    }
+
+    /**
+     * Parses the given arguments and compiles the referenced BML file. Invoked by the {@link CompilerDaemon} for
+     * every request it receives, hence, diagnostics are reported to the given stream instead of stderr.
+     *
+     * @param args        arguments of the compile request, same as on the command line.
+     * @param diagnostics stream that receives syntax errors and diagnostics.
+     * @return true if code generation was invoked, false otherwise.
+     */
+    public boolean parse(String[] args, PrintStream diagnostics) throws IOException {
+        var options = initOptions();
+        try {
+            parseArguments(options, args);
+        } catch (ParseException e) {
+            var writer = new PrintWriter(diagnostics);
+            var helpFormatter = new HelpFormatter();
+            helpFormatter.printHelp(writer, helpFormatter.getWidth(), "bmlc", null, options,
+                    helpFormatter.getLeftPadding(), helpFormatter.getDescPadding(), null);
+            writer.flush();
+            return false;
+        }
+
+        if (daemonMode || connectToDaemon || watchMode) {
+            diagnostics.println("ERROR: Daemon and watch options are not supported for compile requests");
+            return false;
+        }
+
+        return compile(diagnostics);
+    }
+
+    boolean compile(PrintStream diagnosticsStream) throws IOException {
         var start = System.nanoTime();
+        program = null;
 
         // Start processing input file
         final String inputString;
@@ -49,7 +107,8 @@ public class InputParser {
         } catch (IOException e) {
             LOGGER.error("An error occurred while trying to read {}: {}", inputFilePath, e.getMessage());
             LOGGER.debug("Stacktrace:", e);
-            return;
+            diagnosticsStream.printf("ERROR: Could not read %s%n", inputFilePath);
+            return false;
         }
         var bmlParser = Measurements.measure("Preparing parser", () -> Parser.bmlParser(inputString));
 
@@ -58,11 +117,12 @@ public class InputParser {
         bmlParser.addErrorListener(syntaxErrorListener);
 
         var tree = Measurements.measure("Lexing & Parsing", bmlParser::program);
+        program = tree;
         var containsError = false;
 
-        // Report syntax errors to stderr
+        // Report syntax errors
         for (var diagnostic : syntaxErrorListener.getCollectedSyntaxErrors()) {
-            System.err.printf("%s line %s: %s%n", diagnostic.getSeverity().name().toUpperCase(),
+            diagnosticsStream.printf("%s line %s: %s%n", diagnostic.getSeverity().name().toUpperCase(),
                     diagnostic.getRange().getStart().getLine(),
                     diagnostic.getMessage());
 
@@ -83,9 +143,9 @@ public class InputParser {
         }
         var diagnostics = diagnosticsCollector.getCollectedDiagnostics();
 
-        // Report diagnostics to stderr
+        // Report diagnostics
         for (var diagnostic : diagnostics) {
-            System.err.printf("%s line %s: %s%n", diagnostic.getSeverity().name().toUpperCase(),
+            diagnosticsStream.printf("%s line %s: %s%n", diagnostic.getSeverity().name().toUpperCase(),
                     diagnostic.getRange().getStart().getLine(),
                     diagnostic.getMessage());
 
@@ -96,8 +156,34 @@ public class InputParser {
 
         // We only invoke code generation if we did not encounter _errors_
         if (!containsError) {
-            new ProjectGenerator(outputDir, outputPackage, outputFormat, cachingEnabled).invokeCodeGeneration(tree, start);
+            new ProjectGenerator(outputDir, outputPackage, outputFormat, cachingEnabled, watchMode).invokeCodeGeneration(tree, start);
+        }
+
+        return !containsError;
+    }
+
+    /**
+     * @return the parse tree of the last compilation, null if the input file could not be read.
+     */
+    BMLParser.ProgramContext program() {
+        return program;
+    }
+
+    /**
+     * The daemon does not share our working directory, so we have to send absolute paths.
+     */
+    private String[] daemonArguments() {
+        var args = new ArrayList<>(List.of("-i", new File(inputFilePath).getAbsolutePath(),
+                "-o", new File(outputDir).getAbsolutePath(),
+                "-f", outputFormat));
+        if (!outputPackage.isEmpty()) {
+            args.addAll(List.of("-p", outputPackage));
         }
+        if (cachingEnabled) {
+            args.add("-c");
+        }
+
+        return args.toArray(String[]::new);
     }
 
     private Options initOptions() {
@@ -107,7 +193,6 @@ public class InputParser {
                 .longOpt("input")
                 .argName("path")
                 .hasArg()
-                .required()
                 .desc("define input BML file, path can be relative to executable or absolute")
                 .build();
         options.addOption(inputOption);
@@ -132,7 +217,6 @@ public class InputParser {
                 .longOpt("format")
                 .argName("jar|java")
                 .hasArg()
-                .required()
                 .desc("format of the output, either JAR or Java")
                 .build();
         options.addOption(formatOption);
@@ -143,6 +227,32 @@ public class InputParser {
                 .build();
         options.addOption(cacheOption);
 
+        var daemonOption = Option.builder("d")
+                .longOpt("daemon")
+                .desc("keep the compiler alive and accept compile requests on a local socket (see --port)")
+                .build();
+        options.addOption(daemonOption);
+
+        var connectOption = Option.builder()
+                .longOpt("connect")
+                .desc("send the compile request to a running compiler daemon (see --daemon)")
+                .build();
+        options.addOption(connectOption);
+
+        var watchOption = Option.builder("w")
+                .longOpt("watch")
+                .desc("recompile whenever the input file or local files it references (e.g., training data) change")
+                .build();
+        options.addOption(watchOption);
+
+        var portOption = Option.builder()
+                .longOpt("port")
+                .argName("port")
+                .hasArg()
+                .desc("local port of the compiler daemon, defaults to %d".formatted(CompilerDaemon.DEFAULT_PORT))
+                .build();
+        options.addOption(portOption);
+
         return options;
     }
 
@@ -153,5 +263,28 @@ public class InputParser {
         inputFilePath = cmd.getOptionValue("input");
         outputFormat = cmd.getOptionValue("format");
         cachingEnabled = cmd.hasOption("cache");
+        daemonMode = cmd.hasOption("daemon");
+        connectToDaemon = cmd.hasOption("connect");
+        watchMode = cmd.hasOption("watch");
+
+        try {
+            daemonPort = cmd.hasOption("port") ? Integer.parseInt(cmd.getOptionValue("port")) : CompilerDaemon.DEFAULT_PORT;
+        } catch (NumberFormatException e) {
+            throw new ParseException("Invalid port: " + cmd.getOptionValue("port"));
+        }
+
+        // Input and format are only required when we actually compile something
+        if (!daemonMode) {
+            var missingOptions = new ArrayList<String>();
+            if (inputFilePath == null) {
+                missingOptions.add("i");
+            }
+            if (outputFormat == null) {
+                missingOptions.add("f");
+            }
+            if (!missingOptions.isEmpty()) {
+                throw new MissingOptionException(missingOptions);
+            }
+        }
     }
 }
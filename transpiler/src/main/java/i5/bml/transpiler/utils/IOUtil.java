@@ -17,6 +17,7 @@ import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Objects;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
@@ -54,6 +55,59 @@ public class IOUtil {
         directoryToBeDeleted.delete();
     }
 
+    /**
+     * Makes <code>target</code> mirror <code>source</code>, but only writes files whose content actually differs.
+     * Unchanged files keep their timestamps, so incremental builds (e.g., Gradle) only pick up what changed.
+     *
+     * @param source directory to mirror.
+     * @param target directory that is updated, created if it does not exist.
+     * @return number of files that have been written or deleted.
+     */
+    public static int syncDirectory(File source, File target) throws IOException {
+        var changedFiles = 0;
+        if (target.isFile()) {
+            FileUtils.forceDelete(target);
+        }
+        target.mkdirs();
+
+        var sourceChildren = Objects.requireNonNullElse(source.listFiles(), new File[0]);
+        var sourceNames = new HashSet<String>();
+        for (var sourceChild : sourceChildren) {
+            sourceNames.add(sourceChild.getName());
+            var targetChild = new File(target, sourceChild.getName());
+            if (sourceChild.isDirectory()) {
+                changedFiles += syncDirectory(sourceChild, targetChild);
+            } else if (copyIfChanged(sourceChild, targetChild)) {
+                ++changedFiles;
+            }
+        }
+
+        // Remove what is no longer generated
+        for (var targetChild : Objects.requireNonNullElse(target.listFiles(), new File[0])) {
+            if (!sourceNames.contains(targetChild.getName())) {
+                changedFiles += targetChild.isDirectory() ? FileUtils.listFiles(targetChild, null, true).size() : 1;
+                deleteDirectory(targetChild);
+            }
+        }
+
+        return changedFiles;
+    }
+
+    /**
+     * @return true if <code>target</code> had to be written, false if it already had the same content.
+     */
+    public static boolean copyIfChanged(File source, File target) throws IOException {
+        if (target.isFile() && FileUtils.contentEquals(source, target)) {
+            return false;
+        }
+
+        if (target.isDirectory()) {
+            deleteDirectory(target);
+        }
+        FileUtils.copyFile(source, target, false);
+        return true;
+    }
+
     public static void copyFiles(String resourceName, File destDir, String outputPackage, Predicate<String> dirFilter) {
         var resource = IOUtil.class.getClassLoader().getResource(resourceName);
         if (resource == null) {
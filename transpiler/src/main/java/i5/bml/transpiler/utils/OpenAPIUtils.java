@@ -1,95 +1,203 @@
 package i5.bml.transpiler.utils;
 
 import i5.bml.parser.utils.Measurements;
+import io.swagger.codegen.v3.ClientOptInput;
+import io.swagger.codegen.v3.ClientOpts;
+import io.swagger.codegen.v3.CodegenConfigLoader;
+import io.swagger.codegen.v3.CodegenConstants;
+import io.swagger.codegen.v3.DefaultGenerator;
+import io.swagger.v3.core.util.Json;
+import io.swagger.v3.oas.models.OpenAPI;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
-import java.util.Arrays;
-import java.util.stream.Collectors;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class OpenAPIUtils {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OpenAPIUtils.class);
 
+    /**
+     * Supporting files of the Java client that the generated bot actually needs (i.e., no build files, docs, etc.)
+     */
+    private static final Set<String> SUPPORTING_FILES = Set.of("ApiKeyAuth.java", "Authentication.java",
+            "HttpBasicAuth.java", "OAuth.java", "OAuthFlow.java", "ApiCallback.java", "ApiClient.java", "ApiException.java",
+            "ApiResponse.java", "Configuration.java", "GzipRequestInterceptor.java", "JSON.java", "Pair.java",
+            "ProgressRequestBody.java", "ProgressResponseBody.java", "StringUtil.java");
+
+    private static final String GENERATOR_POM_PROPERTIES = "META-INF/maven/io.swagger.codegen.v3/swagger-codegen-generators/pom.properties";
+
+    private static final String GENERATOR_VERSION = generatorVersion();
+
+    /**
+     * Bump whenever we change what ends up in a cache entry (e.g., the set of supporting files)
+     */
+    private static final int CACHE_FORMAT_VERSION = 1;
+
+    /**
+     * Content-addressed cache of generated clients, one directory per client containing its Java sources
+     */
+    private static final File CACHE_DIR = new File(System.getProperty("user.home"), ".bml/cache/openapi");
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /**
+     * Client code generation is mostly template rendering and file I/O, so we can generate the clients of several
+     * OpenAPI components in parallel. Daemon threads, since the compiler should not wait for an idle pool on exit.
+     */
+    private static final ExecutorService CODE_GENERATION_POOL = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                var thread = new Thread(r, "openapi-codegen-" + THREAD_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
     private OpenAPIUtils() {}
 
-    public static void generateOpenAPIClientCode(String openAPISpec, String outputPackage, String apiName, String botOutputPath) {
-        var swaggerBinary = "swagger-codegen-cli-3.0.36.jar";
-        var url = OpenAPIUtils.class.getClassLoader().getResource(swaggerBinary);
-        if (url == null) {
-            LOGGER.error("Could not find {} in resources folder", swaggerBinary);
-            return;
+    /**
+     * Generates the Java client for an OpenAPI component in the background. We run swagger-codegen in-process on the
+     * model that the parser already produced during semantic analysis, hence, there is no need to spawn a JVM or to
+     * fetch and parse the specification again.
+     * <p>
+     * Generated clients are cached (see {@link #CACHE_DIR}), a client only depends on the specification, the package
+     * it is generated into, and the generator version. Unchanged specifications are therefore only copied.
+     *
+     * @param openAPISpec   specification text of the component, used to look up the cached client.
+     * @param openAPI       parsed specification of the component.
+     * @param outputPackage package of the generated bot.
+     * @param apiName       name of the client, used as package name for the generated client.
+     * @param botOutputPath source root of the generated bot.
+     * @return future that completes when the client code has been written to the bot output path.
+     */
+    public static CompletableFuture<Void> generateOpenAPIClientCode(String openAPISpec, OpenAPI openAPI, String outputPackage,
+                                                                    String apiName, String botOutputPath) {
+        return CompletableFuture.runAsync(() -> Measurements.measure("OpenAPI code generation (%s)".formatted(apiName),
+                () -> generateClientCode(openAPISpec, openAPI, outputPackage, apiName, botOutputPath)), CODE_GENERATION_POOL);
+    }
+
+    private static void generateClientCode(String openAPISpec, OpenAPI openAPI, String outputPackage, String apiName,
+                                           String botOutputPath) {
+        var clientPackage = outputPackage.isEmpty() ? "openapi.%s".formatted(apiName) : "%s.openapi.%s".formatted(outputPackage, apiName);
+        var sourceRoot = new File(botOutputPath.replaceFirst("/src/main/java", ""), "src/main/java");
+
+        File stagingDir = null;
+        try {
+            var cacheEntry = new File(CACHE_DIR, cacheKey(openAPISpec, clientPackage));
+            if (cacheEntry.isDirectory()) {
+                LOGGER.info("Using cached OpenAPI client code for {}", apiName);
+                FileUtils.copyDirectory(cacheEntry, sourceRoot);
+                return;
+            }
+
+            if (!CACHE_DIR.isDirectory() && !CACHE_DIR.mkdirs()) {
+                // No cache available, generate straight into the bot
+                LOGGER.warn("Could not create OpenAPI client cache {}", CACHE_DIR);
+                generateClientSources(openAPI, clientPackage, apiName, sourceRoot);
+                return;
+            }
+
+            // We stage the entry next to its final location, so we can atomically move it into place. Partially
+            // written entries are never visible, and concurrent compilers generating the same client do not collide.
+            stagingDir = Files.createTempDirectory(CACHE_DIR.toPath(), cacheEntry.getName() + ".").toFile();
+            generateClientSources(openAPI, clientPackage, apiName, stagingDir);
+            try {
+                Files.move(stagingDir.toPath(), cacheEntry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                LOGGER.debug("OpenAPI client {} has been cached concurrently", cacheEntry.getName());
+            }
+
+            FileUtils.copyDirectory(cacheEntry, sourceRoot);
+        } catch (Exception e) {
+            LOGGER.error("Failed to generate OpenAPI client code for {}: {}", apiName, e.getMessage());
+            LOGGER.debug("Stacktrace:", e);
+        } finally {
+            if (stagingDir != null && stagingDir.exists()) {
+                IOUtil.deleteDirectory(stagingDir);
+            }
         }
+    }
 
-        File specFile = null;
+    private static void generateClientSources(OpenAPI openAPI, String clientPackage, String apiName, File destDir) throws IOException {
+        File tempDir = null;
         try {
-            specFile = File.createTempFile(apiName, "json");
-            Files.write(specFile.toPath(), openAPISpec.getBytes());
-        } catch (IOException e) {
-            LOGGER.error("Failed to create temporary spec file");
-            return;
+            // swagger-codegen always emits a whole project (build files, docs, ...), we only pick the sources we need
+            tempDir = Files.createTempDirectory(apiName).toFile();
+
+            var config = CodegenConfigLoader.forName("java");
+            config.setOutputDir(tempDir.getAbsolutePath());
+            config.additionalProperties().put(CodegenConstants.API_PACKAGE, clientPackage + ".apis");
+            config.additionalProperties().put(CodegenConstants.MODEL_PACKAGE, clientPackage + ".models");
+            config.additionalProperties().put(CodegenConstants.INVOKER_PACKAGE, clientPackage);
+            config.additionalProperties().put(CodegenConstants.HIDE_GENERATION_TIMESTAMP, true);
+
+            var generator = new DefaultGenerator();
+            // Instead of system properties (like the CLI does), which would be shared by concurrent generations
+            generator.setGeneratorPropertyDefault(CodegenConstants.MODEL_TESTS, "false");
+            generator.setGeneratorPropertyDefault(CodegenConstants.MODEL_DOCS, "false");
+            generator.setGeneratorPropertyDefault(CodegenConstants.API_TESTS, "false");
+            generator.setGeneratorPropertyDefault(CodegenConstants.API_DOCS, "false");
+            generator.opts(new ClientOptInput().opts(new ClientOpts()).openAPI(copyOf(openAPI)).config(config));
+            generator.generate();
+
+            var generatedSources = new File(tempDir, "src/main/java");
+            var supportingFileFilter = FileFilterUtils.or(FileFilterUtils.directoryFileFilter(),
+                    FileFilterUtils.asFileFilter(f -> !f.getParentFile().getName().equals(apiName) || SUPPORTING_FILES.contains(f.getName())));
+            FileUtils.copyDirectory(generatedSources, destDir, supportingFileFilter);
+        } finally {
+            if (tempDir != null) {
+                IOUtil.deleteDirectory(tempDir);
+            }
         }
+    }
 
-        var modifiedOutputPackage = outputPackage.isEmpty() ? "" : ".%s.".formatted(outputPackage);
-
-        var command = System.getenv("JAVA_HOME") +
-                " " +
-                "-DhideGenerationTimestamp=false " +
-                "-DsupportingFiles=ApiKeyAuth.java,Authentication.java,HttpBasicAuth.java,OAuth.java," +
-                "OAuthFlow.java,ApiCallback.java,ApiClient.java,ApiException.java,ApiResponse.java," +
-                "Configuration.java,GzipRequestInterceptor.java,JSON.java,Pair.java,ProgressRequestBody.java," +
-                "ProgressResponseBody.java,StringUtil.java " +
-                "-DmodelDocs=false " +
-                "-DapiDocs=false " +
-                "-Dapis " +
-                "-DapiTests=false " +
-                "-Dmodels " +
-                "-DmodelTests=false " +
-                "-jar %s ".formatted(botOutputPath + "../../../" + swaggerBinary) +
-                "generate " +
-                "--api-package %sopenapi.%s.apis ".formatted(modifiedOutputPackage, apiName) +
-//                "-i %s ".formatted(specFile.getAbsolutePath()) +
-                "-i %s ".formatted(openAPISpec) +
-                "-l java " +
-                "--model-package %sopenapi.%s.models ".formatted(modifiedOutputPackage, apiName) +
-                "-o %s".formatted(botOutputPath.replaceFirst("/src/main/java", ""));
-
-//        var command = new String[]{System.getenv("JAVA_HOME"),
-//                "-DhideGenerationTimestamp=false",
-//                "-DsupportingFiles=ApiKeyAuth.java,Authentication.java,HttpBasicAuth.java,OAuth.java," +
-//                        "OAuthFlow.java,ApiCallback.java,ApiClient.java,ApiException.java,ApiResponse.java," +
-//                        "Configuration.java,GzipRequestInterceptor.java,JSON.java,Pair.java,ProgressRequestBody.java," +
-//                        "ProgressResponseBody.java,StringUtil.java",
-//                "-DmodelDocs=false",
-//                "-DapiDocs=false",
-//                "-Dapis",
-//                "-DapiTests=false",
-//                "-Dmodels",
-//                "-DmodelTests=false",
-//                "-jar %s".formatted(url.getPath()),
-//                "generate",
-//                "--api-package %sopenapi.%s.apis".formatted(modifiedOutputPackage, apiName),
-////                "-i %s ".formatted(specFile.getAbsolutePath()) +
-//                "-i %s".formatted(openAPISpec),
-//                "-l java",
-//                "--model-package %sopenapi.%s.models ".formatted(modifiedOutputPackage, apiName),
-//                "-o %s".formatted(botOutputPath.replaceFirst("/src/main/java", ""))};
-
-        Measurements.measure("OpenAPI code generation", () -> {
-            try {
-                // We synchronize the generation to make sure that we do not start compilation without having all the
-                // necessary code generated
-                var process = Runtime.getRuntime().exec(command);
-                process.onExit().get();
-                if (process.exitValue() != 0) {
-                    var errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-                    LOGGER.error("Failed to execute swagger code generation:\n{}", errorReader.lines().collect(Collectors.joining()));
-                }
-            } catch (Exception e) {
-                LOGGER.error("Failed to execute swagger code generation", e);
+    /**
+     * The generator adds vendor extensions to the model it generates from, while the parser shares parsed models
+     * across compilations (and components with the same specification). Every generation therefore gets its own copy.
+     */
+    private static OpenAPI copyOf(OpenAPI openAPI) throws IOException {
+        var mapper = Json.mapper();
+        return mapper.readValue(mapper.writeValueAsBytes(openAPI), OpenAPI.class);
+    }
+
+    private static String cacheKey(String openAPISpec, String clientPackage) throws NoSuchAlgorithmException {
+        var digest = MessageDigest.getInstance("SHA-256");
+        for (var part : new String[]{openAPISpec, clientPackage, GENERATOR_VERSION, String.valueOf(CACHE_FORMAT_VERSION)}) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            // Separator, so that the parts cannot shift into each other
+            digest.update((byte) 0);
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String generatorVersion() {
+        try (var stream = OpenAPIUtils.class.getClassLoader().getResourceAsStream(GENERATOR_POM_PROPERTIES)) {
+            if (stream != null) {
+                var properties = new Properties();
+                properties.load(stream);
+                return properties.getProperty("version", "unknown");
             }
-        });
+        } catch (IOException e) {
+            LOGGER.debug("Could not determine swagger-codegen version", e);
+        }
+
+        return "unknown";
     }
 }
@@ -16,12 +16,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 
 @SuppressWarnings({"OptionalGetWithoutIsPresent", "ResultOfMethodCallIgnored"})
@@ -31,6 +33,20 @@ public class PrinterUtil {
 
     private static final Printer PRINTER = new DefaultPrettyPrinter(JavaTreeVisitor::new, new DefaultPrinterConfiguration());
 
+    private static final int MAX_CACHED_SOURCES = 256;
+
+    /**
+     * Parsed compilation units by source text. Most files we parse are freshly copied bot templates that are identical
+     * across compilations, so a long-running compiler (e.g., in daemon mode) does not have to parse them again.
+     * Entries are never handed out directly, callers always receive a clone they are free to modify.
+     */
+    private static final Map<String, CompilationUnit> PARSED_SOURCES = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompilationUnit> eldest) {
+            return size() > MAX_CACHED_SOURCES;
+        }
+    });
+
     private PrinterUtil() {}
 
     static {
@@ -61,8 +77,8 @@ public class PrinterUtil {
 
         CompilationUnit compilationUnit;
         try {
-            compilationUnit = StaticJavaParser.parse(javaFile);
-        } catch (FileNotFoundException e) {
+            compilationUnit = parse(javaFile);
+        } catch (IOException e) {
             LOGGER.error("Error reading class {}", javaFilePath, ExceptionUtils.getRootCause(e));
             return;
         }
@@ -77,6 +93,20 @@ public class PrinterUtil {
         }
     }
 
+    /**
+     * @return a compilation unit of the given Java file that the caller is free to modify.
+     */
+    public static CompilationUnit parse(File javaFile) throws IOException {
+        var source = Files.readString(javaFile.toPath());
+        var compilationUnit = PARSED_SOURCES.get(source);
+        if (compilationUnit == null) {
+            compilationUnit = StaticJavaParser.parse(source);
+            PARSED_SOURCES.put(source, compilationUnit);
+        }
+
+        return compilationUnit.clone();
+    }
+
     private static void sortClassMembersAndImports(ClassOrInterfaceDeclaration clazz) {
         clazz.getMembers().sort(Comparator.comparing((BodyDeclaration<?> t) -> t.isMethodDeclaration())
                 .thenComparing(BodyDeclaration::isConstructorDeclaration)
@@ -101,9 +131,9 @@ public class PrinterUtil {
         var javaFilePath = "%s/%s.java".formatted(path, className);
         try {
             var javaFile = new File(javaFilePath);
-            CompilationUnit compilationUnit = StaticJavaParser.parse(javaFile);
+            CompilationUnit compilationUnit = parse(javaFile);
             return compilationUnit.getClassByName(className).get();
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             LOGGER.error("Error reading class {}", javaFilePath, ExceptionUtils.getRootCause(e));
             return new ClassOrInterfaceDeclaration();
         }
@@ -1,5 +1,6 @@
 package i5.bml.transpiler.utils;
 
+import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.Modifier;
 import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
@@ -7,6 +8,7 @@ import com.github.javaparser.ast.body.FieldDeclaration;
 import com.github.javaparser.ast.expr.Expression;
 import com.github.javaparser.ast.expr.MethodCallExpr;
 import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
 import com.github.javaparser.ast.expr.StringLiteralExpr;
 import com.github.javaparser.ast.stmt.ReturnStmt;
 import org.antlr.v4.runtime.RuleContext;
@@ -75,6 +77,26 @@ public class Utils {
         }
     }
 
+    /**
+     * @param kind `map`, `list`, or `number`, see {@link i5.bml.transpiler.bot.cluster.SharedStateBackend}.
+     * @return expression that looks up the global component in the state shared by all instances of the bot.
+     */
+    public static MethodCallExpr generateSharedStateAccess(String kind, String componentName) {
+        var state = new MethodCallExpr(new MethodCallExpr(new NameExpr("Cluster"), "current"), "state");
+        return new MethodCallExpr(state, kind, new NodeList<>(new StringLiteralExpr(componentName)));
+    }
+
+    /**
+     * @param javaType generic type, e.g., <code>Map&lt;String, Long&gt;</code>.
+     * @return expression that evaluates to the {@link java.lang.reflect.Type} of <code>javaType</code>, requires an
+     * import of Gson's <code>TypeToken</code>.
+     */
+    public static MethodCallExpr generateTypeOf(String javaType) {
+        var typeToken = new ObjectCreationExpr(null, StaticJavaParser.parseClassOrInterfaceType("TypeToken<%s>".formatted(javaType)),
+                null, new NodeList<>(), new NodeList<>());
+        return new MethodCallExpr(typeToken, "getType");
+    }
+
     public static <T> T findParentContext(RuleContext currentCtx, Class<T> parentCtxClass) {
         var currParent = currentCtx;
         while (currParent != null && !parentCtxClass.isInstance(currParent)) {
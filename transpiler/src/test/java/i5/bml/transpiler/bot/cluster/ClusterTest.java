@@ -0,0 +1,86 @@
+package i5.bml.transpiler.bot.cluster;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+class ClusterTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Test
+    void testSingleInstanceOwnsEverything() {
+        var cluster = new Cluster(null, new InMemoryStateBackend(), TIMEOUT);
+        Assertions.assertFalse(cluster.isPartitioned());
+        Assertions.assertTrue(cluster.owns(42L));
+        Assertions.assertFalse(cluster.forwardIfForeign(42L, "test", () -> Assertions.fail("Must not serialize")));
+    }
+
+    @Test
+    void testEveryChatHasExactlyOneOwner() {
+        var state = new InMemoryStateBackend();
+        var instances = List.of(new Cluster("a", state, TIMEOUT), new Cluster("b", state, TIMEOUT), new Cluster("c", state, TIMEOUT));
+        // Twice, such that every instance sees the heartbeats of all others
+        instances.forEach(Cluster::refresh);
+        instances.forEach(Cluster::refresh);
+
+        for (long chatId = 0; chatId < 1000; chatId++) {
+            final var id = chatId;
+            Assertions.assertEquals(1, instances.stream().filter(c -> c.owns(id)).count());
+        }
+    }
+
+    @Test
+    void testForeignUpdatesReachOwner() {
+        var state = new InMemoryStateBackend();
+        var a = new Cluster("a", state, TIMEOUT);
+        var b = new Cluster("b", state, TIMEOUT);
+        a.refresh();
+        b.refresh();
+        a.refresh();
+
+        var received = new ArrayList<String>();
+        a.onForwarded("test", received::add);
+        b.onForwarded("test", received::add);
+
+        var chatId = findChatOwnedBy(a, b);
+        Assertions.assertFalse(a.forwardIfForeign(chatId, "test", () -> "own"));
+        Assertions.assertTrue(b.forwardIfForeign(chatId, "test", () -> "first\nline"));
+        Assertions.assertTrue(b.forwardIfForeign(chatId, "test", () -> "second"));
+
+        b.receiveForwarded();
+        Assertions.assertTrue(received.isEmpty());
+        a.receiveForwarded();
+        Assertions.assertEquals(List.of("first\nline", "second"), received);
+    }
+
+    @Test
+    void testChatsMoveWhenInstanceStops() throws InterruptedException {
+        var state = new InMemoryStateBackend();
+        var timeout = Duration.ofMillis(200);
+        var a = new Cluster("a", state, timeout);
+        var b = new Cluster("b", state, timeout);
+        a.refresh();
+        b.refresh();
+        a.refresh();
+
+        var chatId = findChatOwnedBy(b, a);
+        Assertions.assertFalse(a.owns(chatId));
+
+        // `b` stops sending heartbeats
+        Thread.sleep(timeout.toMillis() * 2);
+        a.refresh();
+        Assertions.assertTrue(a.owns(chatId));
+    }
+
+    private static long findChatOwnedBy(Cluster owner, Cluster other) {
+        for (long chatId = 0; ; chatId++) {
+            if (owner.owns(chatId) && !other.owns(chatId)) {
+                return chatId;
+            }
+        }
+    }
+}
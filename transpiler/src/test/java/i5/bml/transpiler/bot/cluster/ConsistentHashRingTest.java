@@ -0,0 +1,57 @@
+package i5.bml.transpiler.bot.cluster;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 30_000;
+
+    @Test
+    void testEmptyRing() {
+        Assertions.assertNull(new ConsistentHashRing<String>(16).nodeFor(42L));
+    }
+
+    @Test
+    void testAssignmentDoesNotDependOnInsertionOrder() {
+        var ring = new ConsistentHashRing<>(List.of("a", "b", "c"), 64);
+        var reversedRing = new ConsistentHashRing<>(List.of("c", "b", "a"), 64);
+        for (long chatId = 0; chatId < KEYS; chatId++) {
+            Assertions.assertEquals(ring.nodeFor(chatId), reversedRing.nodeFor(chatId));
+        }
+    }
+
+    @Test
+    void testKeysAreSpreadEvenly() {
+        var ring = new ConsistentHashRing<>(List.of("a", "b", "c"), 128);
+        var keysPerNode = new HashMap<String, Integer>();
+        for (long chatId = 0; chatId < KEYS; chatId++) {
+            keysPerNode.merge(ring.nodeFor(chatId), 1, Integer::sum);
+        }
+
+        Assertions.assertEquals(3, keysPerNode.size());
+        keysPerNode.values().forEach(keys -> Assertions.assertTrue(keys > KEYS / 4 && keys < KEYS / 2,
+                "Unbalanced ring: %s".formatted(keysPerNode)));
+    }
+
+    @Test
+    void testRemovingNodeOnlyMovesItsKeys() {
+        var ring = new ConsistentHashRing<>(List.of("a", "b", "c"), 128);
+        var before = new HashMap<Long, String>();
+        for (long chatId = 0; chatId < KEYS; chatId++) {
+            before.put(chatId, ring.nodeFor(chatId));
+        }
+
+        ring.remove("b");
+        before.forEach((chatId, node) -> {
+            if (node.equals("b")) {
+                Assertions.assertNotEquals("b", ring.nodeFor(chatId));
+            } else {
+                Assertions.assertEquals(node, ring.nodeFor(chatId));
+            }
+        });
+    }
+}
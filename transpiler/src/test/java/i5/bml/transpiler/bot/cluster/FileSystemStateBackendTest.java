@@ -0,0 +1,119 @@
+package i5.bml.transpiler.bot.cluster;
+
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.Type;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+class FileSystemStateBackendTest {
+
+    private static final Type SUBSCRIPTIONS = new TypeToken<Map<String, Long>>() {}.getType();
+
+    private static final Type NAMES = new TypeToken<List<String>>() {}.getType();
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Like an OpenAPI model, which is not {@link java.io.Serializable}
+     */
+    private static class Pet {
+
+        private long id;
+
+        private String name;
+
+        private Pet(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    @Test
+    void testComponentsAreShared() {
+        // Two backends on the same directory, like two instances on a shared volume
+        var first = new FileSystemStateBackend(directory);
+        var second = new FileSystemStateBackend(directory);
+
+        first.<String, Long>map("subscriptions", SUBSCRIPTIONS).put("alice", 1L);
+        Assertions.assertEquals(1L, second.<String, Long>map("subscriptions", SUBSCRIPTIONS).get("alice"));
+        Assertions.assertEquals(Map.of("alice", 1L), Map.copyOf(second.<String, Long>map("subscriptions", SUBSCRIPTIONS)));
+        second.map("subscriptions", SUBSCRIPTIONS).remove("alice");
+        Assertions.assertTrue(first.map("subscriptions", SUBSCRIPTIONS).isEmpty());
+
+        first.<String>list("names", NAMES).add("a");
+        second.<String>list("names", NAMES).add("b");
+        Assertions.assertEquals(List.of("a", "b"), new ArrayList<>(first.<String>list("names", NAMES)));
+
+        var number = first.number("counter", 5);
+        // Initial value only applies to numbers that do not exist yet
+        Assertions.assertEquals(5, second.number("counter", 0).get());
+        Assertions.assertEquals(8, number.updateAndGet(n -> n + 3));
+        Assertions.assertEquals(8, second.number("counter", 0).get());
+    }
+
+    @Test
+    void testValuesDoNotHaveToBeSerializable() {
+        var type = new TypeToken<Map<Long, Pet>>() {}.getType();
+        new FileSystemStateBackend(directory).<Long, Pet>map("pets", type).put(1L, new Pet(1, "Rex"));
+        var pet = new FileSystemStateBackend(directory).<Long, Pet>map("pets", type).get(1L);
+        Assertions.assertEquals("Rex", pet.name);
+
+        var json = new JsonObject();
+        json.addProperty("name", "Rex");
+        var jsonType = new TypeToken<List<JsonObject>>() {}.getType();
+        new FileSystemStateBackend(directory).<JsonObject>list("json", jsonType).add(json);
+        Assertions.assertEquals(json, new FileSystemStateBackend(directory).<JsonObject>list("json", jsonType).get(0));
+    }
+
+    @Test
+    void testConcurrentUpdatesAreNotLost() throws InterruptedException {
+        var first = new FileSystemStateBackend(directory).number("counter", 0);
+        var second = new FileSystemStateBackend(directory).number("counter", 0);
+
+        var executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 100; i++) {
+            var number = i % 2 == 0 ? first : second;
+            executor.execute(() -> number.updateAndGet(n -> n + 1));
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(100, first.get());
+    }
+
+    @Test
+    void testInboxKeepsOrder() {
+        var backend = new FileSystemStateBackend(directory);
+        Assertions.assertEquals(List.of(), backend.receive("a"));
+
+        backend.send("a", "first");
+        backend.send("a", "second\nline");
+        backend.send("b", "other");
+
+        Assertions.assertEquals(List.of("first", "second\nline"), backend.receive("a"));
+        Assertions.assertEquals(List.of(), backend.receive("a"));
+        Assertions.assertEquals(List.of("other"), backend.receive("b"));
+    }
+
+    @Test
+    void testLiveInstances() {
+        var backend = new FileSystemStateBackend(directory);
+        backend.heartbeat("instance/1");
+        backend.heartbeat("instance-2");
+
+        Assertions.assertEquals(2, backend.liveInstances(Duration.ofSeconds(10)).size());
+        Assertions.assertTrue(backend.liveInstances(Duration.ofSeconds(10)).contains("instance/1"));
+        Assertions.assertTrue(backend.liveInstances(Duration.ZERO).isEmpty());
+    }
+}
@@ -0,0 +1,36 @@
+package i5.bml.transpiler.bot.config;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+class ThreadingModeTest {
+
+    @Test
+    void testFallsBackToPlatformThreads() {
+        Assertions.assertEquals(ThreadingMode.PLATFORM, ThreadingMode.resolve("virtual", false));
+        Assertions.assertEquals(ThreadingMode.VIRTUAL, ThreadingMode.resolve(" Virtual ", true));
+        Assertions.assertEquals(ThreadingMode.PLATFORM, ThreadingMode.resolve("platform", true));
+        Assertions.assertEquals(ThreadingMode.PLATFORM, ThreadingMode.resolve("green", true));
+    }
+
+    @Test
+    void testVirtualModeRunsTasksOnEveryRuntime() throws ExecutionException, InterruptedException, TimeoutException {
+        // Without virtual threads (before Java 21), the executor and the thread factory fall back to platform threads
+        var executor = ThreadingMode.VIRTUAL.newExecutor();
+        try {
+            var isVirtual = CompletableFuture.supplyAsync(() -> Thread.currentThread().toString().startsWith("VirtualThread"), executor);
+            Assertions.assertEquals(ThreadingMode.virtualThreadsAvailable(), isVirtual.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        var ran = new CompletableFuture<Void>();
+        ThreadingMode.VIRTUAL.threadFactory().newThread(() -> ran.complete(null)).start();
+        ran.get(5, TimeUnit.SECONDS);
+    }
+}
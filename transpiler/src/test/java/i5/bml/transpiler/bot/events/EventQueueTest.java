@@ -0,0 +1,176 @@
+package i5.bml.transpiler.bot.events;
+
+import i5.bml.transpiler.bot.events.messenger.MessageEvent;
+import i5.bml.transpiler.bot.events.messenger.MessageEventType;
+import i5.bml.transpiler.bot.events.routines.RoutineEvent;
+import i5.bml.transpiler.bot.threads.Session;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+class EventQueueTest {
+
+    private static MessageEvent message(Object chatId, long arrivalTime) {
+        var event = new MessageEvent(EventSource.TELEGRAM, arrivalTime);
+        event.messageEventType(MessageEventType.USER_SENT_MESSAGE);
+        event.session(new Session(chatId, MessageEventType.USER_SENT_MESSAGE));
+        return event;
+    }
+
+    private static RoutineEvent routine(long arrivalTime) {
+        return new RoutineEvent("routine", () -> {}, arrivalTime);
+    }
+
+    private static List<Event> takeAll(EventQueue queue) throws InterruptedException {
+        var events = new ArrayList<Event>();
+        while (queue.size() > 0) {
+            events.add(queue.take(0));
+        }
+        return events;
+    }
+
+    @Test
+    void testBlockWaitsForSpace() throws InterruptedException {
+        var queue = new EventQueue(1, EventQueue.OverflowPolicy.BLOCK, "");
+        var first = message("a", 1);
+        var second = message("a", 2);
+        queue.put(first);
+
+        var producer = new Thread(() -> queue.put(second));
+        producer.start();
+        producer.join(100);
+        Assertions.assertTrue(producer.isAlive());
+
+        Assertions.assertSame(first, queue.take(0));
+        producer.join(TimeUnit.SECONDS.toMillis(5));
+        Assertions.assertFalse(producer.isAlive());
+        Assertions.assertSame(second, queue.take(0));
+        Assertions.assertEquals(0, queue.droppedEvents());
+    }
+
+    @Test
+    void testBlockDropsEventWhenInterrupted() throws InterruptedException {
+        var queue = new EventQueue(1, EventQueue.OverflowPolicy.BLOCK, "");
+        queue.put(message("a", 1));
+
+        var interrupted = new boolean[1];
+        var producer = new Thread(() -> {
+            queue.put(message("a", 2));
+            interrupted[0] = Thread.currentThread().isInterrupted();
+        });
+        producer.start();
+        producer.interrupt();
+        producer.join(TimeUnit.SECONDS.toMillis(5));
+
+        Assertions.assertTrue(interrupted[0]);
+        Assertions.assertEquals(1, queue.droppedEvents());
+        Assertions.assertEquals(1, queue.size());
+    }
+
+    @Test
+    void testDropOldest() throws InterruptedException {
+        var queue = new EventQueue(2, EventQueue.OverflowPolicy.DROP_OLDEST, "");
+        var events = List.of(message("a", 1), message("b", 2), message("a", 3));
+        events.forEach(queue::put);
+
+        Assertions.assertEquals(1, queue.droppedEvents());
+        Assertions.assertEquals(2, queue.peakSize());
+        Assertions.assertEquals(events.subList(1, 3), takeAll(queue));
+    }
+
+    @Test
+    void testDropRoutinesFirst() throws InterruptedException {
+        var queue = new EventQueue(2, EventQueue.OverflowPolicy.DROP_ROUTINES_FIRST, "");
+        var routine = routine(1);
+        var first = message("a", 2);
+        var second = message("a", 3);
+        queue.put(routine);
+        queue.put(first);
+        queue.put(second);
+        Assertions.assertEquals(List.of(first, second), takeAll(queue));
+
+        // Routines do not displace messages
+        queue.put(first);
+        queue.put(second);
+        queue.put(routine(4));
+        Assertions.assertEquals(List.of(first, second), takeAll(queue));
+
+        // Without routines, the oldest message has to go
+        var third = message("a", 5);
+        queue.put(first);
+        queue.put(second);
+        queue.put(third);
+        Assertions.assertEquals(List.of(second, third), takeAll(queue));
+        Assertions.assertEquals(3, queue.droppedEvents());
+    }
+
+    @Test
+    void testReplyBusyDropsNewEvent() throws InterruptedException {
+        var queue = new EventQueue(1, EventQueue.OverflowPolicy.REPLY_BUSY, "Busy");
+        var first = message("a", 1);
+        queue.put(first);
+        // Without user, there is no one to reply to
+        queue.put(message("a", 2));
+
+        Assertions.assertEquals(1, queue.droppedEvents());
+        Assertions.assertEquals(List.of(first), takeAll(queue));
+    }
+
+    @Test
+    void testEventsOfChatStayInOrderWithinShard() throws InterruptedException {
+        var queue = new EventQueue(1000, 4, EventQueue.OverflowPolicy.BLOCK, "");
+        var events = new ArrayList<MessageEvent>();
+        for (int i = 0; i < 200; i++) {
+            events.add(message(i % 10, i));
+        }
+        events.forEach(queue::put);
+
+        // One consumer per shard, like the dispatcher loops
+        record Taken(int shard, MessageEvent event) {}
+        var taken = new CopyOnWriteArrayList<Taken>();
+        var consumers = new ArrayList<Thread>();
+        for (int shard = 0; shard < queue.shardCount(); shard++) {
+            var index = shard;
+            var consumer = new Thread(() -> {
+                try {
+                    while (true) {
+                        taken.add(new Taken(index, (MessageEvent) queue.take(index)));
+                    }
+                } catch (InterruptedException ignored) {
+                    // Done
+                }
+            });
+            consumer.start();
+            consumers.add(consumer);
+        }
+
+        for (int i = 0; i < 500 && taken.size() < events.size(); i++) {
+            Thread.sleep(10);
+        }
+        consumers.forEach(Thread::interrupt);
+        Assertions.assertEquals(events.size(), taken.size());
+
+        var shardOfChat = new HashMap<Object, Integer>();
+        var lastArrivalOfChat = new HashMap<Object, Long>();
+        for (var t : taken) {
+            var chatId = t.event().session().chatId();
+            Assertions.assertEquals(shardOfChat.computeIfAbsent(chatId, k -> t.shard()), t.shard());
+        }
+        // Consumers of different shards interleave, within a shard, the order is the arrival order
+        for (int shard = 0; shard < queue.shardCount(); shard++) {
+            var index = shard;
+            lastArrivalOfChat.clear();
+            for (var t : taken.stream().filter(t -> t.shard() == index).toList()) {
+                var previous = lastArrivalOfChat.put(t.event().session().chatId(), t.event().arrivalTime());
+                Assertions.assertTrue(previous == null || previous < t.event().arrivalTime());
+            }
+        }
+        Assertions.assertTrue(shardOfChat.values().stream().distinct().count() > 1);
+        Assertions.assertEquals(0, queue.size());
+    }
+}
@@ -0,0 +1,170 @@
+package i5.bml.transpiler.bot.events;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+class PerChatExecutorTest {
+
+    private ExecutorService threadPool;
+
+    private PerChatExecutor chatExecutor;
+
+    @BeforeEach
+    void setUp() {
+        // Several threads, such that tasks of a chat would overtake each other without their mailbox
+        threadPool = Executors.newFixedThreadPool(4);
+        chatExecutor = new PerChatExecutor(threadPool);
+    }
+
+    @AfterEach
+    void tearDown() {
+        threadPool.shutdownNow();
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        // The mailbox is removed right after the last task has run
+        for (int i = 0; i < 500 && chatExecutor.activeChats() > 0; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void testTasksOfChatRunInOrder() throws InterruptedException {
+        var chats = List.of("a", "b", "c");
+        var order = new ConcurrentHashMap<String, List<Integer>>();
+        var done = new CountDownLatch(chats.size() * 100);
+        for (int i = 0; i < 100; i++) {
+            for (var chat : chats) {
+                var task = i;
+                chatExecutor.execute(chat, () -> {
+                    order.computeIfAbsent(chat, k -> new CopyOnWriteArrayList<>()).add(task);
+                    done.countDown();
+                });
+            }
+        }
+
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        var expected = IntStream.range(0, 100).boxed().toList();
+        Assertions.assertEquals(Map.of("a", expected, "b", expected, "c", expected), order);
+    }
+
+    @Test
+    void testChatsRunInParallel() throws InterruptedException {
+        var otherChatRan = new CountDownLatch(1);
+        var done = new CountDownLatch(1);
+        chatExecutor.execute("a", () -> {
+            try {
+                // Only returns if chat b is not stuck behind chat a
+                if (otherChatRan.await(5, TimeUnit.SECONDS)) {
+                    done.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        chatExecutor.execute("b", otherChatRan::countDown);
+
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testIdleChatsAreRemoved() throws InterruptedException {
+        var release = new CountDownLatch(1);
+        var ran = new CopyOnWriteArrayList<String>();
+        chatExecutor.execute("a", () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        chatExecutor.execute("a", () -> ran.add("a2"));
+        Assertions.assertEquals(1, chatExecutor.activeChats());
+
+        release.countDown();
+        awaitIdle();
+        Assertions.assertEquals(0, chatExecutor.activeChats());
+        Assertions.assertEquals(List.of("a2"), ran);
+
+        // A new task of the chat starts a new mailbox
+        var done = new CountDownLatch(1);
+        chatExecutor.execute("a", done::countDown);
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        awaitIdle();
+        Assertions.assertEquals(0, chatExecutor.activeChats());
+    }
+
+    @Test
+    void testFailedTaskDoesNotBlockChat() throws InterruptedException {
+        var done = new CountDownLatch(1);
+        chatExecutor.execute("a", () -> {
+            throw new IllegalStateException("Handler failed");
+        });
+        chatExecutor.execute("a", done::countDown);
+
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testAsyncTaskKeepsOrderOfChat() throws InterruptedException {
+        var order = new CopyOnWriteArrayList<String>();
+        var nlu = new CompletableFuture<Void>();
+        var done = new CountDownLatch(1);
+
+        chatExecutor.executeAsync("a", () -> nlu.thenRun(() -> order.add("a1")));
+        chatExecutor.execute("a", () -> {
+            order.add("a2");
+            done.countDown();
+        });
+
+        // Pending until the first task of the chat has completed
+        Thread.sleep(50);
+        Assertions.assertTrue(order.isEmpty());
+        Assertions.assertEquals(1, chatExecutor.activeChats());
+
+        nlu.complete(null);
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(List.of("a1", "a2"), order);
+    }
+
+    @Test
+    void testPendingAsyncTaskDoesNotHoldThread() throws InterruptedException {
+        // A single thread, such that a task waiting for its completion would block every other chat
+        var singleThread = Executors.newSingleThreadExecutor();
+        try {
+            var singleThreadChatExecutor = new PerChatExecutor(singleThread);
+            var done = new CountDownLatch(1);
+            singleThreadChatExecutor.executeAsync("a", CompletableFuture::new);
+            singleThreadChatExecutor.execute("b", done::countDown);
+
+            Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            singleThread.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailedAsyncTaskReleasesChat() throws InterruptedException {
+        var done = new CountDownLatch(1);
+        chatExecutor.executeAsync("a", () -> CompletableFuture.failedFuture(new IllegalStateException("Rasa is down")));
+        chatExecutor.executeAsync("a", () -> {
+            throw new IllegalStateException("Task failed");
+        });
+        chatExecutor.execute("a", done::countDown);
+
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,126 @@
+package i5.bml.transpiler.bot.events.messenger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+class MessageStreamTest {
+
+    private static class RecordingTarget implements MessageStream.Target {
+
+        private final List<String> calls = new ArrayList<>();
+
+        private boolean available = true;
+
+        private boolean editable = true;
+
+        @Override
+        public Object post(String text) {
+            calls.add("post " + text);
+            return available ? 42 : null;
+        }
+
+        @Override
+        public boolean edit(Object handle, String text, boolean complete) {
+            Assertions.assertEquals(42, handle);
+            calls.add((complete ? "complete " : "edit ") + text);
+            return available && editable;
+        }
+    }
+
+    @Test
+    void testEditsWithEveryUpdate() {
+        var target = new RecordingTarget();
+        var replies = new ArrayList<String>();
+        var stream = new MessageStream("test", target, replies::add, Duration.ZERO);
+
+        stream.append(" ");
+        stream.append("Hello");
+        stream.append(",");
+        stream.append("");
+        stream.append(" world");
+        stream.complete();
+
+        Assertions.assertEquals(List.of("post  Hello", "edit  Hello,", "edit  Hello, world", "complete  Hello, world"), target.calls);
+        Assertions.assertTrue(replies.isEmpty());
+        Assertions.assertEquals(" Hello, world", stream.text());
+    }
+
+    @Test
+    void testUpdateIntervalLimitsEdits() {
+        var target = new RecordingTarget();
+        var stream = new MessageStream("test", target, text -> Assertions.fail(), Duration.ofHours(1));
+
+        for (int i = 0; i < 100; i++) {
+            stream.append(String.valueOf(i % 10));
+        }
+        stream.complete();
+
+        Assertions.assertEquals(2, target.calls.size());
+        Assertions.assertEquals("post 0", target.calls.get(0));
+        Assertions.assertTrue(target.calls.get(1).startsWith("complete 0123456789"));
+    }
+
+    @Test
+    void testFailedFinalEditOfShownTextIsNotSentAgain() {
+        // E.g., Telegram rejects an edit that does not change the message
+        var target = new RecordingTarget();
+        var replies = new ArrayList<String>();
+        var stream = new MessageStream("test", target, replies::add, Duration.ZERO);
+
+        stream.append("Hello");
+        stream.append(" world");
+        target.editable = false;
+        stream.complete();
+
+        Assertions.assertEquals(List.of("post Hello", "edit Hello world", "complete Hello world"), target.calls);
+        Assertions.assertTrue(replies.isEmpty());
+    }
+
+    @Test
+    void testFailedFinalEditOfPartialTextFallsBackToReply() {
+        var target = new RecordingTarget();
+        var replies = new ArrayList<String>();
+        var stream = new MessageStream("test", target, replies::add, Duration.ZERO);
+
+        stream.append("Hello");
+        target.editable = false;
+        stream.append(" world");
+        stream.complete();
+
+        Assertions.assertEquals(List.of("post Hello", "edit Hello world", "complete Hello world"), target.calls);
+        Assertions.assertEquals(List.of("Hello world"), replies);
+    }
+
+    @Test
+    void testFailedPostFallsBackToReply() {
+        var target = new RecordingTarget();
+        target.available = false;
+        var replies = new ArrayList<String>();
+        var stream = new MessageStream("test", target, replies::add, Duration.ZERO);
+
+        stream.append("Hello");
+        stream.append(" world");
+        stream.complete();
+
+        // Posting is only attempted once
+        Assertions.assertEquals(List.of("post Hello"), target.calls);
+        Assertions.assertEquals(List.of("Hello world"), replies);
+    }
+
+    @Test
+    void testWithoutTargetRepliesOnceComplete() {
+        var replies = new ArrayList<String>();
+        var stream = new MessageStream("test", null, replies::add);
+
+        stream.append("Hello");
+        stream.append(" world");
+        Assertions.assertTrue(replies.isEmpty());
+
+        stream.complete();
+        Assertions.assertEquals(List.of("Hello world"), replies);
+    }
+}
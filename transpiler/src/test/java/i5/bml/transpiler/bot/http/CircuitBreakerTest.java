@@ -0,0 +1,149 @@
+package i5.bml.transpiler.bot.http;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+class CircuitBreakerTest {
+
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+
+    private static final long SLOW = Duration.ofSeconds(2).toNanos();
+
+    private static CircuitBreaker breaker(Duration openDuration) {
+        return new CircuitBreaker("test", Duration.ofSeconds(1), 10, 4, 50, 50, openDuration);
+    }
+
+    private static void record(CircuitBreaker breaker, long durationNanos, boolean failed) {
+        var permit = breaker.tryAcquire();
+        Assertions.assertNotNull(permit);
+        permit.record(durationNanos, failed);
+    }
+
+    @Test
+    void testOpensOnFailureRate() {
+        var breaker = breaker(Duration.ofHours(1));
+        record(breaker, FAST, true);
+        record(breaker, FAST, true);
+        record(breaker, FAST, false);
+        // Not enough calls yet
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        record(breaker, FAST, false);
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        Assertions.assertNull(breaker.tryAcquire());
+        Assertions.assertThrows(CircuitBreaker.OpenException.class, () -> breaker.call(() -> "never"));
+        Assertions.assertEquals(2, breaker.rejectedCalls());
+    }
+
+    @Test
+    void testOpensOnSlowCalls() {
+        var breaker = breaker(Duration.ofHours(1));
+        for (int i = 0; i < 10; i++) {
+            record(breaker, i % 3 == 0 ? FAST : SLOW, false);
+            if (breaker.state() == CircuitBreaker.State.OPEN) {
+                Assertions.assertEquals(3, i);
+                return;
+            }
+        }
+        Assertions.fail("Breaker did not open");
+    }
+
+    @Test
+    void testOldCallsLeaveTheWindow() {
+        var breaker = breaker(Duration.ofHours(1));
+        for (int i = 0; i < 4; i++) {
+            record(breaker, FAST, i == 0);
+        }
+        // One failure per 10 calls, with the failure of the first call dropping out
+        for (int i = 0; i < 100; i++) {
+            record(breaker, FAST, i % 10 == 0);
+        }
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void testHalfOpenLetsOneProbeThrough() throws InterruptedException {
+        var breaker = breaker(Duration.ofMillis(20));
+        for (int i = 0; i < 4; i++) {
+            record(breaker, FAST, true);
+        }
+        Assertions.assertNull(breaker.tryAcquire());
+
+        Thread.sleep(40);
+        Assertions.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        var probe = breaker.tryAcquire();
+        Assertions.assertNotNull(probe);
+        // Only one probe at a time
+        Assertions.assertNull(breaker.tryAcquire());
+
+        // Failed probe, open again
+        probe.record(FAST, true);
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        Thread.sleep(40);
+        Assertions.assertEquals("ok", breaker.call(() -> "ok"));
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void testOnlyProbeDecidesHalfOpen() throws InterruptedException {
+        var breaker = breaker(Duration.ofMillis(20));
+        // Permitted before the breaker opened, still running when it becomes half-open
+        var earlyFailure = breaker.tryAcquire();
+        var earlySuccess = breaker.tryAcquire();
+        for (int i = 0; i < 4; i++) {
+            record(breaker, FAST, true);
+        }
+
+        Thread.sleep(40);
+        var probe = breaker.tryAcquire();
+        Assertions.assertNotNull(probe);
+
+        earlySuccess.record(FAST, false);
+        Assertions.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        Assertions.assertNull(breaker.tryAcquire());
+
+        probe.record(FAST, false);
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        // Does not count once the breaker closed again, otherwise two of the first four calls failed
+        earlyFailure.record(FAST, true);
+        for (int i = 0; i < 4; i++) {
+            record(breaker, FAST, i == 0);
+        }
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void testFailedCallsAreRecorded() {
+        var breaker = breaker(Duration.ofHours(1));
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertThrows(IOException.class, () -> breaker.call(() -> {
+                throw new IOException("Connection refused");
+            }));
+        }
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        var rejected = breaker.callAsync(() -> CompletableFuture.completedFuture("never"));
+        var e = Assertions.assertThrows(ExecutionException.class, rejected::get);
+        Assertions.assertInstanceOf(CircuitBreaker.OpenException.class, e.getCause());
+    }
+
+    @Test
+    void testAsyncCallsAreRecordedOnCompletion() {
+        var breaker = breaker(Duration.ofHours(1));
+        var pending = new CompletableFuture<String>();
+        for (int i = 0; i < 4; i++) {
+            breaker.callAsync(() -> pending);
+        }
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        pending.completeExceptionally(new IOException("Timeout"));
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+}
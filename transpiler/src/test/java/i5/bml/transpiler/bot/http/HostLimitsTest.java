@@ -0,0 +1,37 @@
+package i5.bml.transpiler.bot.http;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+class HostLimitsTest {
+
+    private final HostLimits hostLimits = new HostLimits(new HttpSettings(Duration.ofSeconds(1), Map.of(), 1,
+            Duration.ofSeconds(1), 2));
+
+    @Test
+    void testLimitIsPerHost() throws IOException {
+        var first = hostLimits.acquire("rasa.example.org", Duration.ZERO);
+        var second = hostLimits.acquire("rasa.example.org", Duration.ZERO);
+        Assertions.assertThrows(IOException.class, () -> hostLimits.acquire("rasa.example.org", Duration.ofMillis(10)));
+
+        // Other hosts are not affected
+        hostLimits.acquire("api.openai.com", Duration.ZERO).close();
+
+        first.close();
+        hostLimits.acquire("rasa.example.org", Duration.ZERO).close();
+        second.close();
+    }
+
+    @Test
+    void testPermitIsReleasedOnClose() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            try (var ignored = hostLimits.acquire("localhost", Duration.ZERO)) {
+                Assertions.assertNotNull(ignored);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package i5.bml.transpiler.bot.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+class MetricsRegistryTest {
+
+    private MetricsRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new MetricsRegistry();
+    }
+
+    @Test
+    void testSameNameAndLabelsReturnSameMetric() {
+        var counter = registry.counter("sent_total", "Sent", "messenger", "telegram");
+        counter.increment();
+        registry.counter("sent_total", "Sent", "messenger", "telegram").add(2);
+        registry.counter("sent_total", "Sent", "messenger", "slack").increment();
+
+        Assertions.assertEquals(3, counter.value());
+        var scrape = registry.scrape();
+        Assertions.assertTrue(scrape.contains("# TYPE sent_total counter\n"));
+        Assertions.assertTrue(scrape.contains("sent_total{messenger=\"telegram\"} 3\n"));
+        Assertions.assertTrue(scrape.contains("sent_total{messenger=\"slack\"} 1\n"));
+    }
+
+    @Test
+    void testInvalidRegistrations() {
+        registry.counter("events", "Events");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.gauge("events", "Events", () -> 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.counter("other", "Other", "label"));
+    }
+
+    @Test
+    void testHistogramBucketsAreCumulative() {
+        var histogram = registry.histogram("duration_seconds", "Duration", "event", "message");
+        histogram.observe(0.003);
+        histogram.observe(0.2);
+        histogram.observe(100);
+
+        var scrape = registry.scrape();
+        Assertions.assertTrue(scrape.contains("duration_seconds_bucket{event=\"message\",le=\"0.005\"} 1\n"));
+        Assertions.assertTrue(scrape.contains("duration_seconds_bucket{event=\"message\",le=\"0.25\"} 2\n"));
+        Assertions.assertTrue(scrape.contains("duration_seconds_bucket{event=\"message\",le=\"60.0\"} 2\n"));
+        Assertions.assertTrue(scrape.contains("duration_seconds_bucket{event=\"message\",le=\"+Inf\"} 3\n"));
+        Assertions.assertTrue(scrape.contains("duration_seconds_count{event=\"message\"} 3\n"));
+    }
+
+    @Test
+    void testHistogramQuantiles() {
+        var histogram = new Histogram();
+        Assertions.assertTrue(Double.isNaN(histogram.quantile(0.5)));
+
+        for (int i = 0; i < 99; i++) {
+            histogram.observe(0.02);
+        }
+        histogram.observe(3);
+
+        Assertions.assertEquals(0.025, histogram.quantile(0.5));
+        Assertions.assertEquals(0.025, histogram.quantile(0.99));
+        Assertions.assertEquals(5, histogram.quantile(1));
+    }
+
+    @Test
+    void testRequestFailures() {
+        var requests = registry.requests("rasa", "parse");
+        Assertions.assertEquals("ok", requests.time(() -> "ok"));
+        Assertions.assertThrows(IOException.class, () -> requests.run(() -> {
+            throw new IOException("Connection refused");
+        }));
+        requests.failed();
+
+        var scrape = registry.scrape();
+        Assertions.assertTrue(scrape.contains("bml_request_duration_seconds_count{target=\"rasa\",operation=\"parse\"} 2\n"));
+        Assertions.assertTrue(scrape.contains("bml_request_failures_total{target=\"rasa\",operation=\"parse\"} 2\n"));
+    }
+}
@@ -0,0 +1,123 @@
+package i5.bml.transpiler.bot.threads;
+
+import i5.bml.transpiler.bot.events.messenger.MessageEventType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+class SessionJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final SessionStore store = new SessionStore(100, Duration.ofHours(1));
+
+    private SessionJournal journal(int snapshotEvery) throws IOException {
+        var journal = new SessionJournal(directory, store, snapshotEvery);
+        journal.recover();
+        return journal;
+    }
+
+    private void write(String file, String content) throws IOException {
+        Files.writeString(directory.resolve(file), content);
+    }
+
+    private List<String> read(String file) throws IOException {
+        return Files.readAllLines(directory.resolve(file));
+    }
+
+    private Session addSession(Object chatId) {
+        var session = new Session(chatId, MessageEventType.USER_SENT_MESSAGE);
+        store.put(chatId, session);
+        return session;
+    }
+
+    @Test
+    void testRecoversFromSnapshotAndLog() throws IOException {
+        write("sessions.snapshot", "P L1 USER_SENT_MESSAGE 1\nP Salice USER_STARTED_CHAT 2,0\nP Sbob USER_SENT_MESSAGE \n");
+        write("sessions.log", "P L1 USER_SENT_MESSAGE 3\nR Sbob\nP Scarol USER_JOINED_CHAT 0\n");
+
+        journal(100);
+
+        Assertions.assertEquals(3, store.size());
+        Assertions.assertEquals(1L, store.get(1L).chatId());
+        Assertions.assertEquals(MessageEventType.USER_STARTED_CHAT, store.get("alice").messageEventType());
+        Assertions.assertNull(store.get("bob"));
+        Assertions.assertNotNull(store.get("carol"));
+
+        // Recovery compacts the journal, the latest record of every session ends up in the snapshot
+        Assertions.assertEquals(List.of("P L1 USER_SENT_MESSAGE 3", "P Salice USER_STARTED_CHAT 2,0", "P Scarol USER_JOINED_CHAT 0"),
+                read("sessions.snapshot"));
+        Assertions.assertTrue(read("sessions.log").isEmpty());
+    }
+
+    @Test
+    void testRecoversFromInterruptedCompaction() throws IOException {
+        // Crashed while the snapshot of the moved log was written
+        write("sessions.snapshot", "P Salice USER_SENT_MESSAGE 1\n");
+        write("sessions.log.compacting", "P Salice USER_SENT_MESSAGE 2\nP Sbob USER_SENT_MESSAGE 1\n");
+        write("sessions.log", "R Sbob\n");
+
+        journal(100);
+
+        Assertions.assertEquals(List.of("P Salice USER_SENT_MESSAGE 2"), read("sessions.snapshot"));
+        Assertions.assertFalse(Files.exists(directory.resolve("sessions.log.compacting")));
+        Assertions.assertEquals(1, store.size());
+    }
+
+    @Test
+    void testSkipsMalformedAndTruncatedRecords() throws IOException {
+        write("sessions.log", "P Salice USER_SENT_MESSAGE 1\nP Sbob NO_SUCH_TYPE 1\nX\nP Xcarol USER_SENT_MESSAGE 1\n"
+                + "P Sdave USER_SENT_MESSAGE 12");
+
+        journal(100);
+
+        // The last record has no line break, it might have been cut off
+        Assertions.assertEquals(List.of("P Salice USER_SENT_MESSAGE 1"), read("sessions.snapshot"));
+        Assertions.assertEquals(1, store.size());
+    }
+
+    @Test
+    void testCompactsInBackground() throws IOException, InterruptedException {
+        var journal = journal(3);
+        for (var chatId : List.of("a", "b", "c", "d")) {
+            journal.save(addSession(chatId));
+        }
+
+        // The log has been moved aside after three records, the fourth went into the new log
+        for (int i = 0; i < 500 && Files.exists(directory.resolve("sessions.log.compacting")); i++) {
+            Thread.sleep(10);
+        }
+        Assertions.assertFalse(Files.exists(directory.resolve("sessions.log.compacting")));
+        Assertions.assertEquals(List.of("P Sa USER_SENT_MESSAGE ", "P Sb USER_SENT_MESSAGE ", "P Sc USER_SENT_MESSAGE "),
+                read("sessions.snapshot"));
+        Assertions.assertEquals(List.of("P Sd USER_SENT_MESSAGE "), read("sessions.log"));
+
+        store.remove("a");
+        journal.close();
+        Assertions.assertEquals(3, read("sessions.snapshot").size());
+        Assertions.assertTrue(read("sessions.log").isEmpty());
+
+        var restored = new SessionStore(100, Duration.ofHours(1));
+        new SessionJournal(directory, restored, 3).recover();
+        Assertions.assertEquals(3, restored.size());
+        Assertions.assertNull(restored.get("a"));
+    }
+
+    @Test
+    void testRemovedSessionIsNotSaved() throws IOException {
+        var journal = journal(100);
+        var session = addSession("a");
+        store.remove("a");
+        journal.save(session);
+        journal.close();
+
+        Assertions.assertTrue(read("sessions.snapshot").isEmpty());
+    }
+}
@@ -0,0 +1,93 @@
+package i5.bml.transpiler.bot.threads;
+
+import i5.bml.transpiler.bot.events.messenger.MessageEventType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+class SessionStoreTest {
+
+    private static Session session(Object chatId) {
+        return new Session(chatId, MessageEventType.USER_SENT_MESSAGE);
+    }
+
+    @Test
+    void testLeastRecentlyUsedSessionIsEvicted() {
+        var store = new SessionStore(2, Duration.ofHours(1));
+        var evicted = new ArrayList<Object>();
+        store.onEviction((chatId, session) -> evicted.add(chatId));
+
+        store.computeIfAbsent("a", SessionStoreTest::session);
+        store.computeIfAbsent("b", SessionStoreTest::session);
+        store.get("a");
+        store.computeIfAbsent("c", SessionStoreTest::session);
+
+        Assertions.assertEquals(List.of("b"), evicted);
+        Assertions.assertEquals(2, store.size());
+        Assertions.assertNull(store.get("b"));
+        Assertions.assertNotNull(store.get("a"));
+        Assertions.assertEquals(1, store.evictions());
+        Assertions.assertEquals(2, store.hits());
+        // Two lookups before creating a session, one of the evicted session
+        Assertions.assertEquals(4, store.misses());
+    }
+
+    @Test
+    void testIdleSessionExpiresOnLookup() throws InterruptedException {
+        var store = new SessionStore(10, Duration.ofMillis(1));
+        var evicted = new ArrayList<Object>();
+        store.onEviction((chatId, session) -> evicted.add(chatId));
+        var first = store.computeIfAbsent("a", SessionStoreTest::session);
+        Thread.sleep(5);
+
+        Assertions.assertNull(store.get("a"));
+        Assertions.assertEquals(List.of("a"), evicted);
+
+        // The chat starts over with a new session
+        Assertions.assertNotSame(first, store.computeIfAbsent("a", SessionStoreTest::session));
+    }
+
+    @Test
+    void testSweepEvictsOnlyExpiredSessions() throws InterruptedException {
+        var store = new SessionStore(10, Duration.ofMillis(100));
+        var evicted = new ArrayList<Object>();
+        store.onEviction((chatId, session) -> evicted.add(chatId));
+        store.put("a", session("a"));
+        store.put("b", session("b"));
+        Thread.sleep(150);
+        store.put("c", session("c"));
+
+        store.evictExpired();
+        Assertions.assertEquals(List.of("a", "b"), evicted);
+        Assertions.assertEquals(1, store.size());
+        Assertions.assertNotNull(store.get("c"));
+    }
+
+    @Test
+    void testIsCurrent() {
+        var store = new SessionStore(2, Duration.ofHours(1));
+        var removed = new ArrayList<Object>();
+        store.onRemoval((chatId, session) -> removed.add(chatId));
+        var first = session("a");
+        store.put("a", first);
+        store.put("b", session("b"));
+
+        // Counts as use, so b is the least recently used session
+        Assertions.assertTrue(store.isCurrent("a", first));
+        store.put("c", session("c"));
+        Assertions.assertNull(store.get("b"));
+
+        var second = session("a");
+        store.put("a", second);
+        Assertions.assertFalse(store.isCurrent("a", first));
+        Assertions.assertTrue(store.isCurrent("a", second));
+
+        Assertions.assertSame(second, store.remove("a"));
+        Assertions.assertFalse(store.isCurrent("a", second));
+        Assertions.assertEquals(List.of("a"), removed);
+        Assertions.assertEquals(1, store.evictions());
+    }
+}
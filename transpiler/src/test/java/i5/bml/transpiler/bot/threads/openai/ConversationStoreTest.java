@@ -0,0 +1,109 @@
+package i5.bml.transpiler.bot.threads.openai;
+
+import com.theokanning.openai.completion.chat.ChatMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+class ConversationStoreTest {
+
+    /**
+     * 40 bytes, i.e., 14 tokens per message
+     */
+    private static final String TEXT = "x".repeat(40);
+
+    private static List<String> contents(List<ChatMessage> messages) {
+        return messages.stream().map(ChatMessage::getContent).toList();
+    }
+
+    @Test
+    void testWindowKeepsHistoryWithinBudget() {
+        var store = new ConversationStore(10, Duration.ofMinutes(1), 60, ConversationStore.Truncation.WINDOW, null);
+        Assertions.assertEquals(14, ConversationStore.estimateTokens(new ChatMessage("user", TEXT)));
+
+        for (int i = 0; i < 10; i++) {
+            var messages = store.addUserMessage("alice", "", TEXT + i);
+            Assertions.assertTrue(messages.stream().mapToInt(ConversationStore::estimateTokens).sum() <= 60);
+            Assertions.assertEquals(TEXT + i, messages.get(messages.size() - 1).getContent());
+            // Never starts with an answer
+            Assertions.assertEquals("user", messages.get(0).getRole());
+            store.addAssistantMessage("alice", "answer " + i);
+        }
+
+        Assertions.assertTrue(store.truncatedMessages() > 0);
+        Assertions.assertTrue(store.history("bob").isEmpty());
+    }
+
+    @Test
+    void testSystemPromptIsAlwaysSent() {
+        var store = new ConversationStore(10, Duration.ofMinutes(1), 20, ConversationStore.Truncation.WINDOW, null);
+        store.addUserMessage("alice", "Be nice", TEXT);
+        var messages = store.addUserMessage("alice", "Be nice", TEXT + TEXT);
+
+        // The latest message is kept, even if it does not fit the budget on its own
+        Assertions.assertEquals(List.of("Be nice", TEXT + TEXT), contents(messages));
+        Assertions.assertEquals("system", messages.get(0).getRole());
+    }
+
+    @Test
+    void testSummaryReplacesTruncatedMessages() {
+        var summarized = new ArrayList<String>();
+        ConversationStore.Summarizer summarizer = (previous, messages) -> {
+            summarized.addAll(contents(messages));
+            return "summary " + summarized.size();
+        };
+        var store = new ConversationStore(10, Duration.ofMinutes(1), 60, ConversationStore.Truncation.SUMMARY, summarizer);
+
+        for (int i = 0; i < 4; i++) {
+            store.addUserMessage("alice", "", TEXT + i);
+            store.addAssistantMessage("alice", TEXT);
+        }
+
+        var history = store.history("alice");
+        Assertions.assertFalse(summarized.isEmpty());
+        Assertions.assertEquals("system", history.get(0).getRole());
+        Assertions.assertTrue(history.get(0).getContent().endsWith("summary " + summarized.size()));
+        Assertions.assertEquals(TEXT + 0, summarized.get(0));
+    }
+
+    @Test
+    void testFailedSummaryDropsMessages() {
+        var store = new ConversationStore(10, Duration.ofMinutes(1), 40, ConversationStore.Truncation.SUMMARY, (previous, messages) -> null);
+        store.addUserMessage("alice", "", TEXT);
+        store.addAssistantMessage("alice", TEXT);
+        var messages = store.addUserMessage("alice", "", TEXT + "!");
+
+        Assertions.assertEquals(List.of(TEXT + "!"), contents(messages));
+    }
+
+    @Test
+    void testLeastRecentlyUsedConversationIsEvicted() {
+        var store = new ConversationStore(2, Duration.ofMinutes(1), 100, ConversationStore.Truncation.WINDOW, null);
+        store.addUserMessage("alice", "", "hi");
+        store.addUserMessage("bob", "", "hi");
+        store.history("alice");
+        store.addUserMessage("carol", "", "hi");
+
+        Assertions.assertEquals(2, store.size());
+        Assertions.assertEquals(1, store.evictions());
+        Assertions.assertTrue(store.history("bob").isEmpty());
+        Assertions.assertFalse(store.history("alice").isEmpty());
+
+        // Answers to evicted conversations do not bring them back
+        store.addAssistantMessage("bob", "hello");
+        Assertions.assertTrue(store.history("bob").isEmpty());
+    }
+
+    @Test
+    void testIdleConversationIsEvicted() throws InterruptedException {
+        var store = new ConversationStore(10, Duration.ofMillis(1), 100, ConversationStore.Truncation.WINDOW, null);
+        store.addUserMessage("alice", "", "hi");
+        Thread.sleep(5);
+
+        Assertions.assertTrue(store.history("alice").isEmpty());
+        Assertions.assertEquals(0, store.size());
+    }
+}
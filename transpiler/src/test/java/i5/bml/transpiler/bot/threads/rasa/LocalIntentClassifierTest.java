@@ -0,0 +1,103 @@
+package i5.bml.transpiler.bot.threads.rasa;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class LocalIntentClassifierTest {
+
+    private static final String TRAINING_DATA = """
+            version: "3.1"
+
+            nlu:
+              - intent: greet
+                examples: |
+                  - Hey
+                  - Hi
+                  - hi there
+                  - /start
+
+              - intent: options
+                examples: |
+                  - Tell me what options you have
+                  - Show me your options
+                  - What kind of options do you have?
+
+              - intent: canteen
+                examples: |
+                  - [Mensa Vita](name)
+                  - Show me [Mensa Academica](name)
+
+              - intent: ambiguous
+                examples: |
+                  - hey
+
+              - regex: value
+                examples: |
+                  - \\d{1,12}
+
+            responses:
+              utter_greet:
+                - text: "Hi"
+            """;
+
+    private final LocalIntentClassifier classifier = LocalIntentClassifier.fromTrainingData(TRAINING_DATA, 0.9);
+
+    @Test
+    void testExactMatches() {
+        Assertions.assertEquals(10, classifier.exampleCount());
+
+        var greet = classifier.classify("  HI there!");
+        Assertions.assertEquals(LocalIntentClassifier.Method.EXACT, greet.method());
+        Assertions.assertEquals(new NluCache.NluResult("greet", "{no_entity_found}"), greet.result());
+        Assertions.assertEquals("greet", classifier.classify("/start").result().intent());
+
+        // Entity as written by the user
+        Assertions.assertEquals(new NluCache.NluResult("canteen", "mensa vita"), classifier.classify("mensa vita").result());
+
+        // Example of several intents
+        Assertions.assertNull(classifier.classify("Hey"));
+    }
+
+    @Test
+    void testModelOnlyAnswersConfidently() {
+        var options = classifier.classify("what options do you have");
+        Assertions.assertEquals(LocalIntentClassifier.Method.MODEL, options.method());
+        Assertions.assertEquals("options", options.result().intent());
+
+        // Unknown words
+        Assertions.assertNull(classifier.classify("what options do you have today"));
+        // Intent with entities
+        Assertions.assertNull(classifier.classify("show me mensa"));
+        // Rasa would extract an entity
+        Assertions.assertNull(classifier.classify("hi 3"));
+        Assertions.assertNull(classifier.classify("?!"));
+    }
+
+    @Test
+    void testRankingIgnoresThreshold() {
+        Assertions.assertEquals(List.of(new Intent(1, "greet")), classifier.rank("hi there"));
+
+        var ranking = classifier.rank("what options do you have today");
+        Assertions.assertEquals("options", ranking.get(0).name());
+        Assertions.assertEquals(4, ranking.size());
+        Assertions.assertEquals(1, ranking.stream().mapToDouble(Intent::confidence).sum(), 1e-9);
+
+        Assertions.assertTrue(classifier.rank("bonjour").isEmpty());
+    }
+
+    @Test
+    void testEntitiesOfPatternsAndAnnotations() {
+        Assertions.assertEquals(List.of(new Entity(7, 17, "mensa vita", "name", 1), new Entity(23, 25, "42", "value", 1)),
+                classifier.extractEntities("Is the mensa vita open 42 days?"));
+        Assertions.assertTrue(classifier.extractEntities("hi there").isEmpty());
+    }
+
+    @Test
+    void testThresholdAboveOneOnlyUsesExactMatches() {
+        var exactOnly = LocalIntentClassifier.fromTrainingData(TRAINING_DATA, 1.5);
+        Assertions.assertNotNull(exactOnly.classify("show me your options"));
+        Assertions.assertNull(exactOnly.classify("what options do you have"));
+    }
+}
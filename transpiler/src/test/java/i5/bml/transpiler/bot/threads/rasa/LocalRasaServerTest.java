@@ -0,0 +1,86 @@
+package i5.bml.transpiler.bot.threads.rasa;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+class LocalRasaServerTest {
+
+    private static final String TRAINING_DATA = """
+            nlu:
+              - intent: greet
+                examples: |
+                  - hi
+                  - hello there
+
+              - intent: canteen
+                examples: |
+                  - What is on the menu of [Mensa Vita](name)?
+            """;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private HttpResponse<String> send(int port, String method, String path, String body) throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:%d%s".formatted(port, path)))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void testTrainLoadAndParse() throws IOException, InterruptedException {
+        var server = new LocalRasaServer(Duration.ZERO, Duration.ZERO, 0);
+        var port = server.start(0);
+        try {
+            Assertions.assertEquals(409, send(port, "POST", "/model/parse", "{\"text\": \"hi\"}").statusCode());
+
+            var trained = send(port, "POST", "/model/train", TRAINING_DATA);
+            Assertions.assertEquals(200, trained.statusCode());
+            var modelName = trained.headers().firstValue("filename").orElseThrow();
+
+            Assertions.assertEquals(400, send(port, "PUT", "/model", "{\"model_file\": \"models/unknown.tar.gz\"}").statusCode());
+            Assertions.assertEquals(204, send(port, "PUT", "/model", "{\"model_file\": \"models/%s\"}".formatted(modelName)).statusCode());
+            var status = new Gson().fromJson(send(port, "GET", "/status", null).body(), RasaStatusResponseSchema.class);
+            Assertions.assertEquals(modelName, status.modelFile());
+
+            var parsed = send(port, "POST", "/model/parse", "{\"text\": \"Menu of mensa vita?\"}");
+            Assertions.assertEquals(200, parsed.statusCode());
+            var response = new Gson().fromJson(parsed.body(), RasaParseResponseSchema.class);
+            Assertions.assertEquals("canteen", response.intent().name());
+            Assertions.assertEquals("mensa vita", response.entities()[0].value());
+
+            var unknown = new Gson().fromJson(send(port, "POST", "/model/parse", "{\"text\": \"bonjour\"}").body(), RasaParseResponseSchema.class);
+            Assertions.assertEquals("nlu_fallback", unknown.intent().name());
+            Assertions.assertEquals(0, unknown.entities().length);
+
+            Assertions.assertEquals(400, send(port, "POST", "/model/parse", "{}").statusCode());
+            Assertions.assertEquals(404, send(port, "GET", "/model/parse", null).statusCode());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void testInjectedLatencyAndErrors() throws IOException, InterruptedException {
+        var server = new LocalRasaServer(Duration.ofMillis(50), Duration.ZERO, 100);
+        var port = server.start(0);
+        try {
+            var start = System.nanoTime();
+            var parsed = send(port, "POST", "/model/parse", "{\"text\": \"hi\"}");
+            Assertions.assertTrue(System.nanoTime() - start >= Duration.ofMillis(50).toNanos());
+            Assertions.assertEquals(500, parsed.statusCode());
+
+            // Only parsing is affected
+            Assertions.assertEquals(200, send(port, "POST", "/model/train", TRAINING_DATA).statusCode());
+        } finally {
+            server.stop();
+        }
+    }
+}
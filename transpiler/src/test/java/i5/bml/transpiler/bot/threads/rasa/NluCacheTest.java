@@ -0,0 +1,56 @@
+package i5.bml.transpiler.bot.threads.rasa;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+class NluCacheTest {
+
+    private static final NluCache.NluResult GREET = new NluCache.NluResult("greet", "{no_entity_found}");
+
+    @Test
+    void testKeyIsNormalizedAndPerModel() {
+        var cache = new NluCache(10, Duration.ofMinutes(1));
+        cache.put(NluCache.key("model-1", "  hi\tthere "), GREET);
+
+        Assertions.assertEquals(GREET, cache.get(NluCache.key("model-1", "hi there")));
+        Assertions.assertNull(cache.get(NluCache.key("model-1", "Hi there")));
+        Assertions.assertNull(cache.get(NluCache.key("model-2", "hi there")));
+        Assertions.assertEquals(1, cache.hits());
+        Assertions.assertEquals(2, cache.misses());
+        Assertions.assertEquals(1 / 3d, cache.hitRate());
+    }
+
+    @Test
+    void testLeastRecentlyUsedResultIsEvicted() {
+        var cache = new NluCache(2, Duration.ofMinutes(1));
+        cache.put(NluCache.key("m", "a"), GREET);
+        cache.put(NluCache.key("m", "b"), GREET);
+        cache.get(NluCache.key("m", "a"));
+        cache.put(NluCache.key("m", "c"), GREET);
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertNotNull(cache.get(NluCache.key("m", "a")));
+        Assertions.assertNull(cache.get(NluCache.key("m", "b")));
+    }
+
+    @Test
+    void testResultsExpire() throws InterruptedException {
+        var cache = new NluCache(10, Duration.ofMillis(20));
+        cache.put(NluCache.key("m", "hi"), GREET);
+        Thread.sleep(30);
+
+        Assertions.assertNull(cache.get(NluCache.key("m", "hi")));
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testDisabledCache() {
+        var cache = new NluCache(0, Duration.ofMinutes(1));
+        cache.put(NluCache.key("m", "hi"), GREET);
+
+        Assertions.assertNull(cache.get(NluCache.key("m", "hi")));
+        Assertions.assertTrue(Double.isNaN(cache.hitRate()));
+    }
+}
@@ -0,0 +1,192 @@
+package i5.bml.transpiler.bot.threads.rasa;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import i5.bml.transpiler.bot.config.BotSettings;
+import i5.bml.transpiler.bot.utils.PersistentStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+class RasaComponentTest {
+
+    private static final String TRAINING_DATA = "nlu:\n  - intent: greet\n    examples: |\n      - hi\n";
+
+    private static final String TRAINED_MODEL = "trained.tar.gz";
+
+    private static final String STORED_MODEL = "stored.tar.gz";
+
+    @TempDir
+    Path directory;
+
+    private final StubRasa rasa = new StubRasa();
+
+    private BotSettings originalSettings;
+
+    private Path trainingFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // The bot settings live next to the classes, they must not leak into other tests
+        originalSettings = PersistentStorage.getBotSettings();
+        trainingFile = Files.writeString(directory.resolve("nlu.yml"), TRAINING_DATA);
+        rasa.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        rasa.server.stop(0);
+        PersistentStorage.writeBotSettings(originalSettings);
+    }
+
+    /**
+     * Rasa that knows the models that it trained and the ones it was given, and records which endpoints are called
+     */
+    private static class StubRasa {
+
+        private final Set<String> knownModels = new HashSet<>();
+
+        private final List<String> requests = new ArrayList<>();
+
+        private HttpServer server;
+
+        private String loadedModel;
+
+        private void start() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/", this::handle);
+            server.start();
+        }
+
+        private String url() {
+            return "http://localhost:%d/".formatted(server.getAddress().getPort());
+        }
+
+        private synchronized void handle(HttpExchange exchange) throws IOException {
+            try (exchange) {
+                var request = exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath();
+                requests.add(request);
+                switch (request) {
+                    case "GET /status" -> respond(exchange, 200, new Gson().toJson(new RasaStatusResponseSchema(loadedModel, loadedModel, 0)));
+                    case "POST /model/train" -> {
+                        knownModels.add(TRAINED_MODEL);
+                        exchange.getResponseHeaders().set("filename", TRAINED_MODEL);
+                        respond(exchange, 200, "");
+                    }
+                    case "PUT /model" -> {
+                        var modelFile = new Gson().fromJson(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8),
+                                JsonObject.class).get("model_file").getAsString();
+                        var model = modelFile.substring(modelFile.lastIndexOf('/') + 1);
+                        if (knownModels.contains(model)) {
+                            loadedModel = model;
+                            respond(exchange, 204, "");
+                        } else {
+                            respond(exchange, 400, new Gson().toJson(new RasaErrorResponseSchema("stub", "failure",
+                                    "Model not found", "BadRequest", null, null, 400)));
+                        }
+                    }
+                    default -> respond(exchange, 404, "");
+                }
+            }
+        }
+
+        private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+            var bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+            exchange.getResponseBody().write(bytes);
+        }
+
+        private synchronized List<String> requests() {
+            return List.copyOf(requests);
+        }
+    }
+
+    private void storeSettings(String modelName, String fingerprint) {
+        var settings = new BotSettings();
+        settings.rasaModelName(modelName);
+        settings.rasaTrainingDataFingerprint(fingerprint);
+        PersistentStorage.writeBotSettings(settings);
+    }
+
+    private RasaComponent initRasaComponent() {
+        var rasaComponent = new RasaComponent(rasa.url(), trainingFile.toString());
+        rasaComponent.init();
+        Assertions.assertTrue(rasaComponent.isReady());
+        return rasaComponent;
+    }
+
+    private void assertRetrained() {
+        Assertions.assertEquals(TRAINED_MODEL, rasa.loadedModel);
+        var settings = PersistentStorage.getBotSettings();
+        Assertions.assertEquals(TRAINED_MODEL, settings.rasaModelName());
+        Assertions.assertEquals(RasaComponent.fingerprint(TRAINING_DATA), settings.rasaTrainingDataFingerprint());
+    }
+
+    @Test
+    void testFingerprintOnlyChangesWithTrainingData() {
+        var trainingData = "nlu:\n  - intent: greet\n    examples: |\n      - hi\n";
+        var fingerprint = RasaComponent.fingerprint(trainingData);
+
+        Assertions.assertEquals(64, fingerprint.length());
+        Assertions.assertEquals(fingerprint, RasaComponent.fingerprint(trainingData.replace("\n", "\r\n")));
+        Assertions.assertNotEquals(fingerprint, RasaComponent.fingerprint(trainingData + "      - hey\n"));
+    }
+
+    @Test
+    void testReusesModelOfSameTrainingData() {
+        rasa.knownModels.add(STORED_MODEL);
+        storeSettings(STORED_MODEL, RasaComponent.fingerprint(TRAINING_DATA));
+
+        initRasaComponent();
+
+        Assertions.assertEquals(List.of("GET /status", "PUT /model"), rasa.requests());
+        Assertions.assertEquals(STORED_MODEL, rasa.loadedModel);
+    }
+
+    @Test
+    void testRetrainsWhenTrainingDataChanged() {
+        rasa.knownModels.add(STORED_MODEL);
+        storeSettings(STORED_MODEL, RasaComponent.fingerprint(TRAINING_DATA + "      - hey\n"));
+
+        initRasaComponent();
+
+        Assertions.assertEquals(List.of("POST /model/train", "PUT /model"), rasa.requests());
+        assertRetrained();
+    }
+
+    @Test
+    void testRetrainsWithoutStoredFingerprint() {
+        // Settings of a bot that was built before models were fingerprinted
+        rasa.knownModels.add(STORED_MODEL);
+        storeSettings(STORED_MODEL, null);
+
+        initRasaComponent();
+
+        Assertions.assertEquals(List.of("POST /model/train", "PUT /model"), rasa.requests());
+        assertRetrained();
+    }
+
+    @Test
+    void testRetrainsWhenRasaLostStoredModel() {
+        storeSettings(STORED_MODEL, RasaComponent.fingerprint(TRAINING_DATA));
+
+        initRasaComponent();
+
+        Assertions.assertEquals(List.of("GET /status", "PUT /model", "POST /model/train", "PUT /model"), rasa.requests());
+        assertRetrained();
+    }
+}
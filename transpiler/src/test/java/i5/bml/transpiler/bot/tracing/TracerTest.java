@@ -0,0 +1,109 @@
+package i5.bml.transpiler.bot.tracing;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+class TracerTest {
+
+    /**
+     * Collects exported traces instead of writing them
+     */
+    private static class CollectingTracer extends Tracer {
+
+        private final List<String> exported = new ArrayList<>();
+
+        private CollectingTracer(double sampleRate, long slowMillis) {
+            super(sampleRate, slowMillis);
+        }
+
+        @Override
+        void export(Trace trace, List<Span> spans) {
+            exported.add(toJson(trace, spans));
+        }
+    }
+
+    @Test
+    void testDisabledTracerIgnoresEverything() {
+        var tracer = new CollectingTracer(0, 0);
+        var trace = tracer.startTrace("message");
+        Assertions.assertSame(Trace.NONE, trace);
+
+        try (var span = trace.startSpan("handler")) {
+            Assertions.assertFalse(span.isRecording());
+            Assertions.assertFalse(Tracer.startSpan("rasa parse").isRecording());
+        }
+        trace.finish();
+        Assertions.assertTrue(tracer.exported.isEmpty());
+    }
+
+    @Test
+    void testSpansAreNestedAndExportedAsOtlp() {
+        var tracer = new CollectingTracer(1, 0);
+        var trace = tracer.startTrace("message");
+        trace.root().attribute("bml.messenger", "TELEGRAM");
+        var arrival = trace.root().startNanos();
+        trace.recordSpan("queue", arrival, arrival + 1_000_000);
+
+        try (var ignored = trace.startSpan("handler")) {
+            try (var nlu = Tracer.startSpan("rasa parse")) {
+                nlu.error();
+            }
+            try (var ignoredReply = Tracer.startSpan("reply")) {
+                Assertions.assertTrue(ignoredReply.isRecording());
+            }
+        }
+        // Nothing is active anymore
+        Assertions.assertFalse(Tracer.startSpan("unrelated").isRecording());
+        trace.finish();
+        trace.finish();
+
+        Assertions.assertEquals(1, tracer.exported.size());
+        var json = JsonParser.parseString(tracer.exported.get(0)).getAsJsonObject();
+        var spans = json.getAsJsonArray("resourceSpans").get(0).getAsJsonObject()
+                .getAsJsonArray("scopeSpans").get(0).getAsJsonObject()
+                .getAsJsonArray("spans");
+
+        var spansByName = new HashMap<String, JsonObject>();
+        spans.forEach(s -> spansByName.put(s.getAsJsonObject().get("name").getAsString(), s.getAsJsonObject()));
+        Assertions.assertEquals(5, spansByName.size());
+
+        var root = spansByName.get("message");
+        Assertions.assertFalse(root.has("parentSpanId"));
+        Assertions.assertEquals("TELEGRAM", root.getAsJsonArray("attributes").get(0).getAsJsonObject()
+                .getAsJsonObject("value").get("stringValue").getAsString());
+        var rootId = root.get("spanId").getAsString();
+        Assertions.assertEquals(rootId, spansByName.get("queue").get("parentSpanId").getAsString());
+        Assertions.assertEquals(rootId, spansByName.get("handler").get("parentSpanId").getAsString());
+
+        var handlerId = spansByName.get("handler").get("spanId").getAsString();
+        Assertions.assertEquals(handlerId, spansByName.get("rasa parse").get("parentSpanId").getAsString());
+        Assertions.assertEquals(handlerId, spansByName.get("reply").get("parentSpanId").getAsString());
+        Assertions.assertEquals(2, spansByName.get("rasa parse").getAsJsonObject("status").get("code").getAsInt());
+
+        var traceId = root.get("traceId").getAsString();
+        Assertions.assertEquals(32, traceId.length());
+        spansByName.values().forEach(s -> Assertions.assertEquals(traceId, s.get("traceId").getAsString()));
+        Assertions.assertEquals(1_000_000, Long.parseLong(spansByName.get("queue").get("endTimeUnixNano").getAsString())
+                - Long.parseLong(spansByName.get("queue").get("startTimeUnixNano").getAsString()));
+    }
+
+    @Test
+    void testSlowTracesAreExportedWithoutSampling() throws InterruptedException {
+        var tracer = new CollectingTracer(0, 20);
+        Assertions.assertTrue(tracer.isEnabled());
+
+        tracer.startTrace("fast").finish();
+        Assertions.assertTrue(tracer.exported.isEmpty());
+
+        var slowTrace = tracer.startTrace("slow");
+        Thread.sleep(30);
+        slowTrace.finish();
+        Assertions.assertEquals(1, tracer.exported.size());
+    }
+}
@@ -0,0 +1,71 @@
+package i5.bml.transpiler.bot.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentCallsShareOneCall() {
+        var singleFlight = new SingleFlight<String, String>();
+        var calls = new AtomicInteger();
+        var upstream = new CompletableFuture<String>();
+
+        var first = singleFlight.execute("hi", () -> {
+            calls.incrementAndGet();
+            return upstream;
+        });
+        var second = singleFlight.execute("hi", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        var otherKey = singleFlight.execute("bye", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("bye");
+        });
+
+        Assertions.assertEquals(2, calls.get());
+        Assertions.assertEquals(1, singleFlight.coalesced());
+        Assertions.assertEquals("bye", otherKey.join());
+        Assertions.assertFalse(second.isDone());
+
+        upstream.complete("greet");
+        Assertions.assertEquals("greet", first.join());
+        Assertions.assertEquals("greet", second.join());
+        Assertions.assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void testCompletedCallIsNotReused() {
+        var singleFlight = new SingleFlight<String, Integer>();
+        var calls = new AtomicInteger();
+
+        singleFlight.execute("hi", () -> CompletableFuture.completedFuture(calls.incrementAndGet())).join();
+        Assertions.assertEquals(2, singleFlight.execute("hi", () -> CompletableFuture.completedFuture(calls.incrementAndGet())).join());
+        Assertions.assertEquals(0, singleFlight.coalesced());
+    }
+
+    @Test
+    void testFailureIsSharedAndReleasesKey() {
+        var singleFlight = new SingleFlight<String, String>();
+        var upstream = new CompletableFuture<String>();
+
+        var first = singleFlight.execute("hi", () -> upstream);
+        var second = singleFlight.execute("hi", () -> upstream);
+        upstream.completeExceptionally(new IllegalStateException("Rasa is down"));
+
+        Assertions.assertThrows(CompletionException.class, first::join);
+        Assertions.assertThrows(CompletionException.class, second::join);
+        Assertions.assertEquals(0, singleFlight.inFlight());
+
+        var failingCall = singleFlight.execute("hi", () -> {
+            throw new IllegalStateException("Not started");
+        });
+        Assertions.assertTrue(failingCall.isCompletedExceptionally());
+        Assertions.assertEquals(0, singleFlight.inFlight());
+    }
+}